@@ -0,0 +1,17 @@
+#!/bin/bash
+# guli-ai 微基准（JMH），基准类在 guli-ai/src/test/java 下，类名以 Benchmark 结尾
+# 用法：./jmh-bench.sh [基准类名正则] [其他 JMH 参数...]
+# 例：./jmh-bench.sh ChatClientConstructionBenchmark
+#     ./jmh-bench.sh SensitiveWordMatchBenchmark -p dictionarySize=100000 -f 1
+# 不带参数时运行全部基准；结果只在同一台机器上前后对比才有意义。
+
+cd "$(dirname "$0")/../guli-ai" || exit 1
+CP_FILE=$(mktemp)
+mvn -B -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile="$CP_FILE" \
+    || { rm -f "$CP_FILE"; exit 1; }
+
+java -Dfile.encoding=UTF-8 -cp "target/test-classes:target/classes:$(cat "$CP_FILE")" \
+    org.openjdk.jmh.Main "$@"
+STATUS=$?
+rm -f "$CP_FILE"
+exit $STATUS
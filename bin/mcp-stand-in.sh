@@ -0,0 +1,16 @@
+#!/bin/bash
+# 高德 MCP 本地替身服务，类在 guli-ai/src/test/java 下，用于演练连接池的熔断、对冲与重连
+# 用法：./mcp-stand-in.sh [端口] [延迟毫秒] [失败比例]
+# 例：./mcp-stand-in.sh 18089 200 0.2
+# 启动后把 guli.ai.mcp-pool.url 改为 http://localhost:端口、sse-endpoint 改为 /sse，再启动应用。
+
+cd "$(dirname "$0")/../guli-ai" || exit 1
+CP_FILE=$(mktemp)
+mvn -B -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile="$CP_FILE" \
+    || { rm -f "$CP_FILE"; exit 1; }
+
+java -Dfile.encoding=UTF-8 -cp "target/test-classes:target/classes:$(cat "$CP_FILE")" \
+    com.atguigu.guliai.mcp.McpStandInServer "$@"
+STATUS=$?
+rm -f "$CP_FILE"
+exit $STATUS
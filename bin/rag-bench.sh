@@ -0,0 +1,23 @@
+#!/bin/bash
+# 离线 RAG 基准：用本地模型替身与内存向量库回放录制的问题集，统计入库耗时、吞吐、各阶段耗时分位数、recall@k 与路由准确率
+# 用法：./rag-bench.sh [轮数] [并发数] [每token延迟毫秒] [首token延迟毫秒]
+# 不需要 Ollama、Qdrant、数据库与网络（首次构建需已装好本地 Maven 仓库）。基准类与问题集、知识文件在 guli-ai/src/test 下，
+# guli.ai 配置读取 guli-admin/src/main/resources/application.yml，可用 BENCH_CONFIG 指定其他文件；
+# 修改分块、混合检索、查询重写或路由参数前后各跑一次，对比 recall 与 p95；延迟参数按实测的模型速度设置，如 7B 模型每token约 20~40ms。
+
+ROUNDS=${1:-2}
+CONCURRENCY=${2:-4}
+TOKEN_LATENCY=${3:-10}
+FIRST_TOKEN_LATENCY=${4:-200}
+
+cd "$(dirname "$0")/../guli-ai" || exit 1
+CP_FILE=$(mktemp)
+mvn -B -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile="$CP_FILE" \
+    || { rm -f "$CP_FILE"; exit 1; }
+
+java -Dfile.encoding=UTF-8 -Dbenchmark.config="${BENCH_CONFIG:-../guli-admin/src/main/resources/application.yml}" \
+    -cp "target/test-classes:target/classes:$(cat "$CP_FILE")" \
+    com.atguigu.guliai.benchmark.RagBenchmark "$ROUNDS" "$CONCURRENCY" "$TOKEN_LATENCY" "$FIRST_TOKEN_LATENCY"
+STATUS=$?
+rm -f "$CP_FILE"
+exit $STATUS
@@ -0,0 +1,75 @@
+#!/bin/bash
+# 流式对话并发压测：同时发起 N 路 /ai/chat-stream 请求，统计成功数、首字时间与总耗时
+# 用法：TOKEN=<登录令牌> PROJECT_ID=1 USER_ID=1 ./sse-load.sh [并发数] [服务地址]
+# 每个虚拟用户先通过 /ai/create-chat 创建自己的会话，再带 chatId 提问，与前端的调用顺序一致（回答会写入会话记录）。
+# 对比虚拟线程前后：分别以 spring.threads.virtual.enabled=false/true 启动后执行同一命令，
+# 并发数逐步加大（如 200、800、2000）直到成功率或首字时间明显变差。
+# 模型本身的吞吐由 guli.ai.llm-scheduler 限制，压测时可把 MSG 设为已命中语义缓存的问题，只考察服务端能承载的并发连接数。
+# 只有状态码 200、回答非空且不是错误响应或繁忙提示的请求才计为成功。
+
+CONCURRENCY=${1:-200}
+BASE_URL=${2:-http://localhost:8080}
+PROJECT_ID=${PROJECT_ID:-1}
+USER_ID=${USER_ID:-1}
+MSG=${MSG:-学校图书馆几点开门}
+TIMEOUT=${TIMEOUT:-120}
+BUSY_TEXT="当前咨询人数较多"
+
+if [ -z "$TOKEN" ]; then
+    echo "请先设置 TOKEN 环境变量（登录后请求头 Authorization 中的令牌）"
+    exit 1
+fi
+
+OUT=$(mktemp -d)
+echo "并发数=$CONCURRENCY 地址=$BASE_URL 项目=$PROJECT_ID 用户=$USER_ID"
+
+# 会话创建不计入压测时间
+for i in $(seq 1 "$CONCURRENCY"); do
+    CHAT_ID=$(curl -s --max-time 30 \
+        -H "Authorization: Bearer $TOKEN" \
+        -H "Content-Type: application/json" \
+        -d "{\"projectId\":$PROJECT_ID,\"userId\":$USER_ID,\"title\":\"压测会话$i\"}" \
+        "$BASE_URL/ai/create-chat")
+    if ! [[ "$CHAT_ID" =~ ^[0-9]+$ ]]; then
+        echo "创建会话失败：$CHAT_ID"
+        rm -rf "$OUT"
+        exit 1
+    fi
+    echo "$CHAT_ID" > "$OUT/$i.chat"
+done
+echo "已创建 $CONCURRENCY 个会话"
+
+START=$(date +%s.%N)
+for i in $(seq 1 "$CONCURRENCY"); do
+    CHAT_ID=$(cat "$OUT/$i.chat")
+    curl -s -N -o "$OUT/$i.body" --max-time "$TIMEOUT" \
+        -H "Authorization: Bearer $TOKEN" \
+        -H "Content-Type: application/json" \
+        -d "{\"projectId\":$PROJECT_ID,\"chatId\":$CHAT_ID,\"language\":0,\"msg\":\"$MSG\"}" \
+        -w "%{http_code} %{time_starttransfer} %{time_total}\n" \
+        "$BASE_URL/ai/chat-stream" > "$OUT/$i.txt" 2>/dev/null &
+done
+wait
+END=$(date +%s.%N)
+
+# 回答为空、为错误 JSON（{"code":...}）或繁忙提示时，状态码改记为 0
+for i in $(seq 1 "$CONCURRENCY"); do
+    if [ ! -s "$OUT/$i.body" ] || grep -q '^{"' "$OUT/$i.body" || grep -q "$BUSY_TEXT" "$OUT/$i.body"; then
+        sed -i 's/^200 /0 /' "$OUT/$i.txt"
+    fi
+done
+
+cat "$OUT"/*.txt | awk -v wall="$(echo "$END - $START" | bc)" '
+{
+    total++
+    if ($1 == 200) { ok++; ttfb[ok] = $2; sum += $3 }
+}
+END {
+    n = asort(ttfb)
+    printf "成功 %d/%d，墙钟 %.1fs\n", ok, total, wall
+    if (n > 0) {
+        printf "首字时间 p50=%.2fs p95=%.2fs max=%.2fs，平均总耗时 %.2fs\n",
+            ttfb[int(n * 0.5) > 0 ? int(n * 0.5) : 1], ttfb[int(n * 0.95) > 0 ? int(n * 0.95) : 1], ttfb[n], sum / ok
+    }
+}'
+rm -rf "$OUT"
@@ -1,13 +1,17 @@
 package com.atguigu.ai;
 
 import com.atguigu.common.core.domain.AjaxResult;
+import com.atguigu.common.utils.SecurityUtils;
 import com.atguigu.guliai.pojo.Chat;
 import com.atguigu.guliai.pojo.Message;
 import com.atguigu.guliai.service.AiService;
 import com.atguigu.guliai.vo.ChatVo;
+import com.atguigu.guliai.vo.CursorPage;
 import com.atguigu.guliai.vo.MessageVo;
 import com.atguigu.guliai.vo.QueryVo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
@@ -53,8 +57,22 @@ public class AiController {
         return chats;
     }
 
+    /**
+     * 分页获取会话列表，按创建时间倒序
+     * @param projectId
+     * @param userId
+     * @param cursor 上一页返回的nextCursor，首页不传
+     * @param size
+     * @return
+     */
+    @GetMapping("page-chat")
+    public CursorPage<Chat> pageChat(Long projectId, Long userId, String cursor, Integer size){
+        return this.aiService.pageChat(projectId, userId, cursor, size);
+    }
+
     /**
      * 聊天
+     * 回答由服务端在流结束或客户端断开时保存（guli.ai.message-write.capture-reply），前端不再需要调用 save-msg
      * @param queryVo
      * @return
      */
@@ -65,8 +83,35 @@ public class AiController {
         return result;
     }
 
+    /**
+     * 可续传的聊天，断线后用 chat-stream/resume 从最后收到的分片继续
+     * @param queryVo
+     * @return
+     */
+    @PostMapping(value = "chat-stream-resumable", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> chatStreamResumable(@RequestBody QueryVo queryVo){
+        return this.aiService.chatStreamResumable(queryVo, currentUserId());
+    }
+
+    /**
+     * 断线续传
+     * @param streamId 首个stream事件中的流id
+     * @param chatId 发起提问时的会话id，未登录时必须与提问时一致
+     * @param after 已收到的最后一个分片序号，也可通过Last-Event-ID请求头传入
+     * @param lastEventId
+     * @return
+     */
+    @GetMapping(value = "chat-stream/resume", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> resumeStream(String streamId, Long chatId, Long after,
+                                                      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId){
+        long afterSeq = after != null ? after : (lastEventId != null ? lastEventId : 0);
+        return this.aiService.resumeStream(streamId, currentUserId(), chatId, afterSeq);
+    }
+
     /**
      * 保存消息
+     * 开启 capture-reply（默认）时回答已由服务端保存，该接口直接返回成功且不再写入，仅为兼容旧前端保留；
+     * 关闭 capture-reply 后恢复为由前端保存回答
      * @param messageVo
      * @return
      */
@@ -77,7 +122,7 @@ public class AiController {
     }
 
     /**
-     * 查询消息列表
+     * 查询消息列表，包含尚未写入MongoDB的消息（写入队列中或落盘等待回放）
      * @param chatId
      * @return
      */
@@ -87,6 +132,18 @@ public class AiController {
         return msgs;
     }
 
+    /**
+     * 分页加载消息，首页为最新的消息，每页内按时间升序
+     * @param chatId
+     * @param cursor 上一页返回的nextCursor，首页不传
+     * @param size
+     * @return
+     */
+    @GetMapping("page-msg")
+    public CursorPage<Message> pageMsg(Long chatId, String cursor, Integer size){
+        return this.aiService.pageMsg(chatId, cursor, size);
+    }
+
     /**
      * 删除会话
      * @param chatId
@@ -98,4 +155,15 @@ public class AiController {
         this.aiService.deleteChat(chatId, projectId);
         return AjaxResult.success();
     }
+
+    /**
+     * /ai/** 允许匿名访问，未登录时续传不校验用户
+     */
+    private static Long currentUserId(){
+        try {
+            return SecurityUtils.getUserId();
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
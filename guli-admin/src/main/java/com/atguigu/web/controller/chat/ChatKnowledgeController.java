@@ -1,8 +1,12 @@
 package com.atguigu.web.controller.chat;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.atguigu.guliai.service.AiService;
+import com.atguigu.guliai.vo.VectorDeletionResult;
+import com.atguigu.guliai.service.KnowledgeIngestService;
+import com.atguigu.guliai.vo.IngestJobVo;
 import com.atguigu.system.domain.ChatKnowledge;
 import com.atguigu.system.service.IChatKnowledgeService;
 import jakarta.servlet.http.HttpServletResponse;
@@ -39,6 +43,9 @@ public class ChatKnowledgeController extends BaseController
     @Autowired
     private AiService aiService;
 
+    @Autowired
+    private KnowledgeIngestService knowledgeIngestService;
+
     /**
      * 查询知识库管理列表
      */
@@ -87,31 +94,51 @@ public class ChatKnowledgeController extends BaseController
 
     /**
      * 修改知识库管理
+     * 记录保存后重建向量，重建失败（如旧向量删除失败）时返回错误提示重新保存。
      */
     @PreAuthorize("@ss.hasPermi('chat:knowledge:edit')")
     @Log(title = "知识库管理", businessType = BusinessType.UPDATE)
     @PutMapping
     public AjaxResult edit(@RequestBody ChatKnowledge chatKnowledge)
     {
-        return toAjax(chatKnowledgeService.updateChatKnowledge(chatKnowledge));
+        int rows = chatKnowledgeService.updateChatKnowledge(chatKnowledge);
+        if (rows > 0 && chatKnowledge.getContent() != null) {
+            try {
+                // 按分块内容哈希增量重建，未变化的分块不会重新向量化
+                aiService.reindexKnowledge(chatKnowledge.getKnowledgeId());
+            } catch (Exception e) {
+                log.error("重建Qdrant向量失败 knowledgeId={}: {}", chatKnowledge.getKnowledgeId(), e.getMessage());
+                return error("知识库已保存，但向量重建失败，请重新保存: " + e.getMessage());
+            }
+        }
+        return toAjax(rows);
     }
 
     /**
      * 删除知识库管理（同时删除向量库中的对应内容）
+     * 只删除向量已删除或无需删除的知识库记录；向量删除失败的记录保留，返回 failedIds 供重试。
+     * 向量删除整体出错时不删除任何记录，异常交由全局异常处理返回。
      */
     @PreAuthorize("@ss.hasPermi('chat:knowledge:remove')")
     @Log(title = "知识库管理", businessType = BusinessType.DELETE)
     @DeleteMapping("/{knowledgeIds}")
     public AjaxResult remove(@PathVariable Long[] knowledgeIds)
     {
-        try {
-            log.info("开始删除Qdrant向量，knowledgeIds={}", (Object) knowledgeIds);
-            aiService.deleteKnowledgeVectors(knowledgeIds);
-            log.info("已触发Qdrant向量删除。");
-        } catch (Exception e) {
-            log.error("删除Qdrant向量失败: {}", e.getMessage());
+        log.info("开始删除Qdrant向量，knowledgeIds={}", (Object) knowledgeIds);
+        VectorDeletionResult result = aiService.deleteKnowledgeVectors(knowledgeIds);
+        log.info("Qdrant向量删除完成：请求 {}，已删除 {}，跳过 {}，失败 {}", result.getRequested(),
+                result.getDeleted(), result.getSkippedIds().size(), result.getFailedIds());
+        List<Long> failedIds = result.getFailedIds();
+        Long[] removableIds = Arrays.stream(knowledgeIds)
+                .filter(id -> !failedIds.contains(id))
+                .toArray(Long[]::new);
+        int rows = removableIds.length > 0 ? chatKnowledgeService.deleteChatKnowledgeByKnowledgeIds(removableIds) : 0;
+        if (!failedIds.isEmpty())
+        {
+            log.warn("以下知识库向量删除失败，记录已保留：{}", failedIds);
+            return error("部分知识库向量删除失败，请重试").put("failedIds", failedIds).put("deleted", rows);
         }
-        return toAjax(chatKnowledgeService.deleteChatKnowledgeByKnowledgeIds(knowledgeIds));
+        return toAjax(rows);
     }
 
     /**
@@ -127,10 +154,24 @@ public class ChatKnowledgeController extends BaseController
         return getDataTable(list);
     }
 
+    /**
+     * 上传知识库文件：保存文件并登记入库任务后立即返回任务id，解析与向量化异步执行
+     */
     @PreAuthorize("@ss.hasPermi('chat:knowledge:add')")
     @PostMapping("upload")
     public AjaxResult upload(ChatKnowledge chatKnowledge, @RequestParam("file") MultipartFile file){
-        this.aiService.upload(chatKnowledge,file);
-        return success();
+        Long jobId = this.knowledgeIngestService.submit(chatKnowledge, file);
+        return success().put("jobId", String.valueOf(jobId));
+    }
+
+    /**
+     * 查询入库任务状态：状态、已处理分块数与预计剩余时间
+     */
+    @PreAuthorize("@ss.hasPermi('chat:knowledge:add')")
+    @GetMapping("/job/{jobId}")
+    public AjaxResult jobStatus(@PathVariable("jobId") Long jobId)
+    {
+        IngestJobVo job = knowledgeIngestService.getStatus(jobId);
+        return job != null ? success(job) : error("入库任务不存在");
     }
 }
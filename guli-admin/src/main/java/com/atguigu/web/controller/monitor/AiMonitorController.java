@@ -0,0 +1,38 @@
+package com.atguigu.web.controller.monitor;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.atguigu.common.core.domain.AjaxResult;
+import com.atguigu.guliai.monitor.ChatPipelineMetrics;
+
+/**
+ * AI对话链路监控
+ */
+@RestController
+@RequestMapping("/monitor/ai")
+public class AiMonitorController
+{
+    @Autowired
+    private ChatPipelineMetrics chatPipelineMetrics;
+
+    /**
+     * 各阶段耗时 p50/p95/p99（毫秒）、错误率与回答生成速度（token/秒），按项目类型与智能体类型分组；
+     * 语义缓存命中率与节省耗时；路由、MCP连接池、工具缓存等组件的指标快照
+     */
+    @PreAuthorize("@ss.hasPermi('monitor:ai:list')")
+    @GetMapping()
+    public AjaxResult getInfo()
+    {
+        Map<String, Object> result = new HashMap<>(4);
+        result.put("stages", chatPipelineMetrics.stageStats());
+        result.put("throughput", chatPipelineMetrics.throughputStats());
+        result.put("semanticCache", chatPipelineMetrics.semanticCacheStats());
+        result.put("meters", chatPipelineMetrics.componentStats());
+        return AjaxResult.success(result);
+    }
+}
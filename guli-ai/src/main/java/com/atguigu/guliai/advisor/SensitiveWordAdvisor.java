@@ -0,0 +1,80 @@
+package com.atguigu.guliai.advisor;
+
+import com.atguigu.guliai.sensitive.AhoCorasickMatcher;
+import com.atguigu.guliai.sensitive.SensitiveWordFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 敏感词拦截顾问，替代 SafeGuardAdvisor 的逐词 contains 扫描
+ * 提示词只做一次自动机扫描，命中时直接返回提示语，不调用大模型。
+ */
+@Slf4j
+public class SensitiveWordAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final SensitiveWordFilter filter;
+    private final String failureResponse;
+    private final int order;
+
+    public SensitiveWordAdvisor(SensitiveWordFilter filter, String failureResponse, int order) {
+        this.filter = filter;
+        this.failureResponse = failureResponse;
+        this.order = order;
+    }
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        if (blocked(chatClientRequest)) {
+            return createFailureResponse(chatClientRequest);
+        }
+        return callAdvisorChain.nextCall(chatClientRequest);
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        if (blocked(chatClientRequest)) {
+            return Flux.just(createFailureResponse(chatClientRequest));
+        }
+        return streamAdvisorChain.nextStream(chatClientRequest);
+    }
+
+    private boolean blocked(ChatClientRequest chatClientRequest) {
+        AhoCorasickMatcher.Hit hit = filter.findFirst(chatClientRequest.prompt().getContents());
+        if (hit != null) {
+            log.info("提示词命中敏感词: {}", hit.word());
+            return true;
+        }
+        return false;
+    }
+
+    private ChatClientResponse createFailureResponse(ChatClientRequest chatClientRequest) {
+        return ChatClientResponse.builder()
+                .chatResponse(ChatResponse.builder()
+                        .generations(List.of(new Generation(new AssistantMessage(failureResponse))))
+                        .build())
+                .context(Map.copyOf(chatClientRequest.context()))
+                .build();
+    }
+}
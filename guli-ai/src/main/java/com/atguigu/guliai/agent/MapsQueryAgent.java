@@ -2,6 +2,7 @@ package com.atguigu.guliai.agent;
 
 import com.atguigu.guliai.constant.SystemConstant;
 import com.atguigu.guliai.enums.AgentTypeEnum;
+import com.atguigu.guliai.mcp.PooledMcpToolCallbackProvider;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -17,6 +18,7 @@ import java.time.Duration;
 @RequiredArgsConstructor
 public class MapsQueryAgent extends AbstractAgent {
     private final ChatClient chatClient;
+    private final PooledMcpToolCallbackProvider mcpToolCallbackProvider;
 
     @Override
     @Retryable(value = {Exception.class},
@@ -28,6 +30,8 @@ public class MapsQueryAgent extends AbstractAgent {
         return chatClient.prompt()
                 .system(s -> s.text(SystemConstant.MAPS_QUERY_AGENT_PROMPT))
                 .user(question)
+                // 高德地图工具经连接池调用
+                .toolCallbacks(mcpToolCallbackProvider.getToolCallbacks())
                 .stream()
                 .content()
                 .timeout(Duration.ofSeconds(90))  // 增加超时时间到90秒
@@ -0,0 +1,106 @@
+package com.atguigu.guliai.cache;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的 EmbeddingModel 装饰器
+ * 相同文本只向量化一次：查询向量、重写后的查询以及重复入库的分块都会命中缓存，
+ * 一次请求中未命中的文本合并为一次批量调用交给被装饰的模型。
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final EmbeddingCache cache;
+    private volatile int dimensions = -1;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, EmbeddingCache cache) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.cache = cache;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (!cache.isEnabled()) {
+            return delegate.call(request);
+        }
+        List<String> texts = request.getInstructions();
+        String model = modelOf(request.getOptions());
+        int dimension = dimensionOf(request.getOptions());
+
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的文本去重后按首次出现顺序批量请求
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = EmbeddingCache.key(model, dimension, texts.get(i));
+            float[] cached = cache.get(key);
+            if (cached != null) {
+                vectors[i] = cached;
+            } else {
+                missing.computeIfAbsent(texts.get(i), t -> new ArrayList<>()).add(i);
+            }
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missing.isEmpty()) {
+            List<String> missingTexts = new ArrayList<>(missing.keySet());
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            metadata = response.getMetadata();
+            List<Embedding> results = response.getResults();
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                String text = missingTexts.get(embedding.getIndex() != null ? embedding.getIndex() : j);
+                cache.put(EmbeddingCache.key(model, dimension, text), embedding.getOutput());
+                for (Integer index : missing.get(text)) {
+                    vectors[index] = embedding.getOutput();
+                }
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        // 各模型对 Document 的格式化方式不同，直接交给被装饰的模型
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        int value = dimensions;
+        if (value < 0) {
+            value = delegate.dimensions();
+            dimensions = value;
+        }
+        return value;
+    }
+
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+
+    private String modelOf(EmbeddingOptions options) {
+        return options != null && options.getModel() != null ? options.getModel() : modelName;
+    }
+
+    private int dimensionOf(EmbeddingOptions options) {
+        return options != null && options.getDimensions() != null ? options.getDimensions() : dimensions();
+    }
+}
@@ -0,0 +1,299 @@
+package com.atguigu.guliai.cache;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.atguigu.common.config.XiaoGuConfig;
+import com.atguigu.common.core.redis.RedisCache;
+import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.config.EmbeddingCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 向量化结果的多级缓存
+ * 进程内按最近最少使用淘汰并限制总内存，可选 Redis 共享层与内存映射磁盘层；
+ * 低层命中时回填到进程内缓存。键由调用方按（模型, 维度, 文本哈希）拼接。
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    private static final String REDIS_KEY_PREFIX = "guli:ai:embedding:";
+    /** 每个条目除向量外的大致开销（键、对象头、链表节点） */
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    private final EmbeddingCacheProperties properties;
+    private final ObjectProvider<RedisCache> redisCacheProvider;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, float[]> memory = new LinkedHashMap<>(1024, 0.75f, true);
+    private long memoryBytes;
+
+    private volatile EmbeddingDiskStore diskStore;
+    private volatile boolean diskUnavailable;
+    // 初始化磁盘层需要创建并映射文件，不使用synchronized以免钉住虚拟线程
+    private final ReentrantLock diskInitLock = new ReentrantLock();
+
+    private final Counter memoryHitCounter;
+    private final Counter diskHitCounter;
+    private final Counter redisHitCounter;
+    private final Counter missCounter;
+
+    public EmbeddingCache(EmbeddingCacheProperties properties,
+                          ObjectProvider<RedisCache> redisCacheProvider,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.redisCacheProvider = redisCacheProvider;
+        this.memoryHitCounter = hitCounter(meterRegistry, "memory");
+        this.diskHitCounter = hitCounter(meterRegistry, "disk");
+        this.redisHitCounter = hitCounter(meterRegistry, "redis");
+        this.missCounter = Counter.builder("guli.ai.embedding.cache.requests")
+                .tag("result", "miss")
+                .tag("tier", "none")
+                .description("向量缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.embedding.cache.hit.ratio", this, EmbeddingCache::hitRatio)
+                .description("向量缓存累计命中率")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.embedding.cache.size", this, EmbeddingCache::size)
+                .description("进程内向量缓存条目数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.embedding.cache.memory", this, EmbeddingCache::memoryBytes)
+                .baseUnit("bytes")
+                .description("进程内向量缓存占用的内存")
+                .register(meterRegistry);
+    }
+
+    private static Counter hitCounter(MeterRegistry meterRegistry, String tier) {
+        return Counter.builder("guli.ai.embedding.cache.requests")
+                .tag("result", "hit")
+                .tag("tier", tier)
+                .description("向量缓存命中次数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 生成缓存键
+     *
+     * @param model     模型名称
+     * @param dimension 向量维度
+     * @param text      原始文本
+     */
+    public static String key(String model, int dimension, String text) {
+        return model + ":" + dimension + ":" + DigestUtil.sha256Hex(text != null ? text : "");
+    }
+
+    /**
+     * 依次查找进程内、磁盘、Redis 缓存
+     *
+     * @return 未命中返回 null
+     */
+    public float[] get(String key) {
+        float[] vector = getFromMemory(key);
+        if (vector != null) {
+            memoryHitCounter.increment();
+            return vector;
+        }
+        EmbeddingDiskStore disk = diskStore();
+        if (disk != null) {
+            vector = disk.get(fingerprint(key));
+            if (vector != null) {
+                diskHitCounter.increment();
+                putToMemory(key, vector);
+                return vector;
+            }
+        }
+        vector = getFromRedis(key);
+        if (vector != null) {
+            redisHitCounter.increment();
+            putToMemory(key, vector);
+            if (disk != null) {
+                disk.put(fingerprint(key), vector);
+            }
+            return vector;
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * 写入所有已启用的缓存层
+     */
+    public void put(String key, float[] vector) {
+        if (vector == null || vector.length == 0) {
+            return;
+        }
+        putToMemory(key, vector);
+        EmbeddingDiskStore disk = diskStore();
+        if (disk != null) {
+            disk.put(fingerprint(key), vector);
+        }
+        putToRedis(key, vector);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return memory.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long memoryBytes() {
+        lock.lock();
+        try {
+            return memoryBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double hitRatio() {
+        double hits = memoryHitCounter.count() + diskHitCounter.count() + redisHitCounter.count();
+        double total = hits + missCounter.count();
+        return total > 0 ? hits / total : 0.0;
+    }
+
+    private float[] getFromMemory(String key) {
+        lock.lock();
+        try {
+            return memory.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putToMemory(String key, float[] vector) {
+        long limit = properties.getMaxMemoryMb() * 1024L * 1024L;
+        long bytes = entryBytes(vector);
+        if (bytes > limit) {
+            return;
+        }
+        lock.lock();
+        try {
+            float[] previous = memory.put(key, vector);
+            if (previous != null) {
+                memoryBytes -= entryBytes(previous);
+            }
+            memoryBytes += bytes;
+            var it = memory.values().iterator();
+            while (memoryBytes > limit && it.hasNext()) {
+                memoryBytes -= entryBytes(it.next());
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long entryBytes(float[] vector) {
+        return ENTRY_OVERHEAD_BYTES + (long) vector.length * Float.BYTES;
+    }
+
+    private float[] getFromRedis(String key) {
+        RedisCache redisCache = redisCache();
+        if (redisCache == null) {
+            return null;
+        }
+        try {
+            String encoded = redisCache.getCacheObject(REDIS_KEY_PREFIX + key);
+            return encoded != null ? decode(encoded) : null;
+        } catch (Exception e) {
+            // Redis 不可用时退化为只用本地缓存
+            log.warn("读取Redis向量缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void putToRedis(String key, float[] vector) {
+        RedisCache redisCache = redisCache();
+        if (redisCache == null) {
+            return;
+        }
+        try {
+            redisCache.setCacheObject(REDIS_KEY_PREFIX + key, encode(vector),
+                    (int) properties.getRedisTtl().toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入Redis向量缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private RedisCache redisCache() {
+        return properties.isRedisEnabled() ? redisCacheProvider.getIfAvailable() : null;
+    }
+
+    private EmbeddingDiskStore diskStore() {
+        if (!properties.isDiskEnabled() || diskUnavailable) {
+            return null;
+        }
+        EmbeddingDiskStore store = diskStore;
+        if (store == null) {
+            diskInitLock.lock();
+            try {
+                store = diskStore;
+                if (store == null && !diskUnavailable) {
+                    String path = StringUtils.isNotEmpty(properties.getDiskPath())
+                            ? properties.getDiskPath()
+                            : XiaoGuConfig.getProfile() + "/embedding-cache/embeddings.bin";
+                    try {
+                        store = new EmbeddingDiskStore(Paths.get(path), properties.getDiskSlots(), properties.getDiskMaxDimension());
+                        diskStore = store;
+                    } catch (Exception e) {
+                        diskUnavailable = true;
+                        log.error("向量磁盘缓存初始化失败，已停用磁盘层: path={}", path, e);
+                    }
+                }
+            } finally {
+                diskInitLock.unlock();
+            }
+        }
+        return store;
+    }
+
+    private static byte[] fingerprint(String key) {
+        return Arrays.copyOf(DigestUtil.sha256(key.getBytes(StandardCharsets.UTF_8)), 16);
+    }
+
+    private static String encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[] decode(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+        float[] vector = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    @PreDestroy
+    public void close() {
+        EmbeddingDiskStore store = diskStore;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (Exception e) {
+                log.warn("关闭向量磁盘缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+}
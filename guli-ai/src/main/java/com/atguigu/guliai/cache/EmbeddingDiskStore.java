@@ -0,0 +1,126 @@
+package com.atguigu.guliai.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于内存映射文件的向量缓存
+ * 文件按固定大小的槽位划分，键的哈希直接决定槽位，冲突时新向量覆盖旧向量，文件大小因此恒定。
+ * 槽位布局：[指纹高 8 字节][指纹低 8 字节][维度 int][float * maxDimension]
+ */
+@Slf4j
+public class EmbeddingDiskStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x47454d42;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_HEADER_BYTES = 8 + 8 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int maxDimension;
+    private final int slotBytes;
+    // 读写映射内存可能触发缺页IO，使用ReentrantLock避免虚拟线程钉住载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public EmbeddingDiskStore(Path file, int slots, int maxDimension) throws IOException {
+        this.maxDimension = maxDimension;
+        this.slotBytes = SLOT_HEADER_BYTES + maxDimension * Float.BYTES;
+        // 单个 MappedByteBuffer 最大 2GB，槽位数超出时按上限截断
+        this.slots = (int) Math.min(slots, (Integer.MAX_VALUE - HEADER_BYTES) / slotBytes);
+        long size = HEADER_BYTES + (long) this.slots * slotBytes;
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        boolean exists = Files.exists(file) && Files.size(file) == size;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (!exists || buffer.getInt(0) != MAGIC || buffer.getInt(4) != this.slots || buffer.getInt(8) != maxDimension) {
+            // 布局与配置不一致时整体清空，避免读出错位的数据
+            for (long i = HEADER_BYTES; i < size; i += slotBytes) {
+                buffer.putInt((int) i + 16, 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, this.slots);
+            buffer.putInt(8, maxDimension);
+            log.info("初始化向量磁盘缓存: file={}, slots={}, maxDimension={}", file, this.slots, maxDimension);
+        }
+    }
+
+    /**
+     * 读取向量
+     *
+     * @param fingerprint 键的 16 字节指纹
+     * @return 未命中返回 null
+     */
+    public float[] get(byte[] fingerprint) {
+        long hi = ByteBuffer.wrap(fingerprint, 0, 8).getLong();
+        long lo = ByteBuffer.wrap(fingerprint, 8, 8).getLong();
+        int offset = offset(hi);
+        lock.lock();
+        try {
+            int dimension = buffer.getInt(offset + 16);
+            if (dimension <= 0 || dimension > maxDimension
+                    || buffer.getLong(offset) != hi || buffer.getLong(offset + 8) != lo) {
+                return null;
+            }
+            float[] vector = new float[dimension];
+            int base = offset + SLOT_HEADER_BYTES;
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = buffer.getFloat(base + i * Float.BYTES);
+            }
+            return vector;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入向量，维度超过上限时忽略
+     */
+    public void put(byte[] fingerprint, float[] vector) {
+        if (vector.length == 0 || vector.length > maxDimension) {
+            return;
+        }
+        long hi = ByteBuffer.wrap(fingerprint, 0, 8).getLong();
+        long lo = ByteBuffer.wrap(fingerprint, 8, 8).getLong();
+        int offset = offset(hi);
+        lock.lock();
+        try {
+            // 先置维度为 0，写完数据后再写维度，进程中途退出时该槽位只会表现为未命中
+            buffer.putInt(offset + 16, 0);
+            int base = offset + SLOT_HEADER_BYTES;
+            for (int i = 0; i < vector.length; i++) {
+                buffer.putFloat(base + i * Float.BYTES, vector[i]);
+            }
+            buffer.putLong(offset, hi);
+            buffer.putLong(offset + 8, lo);
+            buffer.putInt(offset + 16, vector.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int offset(long hi) {
+        return HEADER_BYTES + (int) Math.floorMod(hi, (long) slots) * slotBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.atguigu.guliai.cache;
+
+import com.atguigu.guliai.config.SemanticCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 语义回答缓存
+ * 以「重写后查询的向量 + projectId」为键缓存完整回答，相似度超过阈值即视为命中，
+ * 命中后由调用方按原分片顺序重放为 Flux，SSE 协议保持不变。
+ * 每个项目维护失效代数，调用方在检索前取得代数，生成期间项目失效过的回答不再写入。
+ * 知识库变化时通过 Redis 发布订阅通知其他节点清空该项目的缓存，处于事务中时在提交后通知。
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache implements MessageListener {
+
+    /** 知识库变更通知频道，消息格式为 节点id:项目主键 */
+    public static final String CHANNEL = "guli:ai:semantic-cache:invalidated";
+
+    private final SemanticCacheProperties properties;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    /** 区分本节点发出的通知，本节点已在发送前处理 */
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Long, ProjectBucket> buckets = new ConcurrentHashMap<>();
+    /** 每个项目的失效次数，检索与生成期间发生过失效的回答不再写入，避免旧回答覆盖失效 */
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final DistributionSummary savedLatency;
+
+    public SemanticAnswerCache(SemanticCacheProperties properties, MeterRegistry meterRegistry,
+                               ObjectProvider<StringRedisTemplate> redisTemplate,
+                               ObjectProvider<RedisMessageListenerContainer> listenerContainer) {
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        if (properties.isBroadcast()) {
+            listenerContainer.ifAvailable(container -> container.addMessageListener(this, new ChannelTopic(CHANNEL)));
+        }
+        this.hitCounter = Counter.builder("guli.ai.semantic.cache.requests")
+                .tag("result", "hit")
+                .description("语义缓存命中次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("guli.ai.semantic.cache.requests")
+                .tag("result", "miss")
+                .description("语义缓存未命中次数")
+                .register(meterRegistry);
+        this.savedLatency = DistributionSummary.builder("guli.ai.semantic.cache.saved.latency")
+                .baseUnit("milliseconds")
+                .publishPercentiles(0.5, 0.95)
+                .description("缓存命中节省的检索与生成耗时")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.semantic.cache.size", this, SemanticAnswerCache::size)
+                .description("语义缓存当前条目数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 查找与给定向量最相似且未过期的回答
+     *
+     * @param projectId 项目id
+     * @param embedding 重写后查询的向量
+     * @return 命中的回答
+     */
+    public Optional<CachedAnswer> lookup(Long projectId, float[] embedding) {
+        if (!isEnabled() || projectId == null || embedding == null) {
+            return Optional.empty();
+        }
+        ProjectBucket bucket = buckets.get(projectId);
+        CachedAnswer answer = bucket != null ? bucket.findMostSimilar(normalize(embedding)) : null;
+        if (answer == null) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        savedLatency.record(answer.elapsedMillis());
+        log.info("语义缓存命中: projectId={}, query='{}'", projectId, answer.query());
+        return Optional.of(answer);
+    }
+
+    /**
+     * 项目当前的失效代数，需在检索之前取得并在写入时传回
+     *
+     * @param projectId 项目id
+     */
+    public long generation(Long projectId) {
+        return projectId == null ? 0 : generation0(projectId).get();
+    }
+
+    /**
+     * 写入一条完整回答
+     *
+     * @param projectId     项目id
+     * @param query         重写后的查询
+     * @param embedding     查询向量
+     * @param chunks        回答的流式分片
+     * @param elapsedMillis 生成该回答所花费的时间
+     * @param generation    检索前取得的 {@link #generation(Long)}，之后项目失效过则丢弃
+     */
+    public void put(Long projectId, String query, float[] embedding, List<String> chunks, long elapsedMillis,
+                    long generation) {
+        if (!isEnabled() || projectId == null || embedding == null || chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        if (generation(projectId) != generation) {
+            log.debug("生成期间知识库已变化，回答不写入语义缓存: projectId={}, query='{}'", projectId, query);
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + properties.getTtl().toMillis();
+        CachedAnswer answer = new CachedAnswer(query, normalize(embedding), List.copyOf(chunks), elapsedMillis, expireAt);
+        ProjectBucket bucket = buckets.computeIfAbsent(projectId, id -> new ProjectBucket());
+        bucket.put(answer);
+        // 写入与失效并发时，失效可能发生在上面的检查之后，再检查一次并撤销写入
+        if (generation(projectId) != generation) {
+            bucket.remove(answer);
+        }
+    }
+
+    /**
+     * 项目知识库发生变化时清空该项目的缓存，并通知其他节点
+     *
+     * @param projectId 项目id
+     */
+    public void invalidateProject(Long projectId) {
+        if (projectId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 本节点立即失效，避免事务期间写入的回答留到提交后；提交后再失效一次并通知其他节点
+            evictProject(projectId);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictProject(projectId);
+                    broadcast(projectId);
+                }
+            });
+        } else {
+            evictProject(projectId);
+            broadcast(projectId);
+        }
+    }
+
+    /**
+     * 只清空本节点的缓存，用于每个节点都会收到的事件（如项目配置变更）
+     *
+     * @param projectId 项目id
+     */
+    public void evictProject(Long projectId) {
+        if (projectId == null) {
+            return;
+        }
+        // 先递增代数再移除，之后完成的写入都会被丢弃
+        generation0(projectId).incrementAndGet();
+        ProjectBucket removed = buckets.remove(projectId);
+        if (removed != null) {
+            log.info("语义缓存已失效: projectId={}", projectId);
+        }
+    }
+
+    /**
+     * 收到其他节点的知识库变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator < 0 || nodeId.equals(body.substring(0, separator))) {
+            return;
+        }
+        try {
+            evictProject(Long.valueOf(body.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("忽略无法解析的语义缓存失效通知: {}", body);
+        }
+    }
+
+    private void broadcast(Long projectId) {
+        StringRedisTemplate template = properties.isBroadcast() ? redisTemplate.getIfAvailable() : null;
+        if (template == null) {
+            return;
+        }
+        try {
+            template.convertAndSend(CHANNEL, nodeId + ":" + projectId);
+        } catch (Exception e) {
+            // 通知失败时其他节点依靠 ttl 过期
+            log.warn("发布语义缓存失效通知失败 projectId={}，原因：{}", projectId, e.getMessage());
+        }
+    }
+
+    public int size() {
+        return buckets.values().stream().mapToInt(ProjectBucket::size).sum();
+    }
+
+    private AtomicLong generation0(Long projectId) {
+        return generations.computeIfAbsent(projectId, id -> new AtomicLong());
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 缓存的回答
+     */
+    public record CachedAnswer(String query, float[] embedding, List<String> chunks,
+                               long elapsedMillis, long expireAt) {
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+
+    /**
+     * 单个项目的缓存桶，按访问顺序淘汰
+     */
+    private class ProjectBucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, CachedAnswer> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAnswer> eldest) {
+                return size() > properties.getMaxEntriesPerProject();
+            }
+        };
+
+        CachedAnswer findMostSimilar(float[] embedding) {
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                String bestKey = null;
+                double bestScore = properties.getSimilarityThreshold();
+                Iterator<Map.Entry<String, CachedAnswer>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, CachedAnswer> entry = it.next();
+                    if (entry.getValue().isExpired(now)) {
+                        it.remove();
+                        continue;
+                    }
+                    double score = dot(entry.getValue().embedding(), embedding);
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        bestKey = entry.getKey();
+                    }
+                }
+                // 通过 get 刷新访问顺序
+                return bestKey != null ? entries.get(bestKey) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(CachedAnswer answer) {
+            lock.lock();
+            try {
+                entries.put(answer.query(), answer);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(CachedAnswer answer) {
+            lock.lock();
+            try {
+                entries.remove(answer.query(), answer);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.atguigu.guliai.cache;
+
+import com.atguigu.guliai.config.ToolCacheProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 智能体工具结果缓存
+ * 大模型在一轮对话内外会用相同参数反复调用查询类工具，结果按「工具名 + 规范化后的参数」缓存，
+ * 每个工具单独配置存活时间，条数超限时淘汰最久未使用的条目。
+ * 数据写入时由工具调用 {@link #invalidate(String)} 清理，加载期间发生的失效会丢弃本次加载结果，不会写回旧数据。
+ */
+@Slf4j
+@Component
+public class ToolResultCache {
+
+    private final ToolCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public ToolResultCache(ToolCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("guli.ai.tool.cache.size", this, ToolResultCache::size)
+                .description("工具结果缓存当前条目数")
+                .register(meterRegistry);
+    }
+
+    public <T> T get(String tool, Object arguments, Supplier<T> loader) {
+        return get(tool, arguments, loader, value -> true);
+    }
+
+    /**
+     * 读取缓存的工具结果，未命中时调用 loader 并缓存结果
+     *
+     * @param tool      工具名
+     * @param arguments 工具参数，字段顺序、空值字段与字符串首尾空白不影响命中
+     * @param loader    实际执行工具
+     * @param cacheable 结果是否可以缓存，失败结果不应缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String tool, Object arguments, Supplier<T> loader, Predicate<? super T> cacheable) {
+        Duration ttl = properties.ttlOf(tool);
+        if (!properties.isEnabled() || ttl.isZero() || ttl.isNegative()) {
+            return loader.get();
+        }
+        long start = System.nanoTime();
+        String key = tool + ":" + normalize(arguments);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            record(tool, "hit", start);
+            return (T) entry.value();
+        }
+        long generation = generation(tool).get();
+        T value;
+        try {
+            value = loader.get();
+        } finally {
+            record(tool, "miss", start);
+        }
+        if (value != null && cacheable.test(value)) {
+            put(key, new Entry(tool, value, System.currentTimeMillis() + ttl.toMillis()), generation);
+        }
+        return value;
+    }
+
+    /**
+     * 清理某个工具的全部缓存结果
+     */
+    public void invalidate(String tool) {
+        generation(tool).incrementAndGet();
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().tool().equals(tool)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("工具结果缓存已失效: tool={}, 清理{}条", tool, removed);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry lookup(String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt() <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String key, Entry entry, long generation) {
+        lock.lock();
+        try {
+            if (generation(entry.tool()).get() != generation) {
+                return;
+            }
+            entries.put(key, entry);
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > Math.max(1, properties.getMaxEntries()) && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AtomicLong generation(String tool) {
+        return generations.computeIfAbsent(tool, t -> new AtomicLong());
+    }
+
+    private void record(String tool, String result, long start) {
+        Timer.builder("guli.ai.tool.calls")
+                .tag("tool", tool)
+                .tag("result", result)
+                .description("智能体工具调用耗时，按是否命中缓存区分")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 参数转为字段有序、去掉空值、字符串去除首尾空白并合并连续空白的 JSON
+     */
+    String normalize(Object arguments) {
+        if (arguments == null) {
+            return "{}";
+        }
+        JsonNode node;
+        if (arguments instanceof String text) {
+            try {
+                node = objectMapper.readTree(text);
+            } catch (JsonProcessingException e) {
+                node = TextNode.valueOf(text);
+            }
+        } else {
+            node = objectMapper.valueToTree(arguments);
+        }
+        return canonical(node).toString();
+    }
+
+    private JsonNode canonical(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isObject()) {
+            Map<String, JsonNode> sorted = new TreeMap<>();
+            node.fields().forEachRemaining(field -> {
+                JsonNode value = canonical(field.getValue());
+                if (value != null) {
+                    sorted.put(field.getKey(), value);
+                }
+            });
+            ObjectNode result = objectMapper.createObjectNode();
+            sorted.forEach(result::set);
+            return result;
+        }
+        if (node.isArray()) {
+            ArrayNode result = objectMapper.createArrayNode();
+            node.forEach(item -> result.add(canonical(item)));
+            return result;
+        }
+        if (node.isTextual()) {
+            return TextNode.valueOf(node.asText().strip().replaceAll("\\s+", " "));
+        }
+        return node;
+    }
+
+    private record Entry(String tool, Object value, long expireAt) {
+    }
+}
@@ -0,0 +1,144 @@
+package com.atguigu.guliai.client;
+
+import com.atguigu.guliai.constant.SystemConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * ChatClient 注册表
+ * ChatClient 构建完成后是线程安全且无状态的，按「模型类型 + 顾问组合 + 项目」缓存复用，避免每次请求重新构建顾问链。
+ * 各组件在初始化时登记构建方法，启动完成后预先构建共享实例。
+ * 共享实例（项目id为 null）只依赖启动时的配置，不随项目修改失效；依赖项目配置的客户端应按项目id获取，
+ * 项目修改或删除后只失效这类按项目构建的实例。目前的 RAG 与基础客户端都与项目无关，均为共享实例。
+ */
+@Slf4j
+@Component
+public class ChatClientRegistry {
+
+    /** 不带任何顾问的基础客户端 */
+    public static final String ADVISORS_NONE = "none";
+    /** RAG 检索增强 + 日志顾问 */
+    public static final String ADVISORS_RAG = "rag";
+
+    private final Map<FactoryKey, Function<Long, ChatClient>> factories = new ConcurrentHashMap<>();
+    private final Map<ClientKey, ChatClient> clients = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public ChatClientRegistry(ObjectProvider<OllamaChatModel> ollamaChatModel,
+                              ObjectProvider<OpenAiChatModel> openAiChatModel,
+                              MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        ollamaChatModel.ifAvailable(model ->
+                register(SystemConstant.MODEL_TYPE_OLLAMA, ADVISORS_NONE, projectId -> ChatClient.create(model)));
+        openAiChatModel.ifAvailable(model ->
+                register(SystemConstant.MODEL_TYPE_OPENAI, ADVISORS_NONE, projectId -> ChatClient.create(model)));
+        Gauge.builder("guli.ai.chat.client.size", clients, Map::size)
+                .description("已缓存的ChatClient实例数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 登记构建方法，同一组合重复登记时覆盖并丢弃已缓存的实例
+     *
+     * @param modelType  模型类型
+     * @param advisorSet 顾问组合名称
+     * @param factory    按项目id构建客户端，共享实例的项目id为 null
+     */
+    public void register(String modelType, String advisorSet, Function<Long, ChatClient> factory) {
+        factories.put(new FactoryKey(modelType, advisorSet), factory);
+        clients.keySet().removeIf(key -> key.modelType().equals(modelType) && key.advisorSet().equals(advisorSet));
+    }
+
+    /**
+     * 获取所有项目共享的客户端
+     */
+    public ChatClient get(String modelType, String advisorSet) {
+        return get(modelType, advisorSet, null);
+    }
+
+    /**
+     * 获取客户端，不存在时按登记的构建方法构建并缓存
+     *
+     * @param modelType  模型类型
+     * @param advisorSet 顾问组合名称
+     * @param projectId  项目id，为 null 时返回共享实例
+     */
+    public ChatClient get(String modelType, String advisorSet, Long projectId) {
+        return clients.computeIfAbsent(new ClientKey(modelType, advisorSet, projectId), this::build);
+    }
+
+    /**
+     * 项目配置变更或删除后失效按该项目构建的客户端，共享实例不受影响
+     */
+    public void invalidateProject(Long projectId) {
+        if (projectId == null) {
+            return;
+        }
+        if (clients.keySet().removeIf(key -> Objects.equals(key.projectId(), projectId))) {
+            log.info("ChatClient缓存已失效: projectId={}", projectId);
+        }
+    }
+
+    /**
+     * 失效全部客户端，构建方法保留
+     */
+    public void invalidateAll() {
+        clients.clear();
+        log.info("ChatClient缓存已全部失效");
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * 启动完成后预先构建所有共享实例，首个请求不再承担构建开销
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+        factories.keySet().forEach(key -> {
+            try {
+                get(key.modelType(), key.advisorSet());
+            } catch (Exception e) {
+                log.warn("ChatClient预热失败: modelType={}, advisors={}, err={}",
+                        key.modelType(), key.advisorSet(), e.getMessage());
+            }
+        });
+        log.info("ChatClient预热完成: 实例数={}, 耗时={}ms", clients.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private ChatClient build(ClientKey key) {
+        Function<Long, ChatClient> factory = factories.get(new FactoryKey(key.modelType(), key.advisorSet()));
+        if (factory == null) {
+            throw new IllegalStateException("未登记的ChatClient: modelType=" + key.modelType() + ", advisors=" + key.advisorSet());
+        }
+        Counter.builder("guli.ai.chat.client.builds")
+                .tag("modelType", key.modelType())
+                .tag("advisors", key.advisorSet())
+                .description("ChatClient构建次数")
+                .register(meterRegistry)
+                .increment();
+        return factory.apply(key.projectId());
+    }
+
+    private record FactoryKey(String modelType, String advisorSet) {
+    }
+
+    private record ClientKey(String modelType, String advisorSet, Long projectId) {
+    }
+}
@@ -1,8 +1,9 @@
 package com.atguigu.guliai.config;
 
+import com.atguigu.guliai.advisor.SensitiveWordAdvisor;
+import com.atguigu.guliai.sensitive.SensitiveWordFilter;
 import com.atguigu.guliai.tools.*;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.SafeGuardAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.model.ChatModel;
@@ -164,15 +165,18 @@ public class AiAdvisorConfig {
         return new SimpleLoggerAdvisor();
     }
 
+    /**
+     * 内置敏感词，与参数设置中的敏感词合并后由 SensitiveWordFilter 编译
+     */
     @Bean
     public List<String> sensitiveWords() {
         return List.of("敏感词", "学生个人信息", "成绩排名", "学生档案");
     }
 
     @Bean
-    public Advisor safeGuardAdvisor(List<String> sensitiveWords) {
-        return new SafeGuardAdvisor(
-                sensitiveWords,
+    public Advisor safeGuardAdvisor(SensitiveWordFilter sensitiveWordFilter) {
+        return new SensitiveWordAdvisor(
+                sensitiveWordFilter,
                 "敏感词提示：请勿输入敏感词！",
                 Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER
         );
@@ -0,0 +1,21 @@
+package com.atguigu.guliai.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * AI 模块指标注册表
+ * 项目未引入 actuator 时没有 MeterRegistry，这里提供一个内存版本，保证各组件的计数器、计时器可用
+ */
+@Configuration
+public class AiMetricsConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(MeterRegistry.class)
+    public MeterRegistry aiMeterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
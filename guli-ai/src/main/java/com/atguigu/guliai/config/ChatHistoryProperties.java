@@ -0,0 +1,32 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话历史加载配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.history")
+public class ChatHistoryProperties {
+
+    /** 最多加载的最新消息条数 */
+    private int maxMessages = 20;
+
+    /** 历史消息的 token 预算，超出后不再加载更早的消息，最新一条消息总会保留 */
+    private int tokenBudget = 2000;
+
+    /** 是否为窗口之外的早期消息维护滚动摘要 */
+    private boolean summaryEnabled = false;
+
+    /** 窗口之外至少积累这么多条未摘要的消息才更新一次摘要 */
+    private int summaryMinMessages = 6;
+
+    /** 单次更新摘要最多读取的消息条数 */
+    private int summaryMaxMessages = 50;
+
+    /** 摘要的目标长度（字数） */
+    private int summaryMaxChars = 300;
+}
@@ -0,0 +1,23 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话与消息集合的索引与分页配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.chat-paging")
+public class ChatPagingProperties {
+
+    /** 启动时是否为已存在的会话与消息分片集合补建索引 */
+    private boolean ensureIndexesOnStartup = true;
+
+    /** 未指定条数时每页返回的条数 */
+    private int defaultPageSize = 20;
+
+    /** 每页最多返回的条数 */
+    private int maxPageSize = 100;
+}
@@ -0,0 +1,40 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 向量化结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.embedding-cache")
+public class EmbeddingCacheProperties {
+
+    /** 是否开启向量缓存 */
+    private boolean enabled = true;
+
+    /** 进程内缓存占用的最大内存（MB），超出后淘汰最久未使用的向量 */
+    private int maxMemoryMb = 64;
+
+    /** 是否启用 Redis 二级缓存，多实例部署时共享向量 */
+    private boolean redisEnabled = false;
+
+    /** Redis 中向量的存活时间 */
+    private Duration redisTtl = Duration.ofDays(7);
+
+    /** 是否启用本地磁盘内存映射缓存，重启后仍可命中 */
+    private boolean diskEnabled = false;
+
+    /** 磁盘缓存文件路径，为空时使用 xiaogu.profile 下的 embedding-cache/embeddings.bin */
+    private String diskPath;
+
+    /** 磁盘缓存槽位数，按键哈希直接定位，冲突时覆盖旧向量 */
+    private int diskSlots = 16384;
+
+    /** 磁盘缓存支持的最大向量维度，超过该维度的向量不写入磁盘 */
+    private int diskMaxDimension = 1536;
+}
@@ -0,0 +1,23 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库 ETL 流水线配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.etl")
+public class EtlPipelineProperties {
+
+    /** 关键词增强阶段同时调用大模型的最大并发数 */
+    private int enrichConcurrency = 4;
+
+    /** 每批向量化并写入向量库的分块数量 */
+    private int embedBatchSize = 32;
+
+    /** 每个分块提取的关键词数量 */
+    private int keywordCount = 8;
+}
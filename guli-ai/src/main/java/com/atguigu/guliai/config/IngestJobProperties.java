@@ -0,0 +1,31 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 知识库异步入库任务配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.ingest")
+public class IngestJobProperties {
+
+    /** 入库工作线程数 */
+    private int workers = 2;
+
+    /** 单个任务最多执行次数（含首次） */
+    private int maxAttempts = 3;
+
+    /** 首次重试的等待时间，之后每次翻倍 */
+    private Duration retryBackoff = Duration.ofSeconds(30);
+
+    /** 执行中的任务超过该时间没有进度更新，视为执行节点已宕机，由其他节点接管 */
+    private Duration staleTimeout = Duration.ofMinutes(10);
+
+    /** 原始文件保存目录，为空时使用 xiaogu.profile 下的 ingest 目录 */
+    private String storagePath;
+}
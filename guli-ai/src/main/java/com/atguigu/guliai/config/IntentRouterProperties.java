@@ -0,0 +1,35 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本地意图路由配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.router")
+public class IntentRouterProperties {
+
+    /** 是否启用本地路由，关闭时全部交给大模型路由 */
+    private boolean enabled = true;
+
+    /** 标注样例文件 */
+    private String examplesLocation = "classpath:router/intent-examples.txt";
+
+    /** 本地路由采纳所需的最低得分 */
+    private double minScore = 0.35;
+
+    /** 第一名与第二名得分的最小差距，差距过小视为置信度不足 */
+    private double minMargin = 0.08;
+
+    /** 每命中一个关键词规则增加的得分 */
+    private double keywordWeight = 0.15;
+
+    /** 关键词规则最多计入的命中数 */
+    private int maxKeywordHits = 3;
+
+    /** 本地路由后按该比例抽样并行调用大模型路由，用于统计本地路由准确率 */
+    private double shadowSampleRate = 0.0;
+}
@@ -0,0 +1,34 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Ollama 大模型请求调度配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.llm-scheduler")
+public class LlmSchedulerProperties {
+
+    /** 是否启用调度，关闭时不限制并发 */
+    private boolean enabled = true;
+
+    /** 同时调用 Ollama 的最大请求数 */
+    private int maxConcurrency = 2;
+
+    /** 后台任务（关键词增强、摘要等）最多占用的并发数，其余留给对话 */
+    private int maxBackgroundConcurrency = 1;
+
+    /** 对话请求的最大排队数，超出后立即返回繁忙提示 */
+    private int maxQueueDepth = 32;
+
+    /** 同一用户（会话）最多同时排队的对话请求数 */
+    private int maxQueuedPerUser = 2;
+
+    /** 对话请求的最长排队时间，超时返回繁忙提示；后台任务不受限制 */
+    private Duration queueTimeout = Duration.ofSeconds(60);
+}
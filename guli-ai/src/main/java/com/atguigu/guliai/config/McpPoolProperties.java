@@ -0,0 +1,54 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 高德 MCP 连接池配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.mcp-pool")
+public class McpPoolProperties {
+
+    private boolean enabled = true;
+
+    /** MCP 服务地址 */
+    private String url = "https://mcp.amap.com";
+
+    /** SSE 端点，高德需带上 key 参数 */
+    private String sseEndpoint = "/sse";
+
+    /** 连接数，每个连接是一条独立的 SSE 会话 */
+    private int poolSize = 4;
+
+    /** 建立连接与初始化会话的超时时间 */
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    /** 单次工具调用的截止时间，包含对冲与重试 */
+    private Duration callTimeout = Duration.ofSeconds(20);
+
+    /** 最多尝试次数，连接错误时换一个连接重试 */
+    private int maxAttempts = 2;
+
+    /** 超过该时间仍未返回时在另一个连接上发起对冲请求，0 表示不对冲 */
+    private Duration hedgeDelay = Duration.ofSeconds(3);
+
+    /** 空闲连接的探活间隔 */
+    private Duration healthCheckInterval = Duration.ofSeconds(30);
+
+    /** 重连失败后的重试间隔 */
+    private Duration reconnectBackoff = Duration.ofSeconds(5);
+
+    /** 连续失败多少次后熔断 */
+    private int breakerFailureThreshold = 5;
+
+    /** 熔断持续时间，之后进入半开状态放行探测请求 */
+    private Duration breakerOpenDuration = Duration.ofSeconds(30);
+
+    /** 半开状态下同时放行的探测请求数 */
+    private int breakerHalfOpenProbes = 1;
+}
@@ -0,0 +1,37 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 聊天消息异步批量持久化配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.message-write")
+public class MessagePersistenceProperties {
+
+    /** 是否异步批量写入，关闭时在请求线程中逐条同步写入 */
+    private boolean writeBehind = true;
+
+    /** 是否在服务端收集流式回答并保存，开启后 /ai/save-msg 不再重复保存 */
+    private boolean captureReply = true;
+
+    /** 批量写入的间隔 */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    /** 单次批量写入同一集合的最大消息数 */
+    private int maxBatchSize = 500;
+
+    /** 内存队列容量，写满后新消息直接落盘 */
+    private int queueCapacity = 10000;
+
+    /** 写入失败时的本地落盘文件，为空时使用 xiaogu.profile 下的 message-spill/messages.jsonl */
+    private String spillPath;
+
+    /** 落盘消息回放失败后的重试间隔 */
+    private Duration replayRetryInterval = Duration.ofSeconds(30);
+}
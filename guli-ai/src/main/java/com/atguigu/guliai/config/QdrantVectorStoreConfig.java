@@ -1,5 +1,7 @@
 package com.atguigu.guliai.config;
 
+import com.atguigu.guliai.cache.CachingEmbeddingModel;
+import com.atguigu.guliai.cache.EmbeddingCache;
 import com.atguigu.guliai.constant.SystemConstant;
 import io.qdrant.client.QdrantClient;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
@@ -7,6 +9,8 @@ import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.vectorstore.qdrant.QdrantVectorStore;
 import org.springframework.ai.vectorstore.qdrant.autoconfigure.QdrantVectorStoreProperties;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -27,14 +31,42 @@ public class QdrantVectorStoreConfig {
     QdrantVectorStoreProperties properties;
 
     /**
-     * OpenAi向量数据库
+     * 带缓存的OpenAi向量模型，相同文本只向量化一次
      * @param openAiEmbeddingModel
+     * @param embeddingCache
+     * @param model
+     * @return
+     */
+    @Bean
+    public CachingEmbeddingModel openAiCachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                             EmbeddingCache embeddingCache,
+                                                             @Value("${spring.ai.openai.embedding.options.model:openai}") String model) {
+        return new CachingEmbeddingModel(openAiEmbeddingModel, model, embeddingCache);
+    }
+
+    /**
+     * 带缓存的Ollama向量模型
+     * @param ollamaEmbeddingModel
+     * @param embeddingCache
+     * @param model
      * @return
      */
     @Bean
-    public QdrantVectorStore openAiVectorStore(OpenAiEmbeddingModel openAiEmbeddingModel) {
+    public CachingEmbeddingModel ollamaCachingEmbeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                                             EmbeddingCache embeddingCache,
+                                                             @Value("${spring.ai.ollama.embedding.model:ollama}") String model) {
+        return new CachingEmbeddingModel(ollamaEmbeddingModel, model, embeddingCache);
+    }
+
+    /**
+     * OpenAi向量数据库
+     * @param openAiCachingEmbeddingModel
+     * @return
+     */
+    @Bean
+    public QdrantVectorStore openAiVectorStore(@Qualifier("openAiCachingEmbeddingModel") CachingEmbeddingModel openAiCachingEmbeddingModel) {
         //不同的大模型使用的维度是不同的
-        return QdrantVectorStore.builder(qdrantClient, openAiEmbeddingModel) // 传入必需参数
+        return QdrantVectorStore.builder(qdrantClient, openAiCachingEmbeddingModel) // 传入必需参数
                 // .collectionName(SystemConstant.VECTOR_STORE_OPENAI)
                 .initializeSchema(true)  // 强制初始化schema确保维度配置生效
                 .build();
@@ -42,12 +74,12 @@ public class QdrantVectorStoreConfig {
 
     /**
      * Ollama向量数据库
-     * @param ollamaEmbeddingModel
+     * @param ollamaCachingEmbeddingModel
      * @return
      */
     @Bean
-    public QdrantVectorStore ollamaVectorStore(OllamaEmbeddingModel ollamaEmbeddingModel) {
-        return QdrantVectorStore.builder(qdrantClient, ollamaEmbeddingModel)
+    public QdrantVectorStore ollamaVectorStore(@Qualifier("ollamaCachingEmbeddingModel") CachingEmbeddingModel ollamaCachingEmbeddingModel) {
+        return QdrantVectorStore.builder(qdrantClient, ollamaCachingEmbeddingModel)
                 .collectionName(SystemConstant.VECTOR_STORE_OLLAMA)
                 .initializeSchema(true)
                 .build();
@@ -0,0 +1,46 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Ollama RAG 查询重写配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.query-rewrite")
+public class QueryRewriteProperties {
+
+    /** 是否对可直接检索的查询跳过重写 */
+    private boolean skipEnabled = true;
+
+    /** 可跳过重写的查询最小字数 */
+    private int skipMinChars = 4;
+
+    /** 可跳过重写的查询最大字数，过长的口语化提问仍需重写 */
+    private int skipMaxChars = 40;
+
+    /** 查询词在知识库词表中的覆盖率达到该值时视为可直接检索 */
+    private double skipMinVocabularyCoverage = 0.6;
+
+    /** 重写结果缓存条数 */
+    private int cacheMaxEntries = 1000;
+
+    /** 重写结果缓存存活时间 */
+    private Duration cacheTtl = Duration.ofHours(1);
+
+    /** 是否在重写的同时用原始查询推测性检索 */
+    private boolean speculativeEnabled = true;
+
+    /** 原始查询检索的最高向量相似度达到该值时直接采用，不再等待重写 */
+    private double speculativeAcceptScore = 0.75;
+
+    /** 推测性重写独立线程池的线程数，重写还受大模型调度并发限制，无需过大 */
+    private int rewriteThreads = 4;
+
+    /** 等待重写结果的最长时间，超时后使用原始查询 */
+    private Duration rewriteTimeout = Duration.ofSeconds(15);
+}
@@ -0,0 +1,37 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 可续传流式对话配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.resumable-stream")
+public class ResumableStreamProperties {
+
+    /** 每轮回答最多保留的分片数，超出后丢弃最早的分片 */
+    private int bufferSize = 1024;
+
+    /** 回答结束后分片继续保留的时间，期间断线的客户端仍可续传 */
+    private Duration retention = Duration.ofMinutes(5);
+
+    /** 是否把分片同步到 Redis，多节点部署时断线重连到其他节点也能续传 */
+    private boolean redisEnabled = false;
+
+    /** 同步到 Redis 的批量大小 */
+    private int redisBatchSize = 64;
+
+    /** 同步到 Redis 的最长间隔 */
+    private Duration redisFlushInterval = Duration.ofMillis(50);
+
+    /** Redis 中分片的过期时间，每次写入时刷新 */
+    private Duration redisTtl = Duration.ofMinutes(30);
+
+    /** 从 Redis 续传时轮询新分片的间隔 */
+    private Duration pollInterval = Duration.ofMillis(200);
+}
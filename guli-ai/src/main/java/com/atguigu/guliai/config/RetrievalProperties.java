@@ -0,0 +1,41 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ollama RAG 检索配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.retrieval")
+public class RetrievalProperties {
+
+    /** 是否开启向量 + 关键词混合检索，关闭时只做向量检索 */
+    private boolean hybridEnabled = true;
+
+    /** 最终交给大模型的文档数 */
+    private int topK = 3;
+
+    /** 向量检索的最小相似度 */
+    private double similarityThreshold = 0.6;
+
+    /** 混合检索时向量检索的候选数 */
+    private int vectorCandidates = 6;
+
+    /** 混合检索时关键词检索的候选数 */
+    private int keywordCandidates = 6;
+
+    /** 倒数排名融合常数 k，越大排名靠后的文档权重衰减越慢 */
+    private int rrfK = 60;
+
+    /** 关键词检索命中的查询词占比下限，过滤只命中个别常用词的文档 */
+    private double keywordMinShouldMatch = 0.3;
+
+    /** BM25 词频饱和参数 */
+    private double bm25K1 = 1.2;
+
+    /** BM25 文档长度归一化参数 */
+    private double bm25B = 0.75;
+}
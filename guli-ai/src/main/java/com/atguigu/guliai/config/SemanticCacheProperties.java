@@ -0,0 +1,31 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 语义回答缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.semantic-cache")
+public class SemanticCacheProperties {
+
+    /** 是否开启语义缓存 */
+    private boolean enabled = true;
+
+    /** 命中所需的最小余弦相似度 */
+    private double similarityThreshold = 0.92;
+
+    /** 缓存条目存活时间 */
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /** 每个项目最多缓存的回答条数，超出后淘汰最久未使用的条目 */
+    private int maxEntriesPerProject = 500;
+
+    /** 知识库变化时是否通过 Redis 发布订阅通知其他节点失效 */
+    private boolean broadcast = true;
+}
@@ -0,0 +1,22 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 敏感词配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.sensitive")
+public class SensitiveWordProperties {
+
+    /** 参数设置（sys_config）中存放敏感词的参数键，多个词用逗号、分号或换行分隔，与内置词库合并生效 */
+    private String configKey = "ai.chat.sensitiveWords";
+
+    /** 检查参数是否变更的间隔，变更后后台重建词库，不影响正在进行的匹配 */
+    private Duration reloadInterval = Duration.ofSeconds(30);
+}
@@ -0,0 +1,34 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 智能体工具结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.tool-cache")
+public class ToolCacheProperties {
+
+    /** 是否开启工具结果缓存 */
+    private boolean enabled = true;
+
+    /** 未单独配置的工具使用的存活时间 */
+    private Duration defaultTtl = Duration.ofMinutes(5);
+
+    /** 按工具名配置的存活时间，0 表示该工具不缓存 */
+    private Map<String, Duration> ttl = new HashMap<>();
+
+    /** 最多缓存的结果条数，超出后淘汰最久未使用的条目 */
+    private int maxEntries = 2000;
+
+    public Duration ttlOf(String tool) {
+        return ttl.getOrDefault(tool, defaultTtl);
+    }
+}
@@ -0,0 +1,38 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 智能体工具结果裁剪配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.tool-shaping")
+public class ToolShapingProperties {
+
+    /** 是否裁剪工具结果，关闭时按原样输出完整 JSON */
+    private boolean enabled = true;
+
+    /** 未单独配置的工具最多输出的行数 */
+    private int defaultMaxRows = 20;
+
+    /** 按工具名配置的输出字段与行数 */
+    private Map<String, Shape> tools = new HashMap<>();
+
+    @Data
+    public static class Shape {
+
+        /** 输出的字段及顺序，为空时输出全部字段 */
+        private List<String> fields = new ArrayList<>();
+
+        /** 最多输出的行数，为空时使用默认值 */
+        private Integer maxRows;
+    }
+}
@@ -0,0 +1,17 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库批量删除向量配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.vector-deletion")
+public class VectorDeletionProperties {
+
+    /** 每次按 knowledgeId IN (...) 过滤删除的知识库数 */
+    private int batchSize = 200;
+}
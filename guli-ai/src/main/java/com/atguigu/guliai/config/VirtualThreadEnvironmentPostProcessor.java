@@ -0,0 +1,31 @@
+package com.atguigu.guliai.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * 开启虚拟线程时让 Reactor 的 boundedElastic 调度器也运行在虚拟线程上
+ * 大模型调用、Qdrant、MCP、MongoDB 等阻塞调用都经由 boundedElastic 执行，Reactor 在首次使用调度器时读取系统属性，
+ * 因此必须在容器创建任何 Bean 之前设置。已通过 -D 显式指定的属性不覆盖。
+ */
+public class VirtualThreadEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String BOUNDED_ELASTIC_ON_VIRTUAL_THREADS = "reactor.schedulers.defaultBoundedElasticOnVirtualThreads";
+    static final String BOUNDED_ELASTIC_SIZE = "reactor.schedulers.defaultBoundedElasticSize";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!Threading.VIRTUAL.isActive(environment)) {
+            return;
+        }
+        if (System.getProperty(BOUNDED_ELASTIC_ON_VIRTUAL_THREADS) == null) {
+            System.setProperty(BOUNDED_ELASTIC_ON_VIRTUAL_THREADS, "true");
+        }
+        if (System.getProperty(BOUNDED_ELASTIC_SIZE) == null) {
+            Integer size = environment.getProperty("guli.ai.virtual-threads.bounded-elastic-size", Integer.class, 1000);
+            System.setProperty(BOUNDED_ELASTIC_SIZE, String.valueOf(Math.max(1, size)));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.atguigu.guliai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 虚拟线程模式配置，开关本身为 spring.threads.virtual.enabled，需要 JDK 21 及以上
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.ai.virtual-threads")
+public class VirtualThreadProperties {
+
+    /** 虚拟线程模式下 boundedElastic 调度器同时执行的阻塞任务上限（默认 1000，平台线程模式下 Reactor 默认为 CPU 核数 * 10） */
+    private int boundedElasticSize = 1000;
+
+    /** 是否监控虚拟线程钉住载体线程 */
+    private boolean pinnedMonitorEnabled = true;
+
+    /** 钉住时间超过该值才记录 */
+    private Duration pinnedThreshold = Duration.ofMillis(20);
+
+    /** 汇总输出钉住位置的间隔 */
+    private Duration pinnedReportInterval = Duration.ofMinutes(10);
+
+    /** 首次发现某个钉住位置时日志输出的栈深度 */
+    private int pinnedStackDepth = 12;
+}
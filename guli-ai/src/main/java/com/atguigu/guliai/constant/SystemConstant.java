@@ -140,6 +140,12 @@ public class SystemConstant {
     public static final String CHAT_COLLECTION_PREFIX = "chat_";
     public static final String MSG_COLLECTION_PREFIX = "message_";
 
+    // 知识库入库任务集合
+    public static final String INGEST_JOB_COLLECTION = "knowledge_ingest_job";
+
+    // 会话滚动摘要集合
+    public static final String CHAT_SUMMARY_COLLECTION = "chat_summary";
+
     // 集合数量限制
     public static final int CHAT_COLLECTION_COUNT = 100;
     public static final int MSG_COLLECTION_COUNT = 1000;
@@ -150,6 +156,7 @@ public class SystemConstant {
     // 工具名称常量
     public static final String TOOL_QUERY_COURSE = "queryCourse";
     public static final String TOOL_QUERY_SCHOOLS = "querySchools";
+    public static final String TOOL_QUERY_ALL_SCHOOLS = "queryAllSchools";
     public static final String TOOL_GENERATE_RESERVATION = "generateReservation";
     public static final String TOOL_MAPS_WEATHER = "maps_future_weather";
 }
\ No newline at end of file
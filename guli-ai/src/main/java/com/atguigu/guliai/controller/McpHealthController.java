@@ -1,11 +1,15 @@
 package com.atguigu.guliai.controller;
 
 import com.atguigu.guliai.mcp.AmapMcpService;
+import com.atguigu.guliai.mcp.McpClientPool;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 import io.modelcontextprotocol.spec.McpSchema;
 
+import java.util.List;
+import java.util.Map;
+
 @Slf4j
 @RestController
 @RequestMapping("/api/mcp")
@@ -13,6 +17,8 @@ import io.modelcontextprotocol.spec.McpSchema;
 public class McpHealthController {
     
     private final AmapMcpService amapMcpService;
+
+    private final McpClientPool mcpClientPool;
     
     @GetMapping("/health")
     public String health() {
@@ -28,4 +34,13 @@ public class McpHealthController {
     public McpSchema.ListToolsResult tools() {
         return amapMcpService.getAvailableTools();
     }
-}
\ No newline at end of file
+
+    /**
+     * 连接池与熔断器状态
+     */
+    @GetMapping("/pool")
+    public Map<String, Object> pool() {
+        List<McpClientPool.ConnectionStatus> connections = mcpClientPool.status();
+        return Map.of("breaker", mcpClientPool.breakerState(), "connections", connections);
+    }
+}
@@ -0,0 +1,20 @@
+package com.atguigu.guliai.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum IngestJobStateEnum {
+    PENDING("PENDING", "等待执行"),
+    RUNNING("RUNNING", "执行中"),
+    RETRYING("RETRYING", "等待重试"),
+    COMPLETED("COMPLETED", "已完成"),
+    FAILED("FAILED", "失败");
+
+    private final String state;
+    private final String desc;
+
+    IngestJobStateEnum(String state, String desc) {
+        this.state = state;
+        this.desc = desc;
+    }
+}
@@ -0,0 +1,87 @@
+package com.atguigu.guliai.etl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ETL 单个阶段的吞吐统计
+ * 各阶段在流水线中重叠执行，因此以该阶段第一个分块开始到最后一个分块结束的墙钟时间计算吞吐
+ */
+public class EtlStageStats {
+
+    private final String stage;
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+
+    private final Timer timer;
+    private final Counter chunkCounter;
+    private final Counter tokenCounter;
+
+    public EtlStageStats(String stage, MeterRegistry meterRegistry) {
+        this.stage = stage;
+        this.timer = Timer.builder("guli.ai.etl.stage.duration")
+                .tag("stage", stage)
+                .description("ETL 各阶段单次处理耗时")
+                .register(meterRegistry);
+        this.chunkCounter = Counter.builder("guli.ai.etl.stage.chunks")
+                .tag("stage", stage)
+                .register(meterRegistry);
+        this.tokenCounter = Counter.builder("guli.ai.etl.stage.tokens")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次处理
+     *
+     * @param startNanos 开始时间（System.nanoTime）
+     * @param chunkCount 处理的分块数
+     * @param tokenCount 处理的 token 数
+     */
+    public void record(long startNanos, int chunkCount, long tokenCount) {
+        long end = System.nanoTime();
+        firstStartNanos.accumulateAndGet(startNanos, Math::min);
+        lastEndNanos.accumulateAndGet(end, Math::max);
+        chunks.addAndGet(chunkCount);
+        tokens.addAndGet(tokenCount);
+        timer.record(end - startNanos, TimeUnit.NANOSECONDS);
+        chunkCounter.increment(chunkCount);
+        tokenCounter.increment(tokenCount);
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public long getTokens() {
+        return tokens.get();
+    }
+
+    public double getElapsedSeconds() {
+        long start = firstStartNanos.get();
+        long end = lastEndNanos.get();
+        return end > start ? (end - start) / 1_000_000_000.0 : 0.0;
+    }
+
+    public double getChunksPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? chunks.get() / seconds : 0.0;
+    }
+
+    public double getTokensPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? tokens.get() / seconds : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[分块=%d, tokens=%d, 耗时=%.2fs, %.2f chunks/s, %.1f tokens/s]",
+                stage, getChunks(), getTokens(), getElapsedSeconds(), getChunksPerSecond(), getTokensPerSecond());
+    }
+}
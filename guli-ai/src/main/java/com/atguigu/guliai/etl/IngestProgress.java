@@ -0,0 +1,39 @@
+package com.atguigu.guliai.etl;
+
+/**
+ * 知识库入库进度回调
+ * 分块顺序在多次执行间保持一致，因此已提交的分块数即可作为续跑的断点
+ */
+public interface IngestProgress {
+
+    /** 不关心进度的调用方使用 */
+    IngestProgress NONE = new IngestProgress() {
+        @Override
+        public int committedChunks() {
+            return 0;
+        }
+
+        @Override
+        public void onTotal(int totalChunks) {
+        }
+
+        @Override
+        public void onBatchCommitted(int committedChunks) {
+        }
+    };
+
+    /**
+     * 之前已写入向量库的分块数，续跑时跳过这些分块
+     */
+    int committedChunks();
+
+    /**
+     * 分块完成后回调分块总数
+     */
+    void onTotal(int totalChunks);
+
+    /**
+     * 每批分块写入向量库后回调累计已提交的分块数
+     */
+    void onBatchCommitted(int committedChunks);
+}
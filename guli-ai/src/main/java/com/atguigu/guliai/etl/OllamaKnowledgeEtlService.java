@@ -1,35 +1,61 @@
 package com.atguigu.guliai.etl;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.config.EtlPipelineProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.guliai.llm.LlmRequestScheduler;
+import com.atguigu.guliai.llm.LlmTenant;
+import com.atguigu.guliai.rag.KeywordIndex;
 import com.atguigu.system.domain.ChatKnowledge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.qdrant.client.ConditionFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.Points;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.document.DocumentWriter;
 import org.springframework.ai.model.transformer.KeywordMetadataEnricher;
-import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.TextReader;
 import org.springframework.ai.reader.markdown.MarkdownDocumentReader;
 import org.springframework.ai.reader.markdown.config.MarkdownDocumentReaderConfig;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.qdrant.QdrantVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * 使用 Spring AI 官方 ETL 规范实现：
  * Extract（DocumentReader） -> Transform（DocumentTransformer） -> Load（DocumentWriter）
  * 仅用于 Ollama RAG 的数据注入流程。
+ * 分块后以流水线方式执行：关键词增强按有限并发调用大模型，增强完成的分块按批向量化并写入向量库。
+ * 每个分块以「knowledgeId + 内容哈希」生成确定性的点id，编辑知识库后可按哈希增量重建索引。
  */
 @Slf4j
 @Component
@@ -37,26 +63,120 @@ public class OllamaKnowledgeEtlService {
 
     private static final int DEFAULT_CHUNK_SIZE = 500;
 
-    private final QdrantVectorStore ollamaVectorStore;
-    private final OllamaChatModel ollamaChatModel;
+    /** 分块内容哈希在向量元数据中的键 */
+    public static final String CONTENT_HASH_KEY = "contentHash";
 
-    public OllamaKnowledgeEtlService(QdrantVectorStore ollamaVectorStore,
-                                     OllamaChatModel ollamaChatModel) {
+    /** 分页遍历已入库分块时每页的点数 */
+    private static final int SCROLL_PAGE_SIZE = 256;
+
+    private final VectorStore ollamaVectorStore;
+    /** 只在增量重建索引时使用，未接入 Qdrant 时（如离线基准）入库流程不受影响 */
+    private final ObjectProvider<QdrantClient> qdrantClientProvider;
+    private final ChatModel ollamaChatModel;
+    private final EtlPipelineProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final KeywordIndex keywordIndex;
+    private final KeywordMetadataEnricher keywordMetadataEnricher;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public OllamaKnowledgeEtlService(@Qualifier("ollamaVectorStore") VectorStore ollamaVectorStore,
+                                     ObjectProvider<QdrantClient> qdrantClientProvider,
+                                     @Qualifier("ollamaChatModel") ChatModel ollamaChatModel,
+                                     EtlPipelineProperties properties,
+                                     MeterRegistry meterRegistry,
+                                     KeywordIndex keywordIndex,
+                                     LlmRequestScheduler llmRequestScheduler) {
         this.ollamaVectorStore = ollamaVectorStore;
+        this.qdrantClientProvider = qdrantClientProvider;
         this.ollamaChatModel = ollamaChatModel;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.keywordIndex = keywordIndex;
+        this.llmRequestScheduler = llmRequestScheduler;
+        this.keywordMetadataEnricher = new KeywordMetadataEnricher(this.ollamaChatModel, properties.getKeywordCount());
     }
 
     /**
      * 入口：对单条知识库进行完整 ETL 并写入向量库。
      */
     public void etlIngest(ChatKnowledge chatKnowledge) {
+        etlIngest(chatKnowledge, IngestProgress.NONE);
+    }
+
+    /**
+     * 入口：带进度回调的 ETL，跳过 progress 中已提交的分块，每批写入后回调累计进度。
+     */
+    public void etlIngest(ChatKnowledge chatKnowledge, IngestProgress progress) {
         if (chatKnowledge == null || StringUtils.isEmpty(chatKnowledge.getContent())) {
             log.warn("知识库内容为空，跳过ETL");
             return;
         }
+        EtlStageStats extractStats = new EtlStageStats("extract", meterRegistry);
+        EtlStageStats splitStats = new EtlStageStats("split", meterRegistry);
+        EtlStageStats enrichStats = new EtlStageStats("enrich", meterRegistry);
+        EtlStageStats loadStats = new EtlStageStats("load", meterRegistry);
+
+        long start = System.nanoTime();
         List<Document> extracted = extract(chatKnowledge);
-        List<Document> transformed = transform(extracted, chatKnowledge);
-        load(transformed);
+        extractStats.record(start, extracted.size(), countTokens(extracted));
+
+        start = System.nanoTime();
+        List<Document> chunks = split(extracted, chatKnowledge);
+        splitStats.record(start, chunks.size(), countTokens(chunks));
+        progress.onTotal(chunks.size());
+
+        int skip = Math.min(Math.max(progress.committedChunks(), 0), chunks.size());
+        if (skip > 0) {
+            log.info("ETL续跑 knowledgeId={}：跳过已提交的 {}/{} 个分块", chatKnowledge.getKnowledgeId(), skip, chunks.size());
+        }
+        AtomicInteger committed = new AtomicInteger(skip);
+
+        enrichAndLoad(chunks.subList(skip, chunks.size()), enrichStats, loadStats,
+                batch -> progress.onBatchCommitted(committed.addAndGet(batch.size())));
+
+        log.info("ETL完成 knowledgeId={}: {} | {} | {} | {}",
+                chatKnowledge.getKnowledgeId(), extractStats, splitStats, enrichStats, loadStats);
+    }
+
+    /**
+     * 增量重建索引：重新分块后按内容哈希与向量库中该 knowledgeId 的已有分块比对，
+     * 只对新增或变化的分块做增强与向量化，再删除已不存在的旧分块。
+     * 未写入哈希的历史数据点id不匹配，会在本次被整体替换。
+     */
+    public ReindexResult reindex(ChatKnowledge chatKnowledge) {
+        String knowledgeId = String.valueOf(chatKnowledge.getKnowledgeId());
+        EtlStageStats enrichStats = new EtlStageStats("enrich", meterRegistry);
+        EtlStageStats loadStats = new EtlStageStats("load", meterRegistry);
+
+        // 同一文档中内容完全相同的分块共用一个点
+        Map<String, Document> wanted = new LinkedHashMap<>();
+        if (StringUtils.isNotEmpty(chatKnowledge.getContent())) {
+            for (Document chunk : split(extract(chatKnowledge), chatKnowledge)) {
+                wanted.putIfAbsent(chunk.getId(), chunk);
+            }
+        }
+        Set<String> indexed = listIndexedPointIds(knowledgeId);
+
+        List<Document> changed = wanted.values().stream()
+                .filter(chunk -> !indexed.contains(chunk.getId()))
+                .toList();
+        List<String> stale = indexed.stream()
+                .filter(id -> !wanted.containsKey(id))
+                .toList();
+
+        // 先写入新分块再删除旧分块，重建期间检索不会出现空窗
+        if (!changed.isEmpty()) {
+            enrichAndLoad(changed, enrichStats, loadStats, batch -> { });
+        }
+        if (!stale.isEmpty()) {
+            this.ollamaVectorStore.delete(stale);
+            this.keywordIndex.remove(stale);
+        }
+
+        ReindexResult result = new ReindexResult(wanted.size(), wanted.size() - changed.size(), changed.size(), stale.size());
+        log.info("增量重建完成 knowledgeId={}: {} | {} | {}", knowledgeId, result, enrichStats, loadStats);
+        return result;
     }
 
     /**
@@ -133,17 +253,91 @@ public class OllamaKnowledgeEtlService {
         if (documents == null || documents.isEmpty()) {
             return List.of();
         }
+        List<Document> chunks = split(documents, chatKnowledge);
+        return enrich(Flux.fromIterable(chunks), new EtlStageStats("enrich", meterRegistry))
+                .collectList()
+                .block();
+    }
+
+    /**
+     * Transform 第一步：按 token 分块。
+     */
+    public List<Document> split(List<Document> documents, ChatKnowledge chatKnowledge) {
+        if (documents == null || documents.isEmpty()) {
+            return List.of();
+        }
 
         TokenTextSplitter splitter = new TokenTextSplitter(DEFAULT_CHUNK_SIZE, 100, 10, 5000, true);
         List<Document> chunks = splitter.apply(documents);
 
+        String knowledgeId = String.valueOf(chatKnowledge.getKnowledgeId());
+        List<Document> result = new ArrayList<>(chunks.size());
         for (Document chunk : chunks) {
-            chunk.getMetadata().put("chunkSize", String.valueOf(DEFAULT_CHUNK_SIZE));
-            chunk.getMetadata().put("knowledgeId", String.valueOf(chatKnowledge.getKnowledgeId()));
+            String hash = contentHash(chunk.getText());
+            Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+            metadata.put("chunkSize", String.valueOf(DEFAULT_CHUNK_SIZE));
+            metadata.put("knowledgeId", knowledgeId);
+            metadata.put(CONTENT_HASH_KEY, hash);
+            // 点id由内容决定，重复写入同一分块只会覆盖而不会产生重复向量
+            result.add(Document.builder()
+                    .id(chunkId(knowledgeId, hash))
+                    .text(chunk.getText())
+                    .metadata(metadata)
+                    .build());
         }
+        return result;
+    }
 
-        KeywordMetadataEnricher enricher = new KeywordMetadataEnricher(this.ollamaChatModel, 8);
-        return enricher.apply(chunks);
+    static String contentHash(String text) {
+        return DigestUtil.sha256Hex(text != null ? text : "");
+    }
+
+    static String chunkId(String knowledgeId, String contentHash) {
+        return UUID.nameUUIDFromBytes((knowledgeId + ":" + contentHash).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Transform 第二步：关键词增强，按配置的并发数同时调用大模型，输出顺序与输入一致。
+     */
+    private Flux<Document> enrich(Flux<Document> chunks, EtlStageStats stats) {
+        return chunks.flatMapSequential(chunk -> Mono.fromCallable(() -> {
+                            long start = System.nanoTime();
+                            Document enriched = enrichChunk(chunk);
+                            stats.record(start, 1, tokenCountEstimator.estimate(chunk.getText()));
+                            return enriched;
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()),
+                Math.max(1, properties.getEnrichConcurrency()));
+    }
+
+    /**
+     * 增强与写入重叠执行：每凑满一批增强完成的分块就立即向量化写入，写入后回调该批次
+     */
+    private void enrichAndLoad(List<Document> chunks, EtlStageStats enrichStats, EtlStageStats loadStats,
+                               Consumer<List<Document>> onBatchLoaded) {
+        enrich(Flux.fromIterable(chunks), enrichStats)
+                .buffer(Math.max(1, properties.getEmbedBatchSize()))
+                .concatMap(batch -> Mono.fromRunnable(() -> {
+                            loadBatch(batch, loadStats);
+                            onBatchLoaded.accept(batch);
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .then()
+                .block();
+    }
+
+    private Document enrichChunk(Document chunk) {
+        try {
+            // 关键词增强属于后台任务，与对话共用 Ollama 时让出槽位
+            LlmTenant tenant = LlmTenant.of(chunk.getMetadata().get("projectId"), "etl");
+            return llmRequestScheduler.execute(LlmRequestScheduler.Priority.BACKGROUND, tenant,
+                    () -> keywordMetadataEnricher.apply(List.of(chunk)).get(0));
+        } catch (Exception e) {
+            // 单个分块增强失败不影响整体入库，仅缺少关键词元数据
+            log.warn("关键词增强失败，按原始分块写入。knowledgeId={} err={}",
+                    chunk.getMetadata().get("knowledgeId"), e.getMessage());
+            return chunk;
+        }
     }
 
     /**
@@ -155,9 +349,77 @@ public class OllamaKnowledgeEtlService {
             return;
         }
         new VectorStoreWriter(this.ollamaVectorStore).write(documents);
+        this.keywordIndex.add(documents);
         log.info("写入向量库完成，文档分块数：{}", documents.size());
     }
 
+    /**
+     * Load：写入一批分块，一次 add 调用对应一次批量向量化请求。
+     */
+    private void loadBatch(List<Document> batch, EtlStageStats stats) {
+        long start = System.nanoTime();
+        new VectorStoreWriter(this.ollamaVectorStore).write(batch);
+        // 向量写入成功后同步更新关键词索引，保证两路检索看到的分块一致
+        this.keywordIndex.add(batch);
+        stats.record(start, batch.size(), countTokens(batch));
+        log.debug("写入向量库批次完成，分块数：{}", batch.size());
+    }
+
+    /**
+     * 分页遍历向量库中某条知识库的全部点id
+     */
+    private Set<String> listIndexedPointIds(String knowledgeId) {
+        Set<String> ids = new HashSet<>();
+        Points.Filter filter = Points.Filter.newBuilder()
+                .addMust(ConditionFactory.matchKeyword("knowledgeId", knowledgeId))
+                .build();
+        Points.PointId offset = null;
+        try {
+            do {
+                Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                        .setCollectionName(SystemConstant.VECTOR_STORE_OLLAMA)
+                        .setFilter(filter)
+                        .setWithPayload(WithPayloadSelectorFactory.enable(false))
+                        .setLimit(SCROLL_PAGE_SIZE);
+                if (offset != null) {
+                    request.setOffset(offset);
+                }
+                Points.ScrollResponse response = qdrantClientProvider.getObject().scrollAsync(request.build()).get();
+                for (Points.RetrievedPoint point : response.getResultList()) {
+                    ids.add(point.getId().hasUuid() ? point.getId().getUuid() : String.valueOf(point.getId().getNum()));
+                }
+                offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+            } while (offset != null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("查询已入库分块被中断，knowledgeId=" + knowledgeId, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("查询已入库分块失败，knowledgeId=" + knowledgeId, e.getCause());
+        }
+        return ids;
+    }
+
+    private long countTokens(List<Document> documents) {
+        long total = 0;
+        for (Document document : documents) {
+            if (document.getText() != null) {
+                total += tokenCountEstimator.estimate(document.getText());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 增量重建结果
+     *
+     * @param chunks   新内容的分块数
+     * @param reused   哈希未变、直接复用的分块数
+     * @param embedded 重新向量化的分块数
+     * @param deleted  删除的旧分块数
+     */
+    public record ReindexResult(int chunks, int reused, int embedded, int deleted) {
+    }
+
     /**
      * 基于 VectorStore 的 DocumentWriter 实现。
      */
@@ -0,0 +1,23 @@
+package com.atguigu.guliai.llm;
+
+/**
+ * 大模型调度队列已满或排队超时，消息可直接展示给用户
+ */
+public class LlmBusyException extends RuntimeException {
+
+    private final int position;
+
+    public LlmBusyException(int position) {
+        super(position > 0
+                ? "当前咨询人数较多，您排在第 " + position + " 位，请稍后再试~"
+                : "当前咨询人数较多，请稍后再试~");
+        this.position = position;
+    }
+
+    /**
+     * @return 被拒绝或排队超时时的排队位置，未知时为 0
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,366 @@
+package com.atguigu.guliai.llm;
+
+import com.atguigu.guliai.config.LlmSchedulerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Ollama 大模型请求调度器
+ * 全局限制并发数，超出的请求按优先级排队：对话请求总是先于后台任务获得空闲槽位，
+ * 后台任务另有并发上限，保证对话始终有可用槽位。同一优先级内先在项目之间轮转、再在用户之间轮转，
+ * 单个用户的突发请求不会挤占其他人。对话请求排队已满或超时立即失败并给出排队位置，后台任务只排队不拒绝。
+ */
+@Slf4j
+@Component
+public class LlmRequestScheduler {
+
+    public enum Priority {
+        /** 用户正在等待的对话请求 */
+        INTERACTIVE,
+        /** 知识库关键词增强、会话摘要等后台任务 */
+        BACKGROUND
+    }
+
+    private final LlmSchedulerProperties properties;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Priority, FairQueue> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> active = new EnumMap<>(Priority.class);
+
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Counter rejectedCounter;
+
+    public LlmRequestScheduler(LlmSchedulerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new FairQueue());
+            active.put(priority, 0);
+            String tag = priority.name().toLowerCase();
+            waitTimers.put(priority, Timer.builder("guli.ai.llm.wait")
+                    .tag("priority", tag)
+                    .description("大模型请求排队等待时间")
+                    .register(meterRegistry));
+            Gauge.builder("guli.ai.llm.queue.depth", this, s -> s.queued(priority))
+                    .tag("priority", tag)
+                    .description("排队中的大模型请求数")
+                    .register(meterRegistry);
+            Gauge.builder("guli.ai.llm.active", this, s -> s.active(priority))
+                    .tag("priority", tag)
+                    .description("正在执行的大模型请求数")
+                    .register(meterRegistry);
+        }
+        this.rejectedCounter = Counter.builder("guli.ai.llm.rejected")
+                .description("因繁忙被拒绝的对话请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获得槽位后再订阅流式调用，流结束、出错或被取消时归还槽位
+     */
+    public <T> Flux<T> schedule(Priority priority, LlmTenant tenant, Supplier<Flux<T>> call) {
+        return Flux.usingWhen(acquire(priority, tenant),
+                permit -> call.get(),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    /**
+     * 阻塞式调用，调用线程会等待槽位，只能在可阻塞的线程中使用
+     */
+    public <T> T execute(Priority priority, LlmTenant tenant, Callable<T> call) throws Exception {
+        Permit permit = acquire(priority, tenant).block();
+        try {
+            return call.call();
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * 申请一个槽位
+     */
+    public Mono<Permit> acquire(Priority priority, LlmTenant tenant) {
+        if (!properties.isEnabled()) {
+            return Mono.just(Permit.NOOP);
+        }
+        if (priority != Priority.INTERACTIVE || properties.getQueueTimeout() == null) {
+            return Mono.create(sink -> enqueue(new Waiter(priority, tenant, sink)));
+        }
+        // 超时先取消排队再发出错误，取消时记下的排队位置随繁忙提示返回
+        return Mono.defer(() -> {
+            AtomicReference<Waiter> enqueued = new AtomicReference<>();
+            return Mono.<Permit>create(sink -> {
+                        Waiter waiter = new Waiter(priority, tenant, sink);
+                        enqueued.set(waiter);
+                        enqueue(waiter);
+                    })
+                    .timeout(properties.getQueueTimeout())
+                    .onErrorMap(TimeoutException.class, e -> {
+                        rejectedCounter.increment();
+                        Waiter waiter = enqueued.get();
+                        return new LlmBusyException(waiter != null ? waiter.position : 0);
+                    });
+        });
+    }
+
+    public int queued(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int active(Priority priority) {
+        lock.lock();
+        try {
+            return active.get(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Waiter waiter) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            FairQueue queue = queues.get(waiter.priority);
+            if (waiter.priority == Priority.INTERACTIVE) {
+                int position = queue.size + 1;
+                if (queue.size >= properties.getMaxQueueDepth()
+                        || queue.count(waiter.tenant) >= properties.getMaxQueuedPerUser()) {
+                    // 槽位空闲时不会排队，只有需要等待时才可能被拒绝
+                    if (!hasFreeSlot(Priority.INTERACTIVE)) {
+                        rejectedCounter.increment();
+                        log.info("大模型繁忙，拒绝对话请求 tenant={} position={}", waiter.tenant, position);
+                        waiter.sink.error(new LlmBusyException(position));
+                        return;
+                    }
+                }
+            }
+            queue.add(waiter);
+            waiter.sink.onCancel(() -> cancel(waiter));
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        deliver(granted);
+    }
+
+    private void release(Priority priority) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            active.merge(priority, -1, Integer::sum);
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        deliver(granted);
+    }
+
+    /**
+     * 排队中被取消时移出队列；已分配槽位但调用方来不及接收时归还槽位
+     */
+    private void cancel(Waiter waiter) {
+        Permit leaked = null;
+        lock.lock();
+        try {
+            FairQueue queue = queues.get(waiter.priority);
+            waiter.position = queue.positionOf(waiter);
+            if (!queue.remove(waiter) && waiter.permit != null) {
+                leaked = waiter.permit;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (leaked != null) {
+            leaked.release();
+        }
+    }
+
+    /**
+     * 调用方需持有锁，返回本次分配到槽位的请求，在锁外通知
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        while (true) {
+            Priority next = null;
+            if (queues.get(Priority.INTERACTIVE).size > 0 && hasFreeSlot(Priority.INTERACTIVE)) {
+                next = Priority.INTERACTIVE;
+            } else if (queues.get(Priority.BACKGROUND).size > 0 && hasFreeSlot(Priority.BACKGROUND)) {
+                next = Priority.BACKGROUND;
+            }
+            if (next == null) {
+                return granted;
+            }
+            Waiter waiter = queues.get(next).poll();
+            active.merge(next, 1, Integer::sum);
+            Priority priority = next;
+            waiter.permit = new Permit(() -> release(priority));
+            granted.add(waiter);
+        }
+    }
+
+    private boolean hasFreeSlot(Priority priority) {
+        int total = active.get(Priority.INTERACTIVE) + active.get(Priority.BACKGROUND);
+        if (total >= Math.max(1, properties.getMaxConcurrency())) {
+            return false;
+        }
+        return priority == Priority.INTERACTIVE
+                || active.get(Priority.BACKGROUND) < Math.max(1, properties.getMaxBackgroundConcurrency());
+    }
+
+    private void deliver(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            waitTimers.get(waiter.priority).record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            waiter.sink.success(waiter.permit);
+        }
+    }
+
+    /**
+     * 已分配的槽位，重复归还无副作用
+     */
+    public static final class Permit {
+
+        static final Permit NOOP = new Permit(() -> {
+        });
+
+        private final Runnable onRelease;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Runnable onRelease) {
+            this.onRelease = onRelease;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final Priority priority;
+        final LlmTenant tenant;
+        final MonoSink<Permit> sink;
+        final long enqueuedAt = System.nanoTime();
+        /** 入队顺序，用于计算排队位置 */
+        long sequence;
+        Permit permit;
+        /** 被取消时的排队位置，不在队列中为 0 */
+        volatile int position;
+
+        Waiter(Priority priority, LlmTenant tenant, MonoSink<Permit> sink) {
+            this.priority = priority;
+            this.tenant = tenant != null ? tenant : LlmTenant.SYSTEM;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * 两级轮转队列：项目 -> 用户 -> 请求，每次取出后把该用户和项目移到队尾
+     */
+    private static final class FairQueue {
+        final LinkedHashMap<String, LinkedHashMap<String, ArrayDeque<Waiter>>> projects = new LinkedHashMap<>();
+        int size;
+        long nextSequence;
+
+        void add(Waiter waiter) {
+            waiter.sequence = nextSequence++;
+            projects.computeIfAbsent(waiter.tenant.project(), p -> new LinkedHashMap<>())
+                    .computeIfAbsent(waiter.tenant.user(), u -> new ArrayDeque<>())
+                    .add(waiter);
+            size++;
+        }
+
+        Waiter poll() {
+            Iterator<Map.Entry<String, LinkedHashMap<String, ArrayDeque<Waiter>>>> projectIt = projects.entrySet().iterator();
+            if (!projectIt.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, LinkedHashMap<String, ArrayDeque<Waiter>>> project = projectIt.next();
+            projectIt.remove();
+            LinkedHashMap<String, ArrayDeque<Waiter>> users = project.getValue();
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> userIt = users.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> user = userIt.next();
+            userIt.remove();
+            Waiter waiter = user.getValue().poll();
+            if (!user.getValue().isEmpty()) {
+                users.put(user.getKey(), user.getValue());
+            }
+            if (!users.isEmpty()) {
+                projects.put(project.getKey(), users);
+            }
+            size--;
+            return waiter;
+        }
+
+        boolean remove(Waiter waiter) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> users = projects.get(waiter.tenant.project());
+            ArrayDeque<Waiter> queue = users != null ? users.get(waiter.tenant.user()) : null;
+            if (queue == null || !queue.remove(waiter)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                users.remove(waiter.tenant.user());
+                if (users.isEmpty()) {
+                    projects.remove(waiter.tenant.project());
+                }
+            }
+            size--;
+            return true;
+        }
+
+        /**
+         * 排在该请求之前（更早入队）的请求数 + 1，不在队列中返回 0
+         */
+        int positionOf(Waiter waiter) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> users = projects.get(waiter.tenant.project());
+            ArrayDeque<Waiter> queue = users != null ? users.get(waiter.tenant.user()) : null;
+            if (queue == null || !queue.contains(waiter)) {
+                return 0;
+            }
+            int ahead = 0;
+            for (LinkedHashMap<String, ArrayDeque<Waiter>> projectUsers : projects.values()) {
+                for (ArrayDeque<Waiter> userQueue : projectUsers.values()) {
+                    for (Waiter other : userQueue) {
+                        if (other.sequence < waiter.sequence) {
+                            ahead++;
+                        }
+                    }
+                }
+            }
+            return ahead + 1;
+        }
+
+        int count(LlmTenant tenant) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> users = projects.get(tenant.project());
+            ArrayDeque<Waiter> queue = users != null ? users.get(tenant.user()) : null;
+            return queue != null ? queue.size() : 0;
+        }
+    }
+}
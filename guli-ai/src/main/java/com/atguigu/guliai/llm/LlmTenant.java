@@ -0,0 +1,20 @@
+package com.atguigu.guliai.llm;
+
+/**
+ * 大模型请求的归属，调度器先在项目之间轮转，再在同一项目的用户之间轮转
+ *
+ * @param project 项目标识
+ * @param user    用户标识，对话请求使用会话id
+ */
+public record LlmTenant(String project, String user) {
+
+    /** 在 Reactor 上下文中传递请求归属的键 */
+    public static final String CONTEXT_KEY = "guliai.llmTenant";
+
+    public static final LlmTenant SYSTEM = new LlmTenant("system", "system");
+
+    public static LlmTenant of(Object projectId, Object userId) {
+        return new LlmTenant(projectId != null ? String.valueOf(projectId) : "-",
+                userId != null ? String.valueOf(userId) : "-");
+    }
+}
@@ -0,0 +1,403 @@
+package com.atguigu.guliai.mcp;
+
+import com.atguigu.guliai.config.McpPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 高德 MCP 异步连接池
+ * 维护多条独立的 SSE 会话，每次调用选择进行中请求最少的健康连接。单次调用有截止时间，
+ * 超过对冲延迟仍未返回时在另一条连接上并行发起同一请求，先返回者胜出；连接错误时换连接重试。
+ * 连续失败触发熔断，熔断期间直接失败，熔断时间过后放行少量探测请求。
+ * 连接出错或探活失败时关闭旧会话并重建，不再只是标记状态。
+ * 高德地图工具都是只读查询，对冲与重试不会产生副作用。
+ */
+@Slf4j
+@Component
+public class McpClientPool {
+
+    private final McpPoolProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final McpCircuitBreaker breaker;
+    private final List<Connection> connections = new ArrayList<>();
+    private final AtomicReference<List<McpSchema.Tool>> tools = new AtomicReference<>(List.of());
+
+    private final Counter hedgedCounter;
+    private final Counter reconnectCounter;
+    private final Counter reconnectFailedCounter;
+
+    private String baseUrl;
+    private Disposable healthCheck;
+    private volatile boolean closed;
+
+    public McpClientPool(McpPoolProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.breaker = new McpCircuitBreaker(properties.getBreakerFailureThreshold(),
+                properties.getBreakerOpenDuration().toMillis(), properties.getBreakerHalfOpenProbes());
+        for (int i = 0; i < Math.max(1, properties.getPoolSize()); i++) {
+            connections.add(new Connection(i));
+        }
+        this.hedgedCounter = Counter.builder("guli.ai.mcp.hedged")
+                .description("发起对冲请求的次数")
+                .register(meterRegistry);
+        this.reconnectCounter = Counter.builder("guli.ai.mcp.reconnects")
+                .tag("result", "success")
+                .description("MCP连接重建次数")
+                .register(meterRegistry);
+        this.reconnectFailedCounter = Counter.builder("guli.ai.mcp.reconnects")
+                .tag("result", "failure")
+                .description("MCP连接重建次数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.mcp.pool.size", connections, List::size)
+                .description("MCP连接池大小")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.mcp.pool.healthy", this, McpClientPool::healthyCount)
+                .description("可用的MCP连接数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.mcp.pool.in-flight", this, McpClientPool::inFlight)
+                .description("进行中的MCP调用数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.mcp.pool.utilization", this,
+                        p -> p.healthyCount() == 0 ? 0 : (double) p.inFlight() / p.healthyCount())
+                .description("每个可用连接上平均进行中的调用数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.mcp.breaker.state", breaker, b -> b.state().ordinal())
+                .description("熔断器状态：0关闭 1半开 2熔断")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        baseUrl = properties.getUrl();
+        connections.forEach(this::reconnect);
+        long interval = Math.max(1000, properties.getHealthCheckInterval().toMillis());
+        healthCheck = Schedulers.boundedElastic()
+                .schedulePeriodically(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("MCP连接池启动 url={} size={}", baseUrl, connections.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        closed = true;
+        if (healthCheck != null) {
+            healthCheck.dispose();
+        }
+        for (Connection connection : connections) {
+            McpAsyncClient client = connection.client;
+            connection.client = null;
+            connection.healthy = false;
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * 按默认截止时间调用工具
+     */
+    public Mono<McpSchema.CallToolResult> callTool(String toolName, Map<String, Object> arguments) {
+        return callTool(toolName, arguments, properties.getCallTimeout());
+    }
+
+    /**
+     * @param deadline 本次调用的截止时间，包含对冲与重试
+     */
+    public Mono<McpSchema.CallToolResult> callTool(String toolName, Map<String, Object> arguments, Duration deadline) {
+        McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(toolName, arguments);
+        return Mono.defer(() -> {
+            if (!properties.isEnabled()) {
+                return Mono.error(new McpUnavailableException("地图服务未启用"));
+            }
+            if (!breaker.tryAcquire()) {
+                record(toolName, "rejected", 0);
+                return Mono.error(new McpUnavailableException("地图服务暂时不可用，请稍后再试"));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean reported = new AtomicBoolean();
+            return hedged(request)
+                    .retryWhen(Retry.max(Math.max(0, properties.getMaxAttempts() - 1))
+                            .filter(e -> !(e instanceof McpError))
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                    .timeout(deadline)
+                    .onErrorMap(TimeoutException.class,
+                            e -> new McpUnavailableException("地图服务响应超时（" + deadline.toSeconds() + "秒）", e))
+                    .doOnSuccess(result -> {
+                        reported.set(true);
+                        breaker.onSuccess();
+                        record(toolName, "success", System.nanoTime() - start);
+                    })
+                    .doOnError(e -> {
+                        reported.set(true);
+                        // 服务端返回的业务错误说明连接正常，不计入熔断
+                        if (e instanceof McpError) {
+                            breaker.onSuccess();
+                        } else {
+                            breaker.onFailure();
+                        }
+                        record(toolName, e instanceof McpUnavailableException ? "timeout" : "error",
+                                System.nanoTime() - start);
+                    })
+                    .doOnCancel(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            breaker.onIgnored();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 已缓存的工具列表，连接建立后刷新
+     */
+    public List<McpSchema.Tool> tools() {
+        return tools.get();
+    }
+
+    /**
+     * 从服务端重新拉取工具列表
+     */
+    public Mono<McpSchema.ListToolsResult> listTools() {
+        return Mono.defer(() -> {
+            Connection connection = pick(null);
+            if (connection == null) {
+                return Mono.error(new McpUnavailableException("没有可用的地图服务连接"));
+            }
+            return connection.client.listTools()
+                    .timeout(properties.getConnectTimeout())
+                    .doOnNext(result -> tools.set(List.copyOf(result.tools())));
+        });
+    }
+
+    /**
+     * 各连接的状态，供健康检查接口展示
+     */
+    public List<ConnectionStatus> status() {
+        return connections.stream()
+                .map(c -> new ConnectionStatus(c.index, c.healthy, c.reconnecting.get(), c.inFlight.get(), c.generation))
+                .toList();
+    }
+
+    public String breakerState() {
+        return breaker.state().name();
+    }
+
+    /**
+     * 首个请求超过对冲延迟仍未返回时，在另一条连接上发起同一请求，取先成功的结果
+     */
+    private Mono<McpSchema.CallToolResult> hedged(McpSchema.CallToolRequest request) {
+        Duration hedgeDelay = properties.getHedgeDelay();
+        AtomicReference<Connection> primary = new AtomicReference<>();
+        Mono<McpSchema.CallToolResult> first = attempt(request, null, primary);
+        if (hedgeDelay == null || hedgeDelay.isZero() || connections.size() < 2) {
+            return first;
+        }
+        Mono<McpSchema.CallToolResult> second = Mono.delay(hedgeDelay)
+                .then(Mono.defer(() -> {
+                    hedgedCounter.increment();
+                    return attempt(request, primary.get(), new AtomicReference<>());
+                }));
+        return Mono.firstWithValue(first, second)
+                .onErrorMap(NoSuchElementException.class, McpClientPool::firstFailure);
+    }
+
+    private Mono<McpSchema.CallToolResult> attempt(McpSchema.CallToolRequest request, Connection exclude,
+                                                   AtomicReference<Connection> chosen) {
+        return Mono.defer(() -> {
+            Connection connection = pick(exclude);
+            if (connection == null) {
+                return Mono.error(new McpUnavailableException("没有可用的地图服务连接"));
+            }
+            chosen.set(connection);
+            McpAsyncClient client = connection.client;
+            connection.inFlight.incrementAndGet();
+            return client.callTool(request)
+                    .doOnError(e -> {
+                        if (!(e instanceof McpError)) {
+                            log.warn("MCP连接#{}调用失败，重建连接 tool={}，原因：{}", connection.index, request.name(), e.getMessage());
+                            markBroken(connection, client);
+                        }
+                    })
+                    .doFinally(signal -> connection.inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * 选择进行中请求最少的健康连接，优先避开已用于同一请求的连接
+     */
+    private Connection pick(Connection exclude) {
+        Connection best = connections.stream()
+                .filter(c -> c.healthy && c != exclude)
+                .min(Comparator.comparingInt(c -> c.inFlight.get()))
+                .orElse(null);
+        if (best == null && exclude != null && exclude.healthy) {
+            return exclude;
+        }
+        return best;
+    }
+
+    private void markBroken(Connection connection, McpAsyncClient client) {
+        // 只处理当前会话的错误，旧会话的迟到错误忽略
+        if (connection.client == client) {
+            connection.healthy = false;
+            reconnect(connection);
+        }
+    }
+
+    /**
+     * 关闭旧会话并重建，失败时按退避间隔继续重试
+     */
+    private void reconnect(Connection connection) {
+        if (closed || !connection.reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        connection.healthy = false;
+        McpAsyncClient old = connection.client;
+        Mono<Void> closeOld = old == null ? Mono.empty()
+                : old.closeGracefully().timeout(Duration.ofSeconds(2)).onErrorResume(e -> {
+                    old.close();
+                    return Mono.empty();
+                });
+        closeOld.then(Mono.defer(() -> {
+                    McpAsyncClient client = createClient();
+                    return client.initialize()
+                            .timeout(properties.getConnectTimeout())
+                            .doOnError(e -> client.close())
+                            .thenReturn(client);
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(client -> {
+                    connection.client = client;
+                    connection.generation++;
+                    connection.healthy = true;
+                    connection.reconnecting.set(false);
+                    reconnectCounter.increment();
+                    log.info("MCP连接#{}已建立，第{}次", connection.index, connection.generation);
+                    if (tools.get().isEmpty()) {
+                        listTools().subscribe(r -> log.info("MCP工具列表已加载，共 {} 个: {}", r.tools().size(),
+                                        r.tools().stream().map(McpSchema.Tool::name).toList()),
+                                e -> log.warn("加载MCP工具列表失败: {}", e.getMessage()));
+                    }
+                }, e -> {
+                    connection.client = null;
+                    connection.reconnecting.set(false);
+                    reconnectFailedCounter.increment();
+                    log.warn("MCP连接#{}建立失败，{}ms后重试，原因：{}", connection.index,
+                            properties.getReconnectBackoff().toMillis(), e.getMessage());
+                    if (!closed) {
+                        Schedulers.boundedElastic().schedule(() -> reconnect(connection),
+                                properties.getReconnectBackoff().toMillis(), TimeUnit.MILLISECONDS);
+                    }
+                });
+    }
+
+    /**
+     * 空闲连接用 ping 探活，不再每次拉取完整工具列表
+     */
+    private void checkHealth() {
+        for (Connection connection : connections) {
+            McpAsyncClient client = connection.client;
+            if (!connection.healthy || client == null || connection.inFlight.get() > 0) {
+                continue;
+            }
+            client.ping()
+                    .timeout(properties.getConnectTimeout())
+                    .subscribe(pong -> {
+                    }, e -> {
+                        log.warn("MCP连接#{}探活失败，重建连接，原因：{}", connection.index, e.getMessage());
+                        markBroken(connection, client);
+                    });
+        }
+    }
+
+    private McpAsyncClient createClient() {
+        HttpClientSseClientTransport transport = HttpClientSseClientTransport.builder(baseUrl)
+                .sseEndpoint(properties.getSseEndpoint())
+                .customizeClient(builder -> builder.connectTimeout(properties.getConnectTimeout()))
+                .build();
+        return McpClient.async(transport)
+                .clientInfo(new McpSchema.Implementation("guli-mcp-pool", "1.0.0"))
+                .requestTimeout(properties.getCallTimeout())
+                .initializationTimeout(properties.getConnectTimeout())
+                .toolsChangeConsumer(changed -> Mono.fromRunnable(() -> tools.set(List.copyOf(changed))))
+                .build();
+    }
+
+    private void record(String toolName, String outcome, long nanos) {
+        Timer.builder("guli.ai.mcp.call")
+                .tag("tool", toolName)
+                .tag("outcome", outcome)
+                .description("MCP工具调用耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private int healthyCount() {
+        return (int) connections.stream().filter(c -> c.healthy).count();
+    }
+
+    private int inFlight() {
+        return connections.stream().mapToInt(c -> c.inFlight.get()).sum();
+    }
+
+    /**
+     * 对冲的两个请求都失败时，取首个请求的异常
+     */
+    private static Throwable firstFailure(NoSuchElementException e) {
+        return e.getSuppressed().length > 0 ? e.getSuppressed()[0] : e;
+    }
+
+    private static final class Connection {
+        final int index;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicBoolean reconnecting = new AtomicBoolean();
+        volatile McpAsyncClient client;
+        volatile boolean healthy;
+        volatile int generation;
+
+        Connection(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param index        连接序号
+     * @param healthy      是否可用
+     * @param reconnecting 是否正在重建
+     * @param inFlight     进行中的调用数
+     * @param generation   已建立的会话次数
+     */
+    public record ConnectionStatus(int index, boolean healthy, boolean reconnecting, int inFlight, int generation) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.atguigu.guliai.mcp;
+
+/**
+ * MCP 服务熔断中、没有可用连接或调用超过截止时间，消息可直接返回给大模型
+ */
+public class McpUnavailableException extends RuntimeException {
+
+    public McpUnavailableException(String message) {
+        super(message);
+    }
+
+    public McpUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
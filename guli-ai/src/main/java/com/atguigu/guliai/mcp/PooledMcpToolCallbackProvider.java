@@ -0,0 +1,82 @@
+package com.atguigu.guliai.mcp;
+
+import com.atguigu.guliai.cache.ToolResultCache;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把连接池中的高德 MCP 工具注册给大模型，工具调用经由连接池执行，享有截止时间、对冲、重试与熔断，
+ * 相同参数的成功结果经 {@link ToolResultCache} 复用
+ */
+@Slf4j
+@Component
+public class PooledMcpToolCallbackProvider implements ToolCallbackProvider {
+
+    private final McpClientPool pool;
+    private final ToolResultCache toolResultCache;
+
+    public PooledMcpToolCallbackProvider(McpClientPool pool, ToolResultCache toolResultCache) {
+        this.pool = pool;
+        this.toolResultCache = toolResultCache;
+    }
+
+    /**
+     * 连接尚未建立时工具列表为空，大模型按无工具作答
+     */
+    @Override
+    public ToolCallback[] getToolCallbacks() {
+        return pool.tools().stream()
+                .map(tool -> new PooledMcpToolCallback(pool, toolResultCache, tool))
+                .toArray(ToolCallback[]::new);
+    }
+
+    private static final class PooledMcpToolCallback implements ToolCallback {
+
+        private final McpClientPool pool;
+        private final ToolResultCache toolResultCache;
+        private final McpSchema.Tool tool;
+        private final ToolDefinition definition;
+
+        PooledMcpToolCallback(McpClientPool pool, ToolResultCache toolResultCache, McpSchema.Tool tool) {
+            this.pool = pool;
+            this.toolResultCache = toolResultCache;
+            this.tool = tool;
+            this.definition = DefaultToolDefinition.builder()
+                    .name(tool.name())
+                    .description(tool.description())
+                    .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                    .build();
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        /**
+         * 服务不可用时把原因作为工具结果交给大模型，由大模型向用户解释，不中断整轮对话
+         */
+        @Override
+        public String call(String toolInput) {
+            try {
+                McpSchema.CallToolResult result = AmapMcpService.cachedCall(pool, toolResultCache, tool.name(),
+                        ModelOptionsUtils.jsonToMap(toolInput));
+                return result != null ? AmapMcpService.extractContent(result) : "";
+            } catch (McpUnavailableException e) {
+                log.warn("地图工具调用失败 tool={}，原因：{}", tool.name(), e.getMessage());
+                return e.getMessage();
+            } catch (McpError e) {
+                // 服务端返回的错误（如参数不合法）同样作为工具结果，由大模型调整参数或向用户说明
+                log.warn("地图工具返回错误 tool={}，原因：{}", tool.name(), e.getMessage());
+                return "地图服务返回错误：" + e.getMessage();
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.atguigu.guliai.monitor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 对话链路耗时分解
+ * 按阶段记录保存提问、路由、查询重写、向量检索、首字耗时与生成耗时，指标按项目类型与智能体类型打标签并发布 p50/p95/p99；
+ * 每个阶段同时创建一个 Observation，接入链路追踪后即为请求下的子 span。请求结束时输出一行耗时分解日志。
+ */
+@Slf4j
+@Component
+public class ChatPipelineMetrics {
+
+    public static final String STAGE_PROJECT = "project";
+    public static final String STAGE_SAVE_MESSAGE = "save_message";
+    public static final String STAGE_HISTORY = "history";
+    public static final String STAGE_ROUTE = "route";
+    public static final String STAGE_REWRITE = "rewrite";
+    public static final String STAGE_RETRIEVAL = "retrieval";
+    public static final String STAGE_TTFT = "ttft";
+    public static final String STAGE_GENERATION = "generation";
+    public static final String STAGE_TOTAL = "total";
+
+    /** 未经智能体路由、直接由检索增强回答的请求 */
+    public static final String AGENT_RAG = "rag";
+
+    private static final List<String> STAGES = List.of(STAGE_PROJECT, STAGE_SAVE_MESSAGE, STAGE_HISTORY, STAGE_ROUTE,
+            STAGE_REWRITE, STAGE_RETRIEVAL, STAGE_TTFT, STAGE_GENERATION, STAGE_TOTAL);
+
+    private static final String STAGE_METRIC = "guli.ai.chat.stage";
+    private static final String ERROR_METRIC = "guli.ai.chat.stage.errors";
+    private static final String THROUGHPUT_METRIC = "guli.ai.chat.tokens.per.second";
+    private static final String SEMANTIC_CACHE_REQUESTS = "guli.ai.semantic.cache.requests";
+    private static final String SEMANTIC_CACHE_SAVED = "guli.ai.semantic.cache.saved.latency";
+    private static final String SEMANTIC_CACHE_SIZE = "guli.ai.semantic.cache.size";
+    /** 组件指标的名称前缀，对话阶段与生成速度已单独汇总 */
+    private static final String COMPONENT_PREFIX = "guli.";
+    private static final String CHAT_PREFIX = "guli.ai.chat.";
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public ChatPipelineMetrics(MeterRegistry meterRegistry, ObjectProvider<ObservationRegistry> observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP);
+    }
+
+    /**
+     * 开始记录一次对话请求，项目类型与智能体类型在确定后写入链路记录
+     */
+    public ChatTrace begin() {
+        Observation observation = Observation.createNotStarted("guli.ai.chat.trace", observationRegistry)
+                .contextualName("chat")
+                .start();
+        return new ChatTrace(UNKNOWN, UNKNOWN, observation);
+    }
+
+    /**
+     * 记录一个阻塞阶段
+     *
+     * @param trace 所属请求，为空时直接按 unknown 标签计入
+     */
+    public <T> T stage(ChatTrace trace, String stage, Supplier<T> task) {
+        Observation observation = observation(trace, stage).start();
+        long start = System.nanoTime();
+        boolean failed = false;
+        try (Observation.Scope ignored = observation.openScope()) {
+            return task.get();
+        } catch (RuntimeException e) {
+            failed = true;
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            record(trace, stage, System.nanoTime() - start, failed);
+        }
+    }
+
+    public void stage(ChatTrace trace, String stage, Runnable task) {
+        stage(trace, stage, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 记录一个响应式阶段，所属请求从 Reactor 上下文读取
+     */
+    public <T> Mono<T> stage(String stage, Mono<T> source) {
+        return Mono.deferContextual(ctx -> {
+            ChatTrace trace = ctx.getOrDefault(ChatTrace.CONTEXT_KEY, null);
+            Observation observation = observation(trace, stage).start();
+            long start = System.nanoTime();
+            AtomicBoolean failed = new AtomicBoolean();
+            return source.doOnError(e -> {
+                        failed.set(true);
+                        observation.error(e);
+                    })
+                    .doFinally(signal -> {
+                        observation.stop();
+                        record(trace, stage, System.nanoTime() - start, failed.get());
+                    });
+        });
+    }
+
+    /**
+     * 包装最终输出给用户的回答流：首个分片到达时记录首字耗时，流结束、出错或客户端中断时记录生成耗时、
+     * 总耗时与生成速度，并把整条请求的各阶段计入指标
+     */
+    public Flux<String> answer(Flux<String> answer) {
+        return Flux.deferContextual(ctx -> {
+            ChatTrace trace = ctx.getOrDefault(ChatTrace.CONTEXT_KEY, null);
+            if (trace == null) {
+                return answer;
+            }
+            AtomicLong firstChunkAt = new AtomicLong();
+            StringBuilder content = new StringBuilder();
+            AtomicBoolean failed = new AtomicBoolean();
+            return answer.doOnNext(chunk -> {
+                        if (firstChunkAt.compareAndSet(0, System.nanoTime())) {
+                            record(trace, STAGE_TTFT, trace.elapsedNanos(), false);
+                        }
+                        content.append(chunk);
+                    })
+                    .doOnError(e -> {
+                        failed.set(true);
+                        trace.observation().error(e);
+                    })
+                    .doFinally(signal -> finish(trace, firstChunkAt.get(), content, failed.get(), signal));
+        });
+    }
+
+    private void finish(ChatTrace trace, long firstChunkAt, CharSequence content, boolean failed, SignalType signal) {
+        if (firstChunkAt > 0) {
+            long generation = System.nanoTime() - firstChunkAt;
+            record(trace, STAGE_GENERATION, generation, failed);
+            int tokens = tokenCountEstimator.estimate(content.toString());
+            if (generation > 0 && tokens > 0) {
+                DistributionSummary.builder(THROUGHPUT_METRIC)
+                        .tags(tags(trace))
+                        .description("回答生成速度，token/秒")
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry)
+                        .record(tokens * 1e9 / generation);
+            }
+        }
+        record(trace, STAGE_TOTAL, trace.elapsedNanos(), failed);
+        List<ChatTrace.Stage> stages = trace.finish().stream()
+                .sorted(Comparator.comparingInt(stage -> STAGES.indexOf(stage.name())))
+                .toList();
+        stages.forEach(stage -> register(tags(trace), stage));
+        trace.observation()
+                .lowCardinalityKeyValue("project_type", trace.projectType())
+                .lowCardinalityKeyValue("agent_type", trace.agentType())
+                .stop();
+        log.info("对话耗时分解 projectType={}, agentType={}{}: {}", trace.projectType(), trace.agentType(),
+                signal == SignalType.CANCEL ? "（客户端中断）" : "", trace.summary(stages));
+    }
+
+    private Observation observation(ChatTrace trace, String stage) {
+        return Observation.createNotStarted("guli.ai.chat.trace.stage", observationRegistry)
+                .contextualName(stage)
+                .lowCardinalityKeyValue("stage", stage)
+                .parentObservation(trace != null ? trace.observation() : null);
+    }
+
+    /**
+     * 请求未结束时先记入链路，结束时按最终标签统一计入；后台完成的阶段（如推测执行的重写）直接计入
+     */
+    private void record(ChatTrace trace, String stage, long nanos, boolean failed) {
+        ChatTrace.Stage recorded = new ChatTrace.Stage(stage, nanos, failed);
+        if (trace == null) {
+            register(Tags.of("project_type", UNKNOWN, "agent_type", UNKNOWN), recorded);
+        } else if (!trace.add(recorded)) {
+            register(tags(trace), recorded);
+        }
+    }
+
+    private void register(Tags tags, ChatTrace.Stage stage) {
+        Tags stageTags = tags.and("stage", stage.name());
+        Timer.builder(STAGE_METRIC)
+                .tags(stageTags)
+                .description("对话链路各阶段耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(stage.nanos(), TimeUnit.NANOSECONDS);
+        if (stage.failed()) {
+            Counter.builder(ERROR_METRIC)
+                    .tags(stageTags)
+                    .description("对话链路各阶段失败次数")
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static Tags tags(ChatTrace trace) {
+        return Tags.of("project_type", trace.projectType(), "agent_type", trace.agentType());
+    }
+
+    /**
+     * 各阶段耗时分位数与错误率
+     */
+    public List<StageStats> stageStats() {
+        return meterRegistry.find(STAGE_METRIC).timers().stream()
+                .map(timer -> {
+                    HistogramSnapshot snapshot = timer.takeSnapshot();
+                    Counter errors = meterRegistry.find(ERROR_METRIC).tags(timer.getId().getTagsAsIterable()).counter();
+                    long errorCount = errors != null ? (long) errors.count() : 0;
+                    return new StageStats(timer.getId().getTag("stage"), timer.getId().getTag("project_type"),
+                            timer.getId().getTag("agent_type"), snapshot.count(), errorCount,
+                            snapshot.count() > 0 ? (double) errorCount / snapshot.count() : 0,
+                            snapshot.mean(TimeUnit.MILLISECONDS), percentile(snapshot, 0.5), percentile(snapshot, 0.95),
+                            percentile(snapshot, 0.99), snapshot.max(TimeUnit.MILLISECONDS));
+                })
+                .sorted(Comparator.comparing(StageStats::projectType)
+                        .thenComparing(StageStats::agentType)
+                        .thenComparing(s -> STAGES.indexOf(s.stage())))
+                .toList();
+    }
+
+    /**
+     * 回答生成速度分位数
+     */
+    public List<ThroughputStats> throughputStats() {
+        return meterRegistry.find(THROUGHPUT_METRIC).summaries().stream()
+                .map(summary -> {
+                    HistogramSnapshot snapshot = summary.takeSnapshot();
+                    return new ThroughputStats(summary.getId().getTag("project_type"), summary.getId().getTag("agent_type"),
+                            snapshot.count(), snapshot.mean(), value(snapshot, 0.5), value(snapshot, 0.95));
+                })
+                .sorted(Comparator.comparing(ThroughputStats::projectType).thenComparing(ThroughputStats::agentType))
+                .toList();
+    }
+
+    /**
+     * 语义缓存命中率与命中节省的耗时
+     */
+    public SemanticCacheStats semanticCacheStats() {
+        long hits = count(meterRegistry.find(SEMANTIC_CACHE_REQUESTS).tag("result", "hit").counter());
+        long misses = count(meterRegistry.find(SEMANTIC_CACHE_REQUESTS).tag("result", "miss").counter());
+        DistributionSummary saved = meterRegistry.find(SEMANTIC_CACHE_SAVED).summary();
+        HistogramSnapshot snapshot = saved != null ? saved.takeSnapshot() : HistogramSnapshot.empty(0, 0, 0);
+        Gauge size = meterRegistry.find(SEMANTIC_CACHE_SIZE).gauge();
+        return new SemanticCacheStats(hits, misses, hits + misses > 0 ? (double) hits / (hits + misses) : 0,
+                size != null ? (long) size.value() : 0, snapshot.total(), snapshot.mean(),
+                value(snapshot, 0.5), value(snapshot, 0.95));
+    }
+
+    /**
+     * 其余组件（路由、查询重写、MCP连接池、工具缓存、调度器等）的指标快照，按名称与标签排序
+     */
+    public List<MeterStats> componentStats() {
+        return meterRegistry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().startsWith(COMPONENT_PREFIX)
+                        && !meter.getId().getName().startsWith(CHAT_PREFIX))
+                .map(meter -> {
+                    Map<String, Double> values = new LinkedHashMap<>();
+                    for (Measurement measurement : meter.measure()) {
+                        values.merge(measurement.getStatistic().getTagValueRepresentation(), measurement.getValue(), Double::sum);
+                    }
+                    String tags = meter.getId().getTags().stream()
+                            .map(tag -> tag.getKey() + "=" + tag.getValue())
+                            .collect(Collectors.joining(","));
+                    return new MeterStats(meter.getId().getName(), tags, meter.getId().getType().name().toLowerCase(),
+                            meter.getId().getBaseUnit(), values);
+                })
+                .sorted(Comparator.comparing(MeterStats::name).thenComparing(MeterStats::tags))
+                .toList();
+    }
+
+    private static long count(Counter counter) {
+        return counter != null ? (long) counter.count() : 0;
+    }
+
+    private static double percentile(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return 0;
+    }
+
+    private static double value(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 耗时单位为毫秒
+     */
+    public record StageStats(String stage, String projectType, String agentType, long count, long errors,
+                             double errorRate, double meanMillis, double p50Millis, double p95Millis,
+                             double p99Millis, double maxMillis) {
+    }
+
+    public record ThroughputStats(String projectType, String agentType, long count, double mean, double p50, double p95) {
+    }
+
+    /**
+     * 节省耗时单位为毫秒，为命中条目当初生成所花费的时间
+     */
+    public record SemanticCacheStats(long hits, long misses, double hitRate, long size, double savedTotalMillis,
+                                     double savedMeanMillis, double savedP50Millis, double savedP95Millis) {
+    }
+
+    /**
+     * @param values 按统计项（count、total、value、max 等）汇总的当前值
+     */
+    public record MeterStats(String name, String tags, String type, String baseUnit, Map<String, Double> values) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.atguigu.guliai.monitor;
+
+import io.micrometer.observation.Observation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 一次对话请求的链路记录
+ * 随 Reactor 上下文与检索查询上下文在各阶段之间传递，收集各阶段耗时；请求结束时按最终确定的项目类型与智能体类型统一计入指标，
+ * 路由完成前发生的阶段也能归到实际处理请求的智能体下。
+ */
+public final class ChatTrace {
+
+    public static final String CONTEXT_KEY = "guliai.chatTrace";
+
+    private final Observation observation;
+    private final long startNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile String projectType;
+    private volatile String agentType;
+    private boolean finished;
+
+    ChatTrace(String projectType, String agentType, Observation observation) {
+        this.projectType = projectType;
+        this.agentType = agentType;
+        this.observation = observation;
+    }
+
+    /**
+     * 从检索查询或顾问上下文中取出链路记录
+     */
+    public static ChatTrace from(Map<String, Object> context) {
+        return context != null && context.get(CONTEXT_KEY) instanceof ChatTrace trace ? trace : null;
+    }
+
+    public String projectType() {
+        return projectType;
+    }
+
+    /**
+     * 读取项目配置后记录项目类型
+     */
+    public void projectType(String projectType) {
+        this.projectType = projectType;
+    }
+
+    public String agentType() {
+        return agentType;
+    }
+
+    /**
+     * 路由确定后记录实际处理请求的智能体
+     */
+    public void agentType(String agentType) {
+        this.agentType = agentType;
+    }
+
+    Observation observation() {
+        return observation;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return 请求已结束时返回 false，调用方直接计入指标
+     */
+    synchronized boolean add(Stage stage) {
+        if (finished) {
+            return false;
+        }
+        stages.add(stage);
+        return true;
+    }
+
+    synchronized List<Stage> finish() {
+        finished = true;
+        return List.copyOf(stages);
+    }
+
+    String summary(List<Stage> stages) {
+        return stages.stream()
+                .map(s -> s.name() + "=" + s.nanos() / 1_000_000 + "ms" + (s.failed() ? "(失败)" : ""))
+                .collect(Collectors.joining(", "));
+    }
+
+    record Stage(String name, long nanos, boolean failed) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.atguigu.guliai.monitor;
+
+import com.atguigu.guliai.config.VirtualThreadProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 虚拟线程钉住监控
+ * 虚拟线程在 synchronized 块或本地方法中阻塞时无法让出载体线程，载体线程被占满后所有虚拟线程都会排队。
+ * 开启虚拟线程模式后通过 JFR 的 jdk.VirtualThreadPinned 事件在进程内持续监听，按本项目代码中最近的栈帧归类，
+ * 首次出现的位置输出栈，之后只计数并定期汇总。
+ */
+@Slf4j
+@Component
+public class PinnedThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String PROJECT_PACKAGE = "com.atguigu.";
+
+    private final VirtualThreadProperties properties;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, SiteStats> sites = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+    private Disposable reporter;
+
+    public PinnedThreadMonitor(VirtualThreadProperties properties, Environment environment, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isPinnedMonitorEnabled() || !Threading.VIRTUAL.isActive(environment)) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(properties.getPinnedThreshold()).withStackTrace();
+            stream.setMaxAge(Duration.ofMinutes(1));
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+        } catch (Exception e) {
+            // 部分精简 JRE 不包含 jdk.jfr 模块
+            log.warn("虚拟线程钉住监控启动失败: {}", e.getMessage());
+            return;
+        }
+        long interval = Math.max(1000, properties.getPinnedReportInterval().toMillis());
+        reporter = Schedulers.boundedElastic()
+                .schedulePeriodically(this::report, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("虚拟线程钉住监控已启动，阈值={}ms", properties.getPinnedThreshold().toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reporter != null) {
+            reporter.dispose();
+        }
+        if (stream != null) {
+            stream.close();
+            report();
+        }
+    }
+
+    /**
+     * 按累计钉住时间倒序的钉住位置
+     */
+    public List<PinnedSite> snapshot() {
+        return sites.entrySet().stream()
+                .map(e -> new PinnedSite(e.getKey(), e.getValue().count.get(),
+                        e.getValue().totalNanos.get() / 1_000_000, e.getValue().maxNanos.get() / 1_000_000))
+                .sorted(Comparator.comparingLong(PinnedSite::totalMillis).reversed())
+                .toList();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        String site = site(frames);
+        long nanos = event.getDuration().toNanos();
+        SiteStats stats = sites.computeIfAbsent(site, s -> new SiteStats());
+        stats.totalNanos.addAndGet(nanos);
+        stats.maxNanos.accumulate(nanos);
+        Counter.builder("guli.vt.pinned")
+                .tag("site", site)
+                .description("虚拟线程钉住载体线程次数")
+                .register(meterRegistry)
+                .increment();
+        if (stats.count.incrementAndGet() == 1) {
+            log.warn("虚拟线程钉住载体线程 {}ms，位置={}，线程={}\n{}", nanos / 1_000_000, site,
+                    event.getThread() != null ? event.getThread().getJavaName() : "-",
+                    format(frames, properties.getPinnedStackDepth()));
+        }
+    }
+
+    private void report() {
+        List<PinnedSite> snapshot = snapshot();
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("虚拟线程钉住汇总（按累计时间）：");
+        snapshot.stream().limit(10).forEach(s -> text.append("\n  ").append(s.site())
+                .append(" 次数=").append(s.count())
+                .append(" 累计=").append(s.totalMillis()).append("ms")
+                .append(" 最长=").append(s.maxMillis()).append("ms"));
+        log.warn(text.toString());
+    }
+
+    /**
+     * 取本项目代码中最靠近钉住点的栈帧，没有时取栈顶
+     */
+    private static String site(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            if (frame.getMethod() != null && frame.getMethod().getType().getName().startsWith(PROJECT_PACKAGE)) {
+                return frameName(frame);
+            }
+        }
+        return frames.isEmpty() ? "unknown" : frameName(frames.get(0));
+    }
+
+    private static String frameName(RecordedFrame frame) {
+        String type = frame.getMethod().getType().getName();
+        return type.substring(type.lastIndexOf('.') + 1) + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    private static String format(List<RecordedFrame> frames, int depth) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(depth, frames.size()); i++) {
+            RecordedFrame frame = frames.get(i);
+            if (frame.getMethod() == null) {
+                continue;
+            }
+            text.append("\tat ").append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static final class SiteStats {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * @param site        钉住位置，类名.方法名:行号
+     * @param count       次数
+     * @param totalMillis 累计钉住时间
+     * @param maxMillis   最长一次钉住时间
+     */
+    public record PinnedSite(String site, long count, long totalMillis, long maxMillis) {
+    }
+}
@@ -0,0 +1,408 @@
+package com.atguigu.guliai.persist;
+
+import com.atguigu.common.config.XiaoGuConfig;
+import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.config.MessagePersistenceProperties;
+import com.atguigu.guliai.pojo.Message;
+import com.atguigu.guliai.utils.MongoUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天消息异步批量持久化
+ * 请求线程只把消息放入内存队列，后台按固定间隔把队列中的消息按 message_N 集合分组，以无序批量插入写入 MongoDB。
+ * 队列写满或批量写入失败时消息追加到本地落盘文件并强制刷盘，MongoDB 恢复后在后台回放。
+ * 尚未写入的消息（包括落盘等待回放的）可通过 {@link #pendingMessages(Long)} 读取，保证刚提问的消息与
+ * MongoDB 故障期间的消息在加载历史时可见；重启时从落盘文件恢复，回放成功后移除。
+ */
+@Slf4j
+@Component
+public class MessageWriter {
+
+    /** MongoDB 主键冲突错误码，回放时已写入的消息视为成功 */
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final MessagePersistenceProperties properties;
+    private final MongoIndexManager mongoIndexManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LinkedBlockingQueue<Message> queue;
+    /** 已入队尚未写入 MongoDB 的消息，按消息id索引 */
+    private final Map<Long, Message> pending = new ConcurrentHashMap<>();
+    // 持锁期间有数据库与磁盘IO，使用ReentrantLock避免虚拟线程钉住载体线程
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+    private volatile long nextReplayAt;
+
+    private final Timer flushTimer;
+    private final Counter writtenCounter;
+    private final Counter spilledCounter;
+    private final Counter replayedCounter;
+
+    public MessageWriter(MongoTemplate mongoTemplate, MessagePersistenceProperties properties,
+                         MongoIndexManager mongoIndexManager, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+        this.mongoIndexManager = mongoIndexManager;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+        this.flushTimer = Timer.builder("guli.ai.message.flush")
+                .description("消息批量写入耗时")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("guli.ai.message.writes")
+                .tag("result", "mongo")
+                .description("消息持久化条数")
+                .register(meterRegistry);
+        this.spilledCounter = Counter.builder("guli.ai.message.writes")
+                .tag("result", "spilled")
+                .description("消息持久化条数")
+                .register(meterRegistry);
+        this.replayedCounter = Counter.builder("guli.ai.message.writes")
+                .tag("result", "replayed")
+                .description("消息持久化条数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.message.queue.size", queue, LinkedBlockingQueue::size)
+                .description("等待写入的消息数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isWriteBehind()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "guli-message-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadSpilled();
+        long interval = Math.max(10, properties.getFlushInterval().toMillis());
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停机前写完队列中的消息，写入失败的落盘等待下次启动回放
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * 保存消息，开启异步写入时不阻塞调用线程
+     */
+    public void save(Message message) {
+        Objects.requireNonNull(message.getChatId(), "chatId不能为空");
+        if (!properties.isWriteBehind()) {
+            String collectionName = MongoUtil.getMsgCollectionName(message.getChatId());
+            mongoIndexManager.ensureMessageIndex(collectionName);
+            mongoTemplate.insert(message, collectionName);
+            writtenCounter.increment();
+            return;
+        }
+        pending.put(message.getId(), message);
+        if (!queue.offer(message)) {
+            // 队列已满说明 MongoDB 跟不上，直接落盘避免阻塞请求；落盘的消息回放前仍可读到
+            spill(List.of(message));
+        }
+    }
+
+    /**
+     * 会话中尚未写入 MongoDB 的消息（队列中或落盘等待回放），按时间升序排列
+     */
+    public List<Message> pendingMessages(Long chatId) {
+        if (pending.isEmpty() || chatId == null) {
+            return List.of();
+        }
+        return pending.values().stream()
+                .filter(m -> chatId.equals(m.getChatId()))
+                .sorted(Comparator.comparing(Message::getCreateTime).thenComparing(Message::getId))
+                .toList();
+    }
+
+    /**
+     * 丢弃会话尚未写入的消息，删除会话时使用
+     * 持有写入锁，等进行中的批量写入或回放结束，之后队列与落盘文件中都不再有该会话的消息，
+     * 删除会话后不会再被写回 MongoDB，重启后也不会从落盘文件恢复
+     */
+    public void discard(Long chatId) {
+        flushLock.lock();
+        try {
+            queue.removeIf(m -> chatId.equals(m.getChatId()));
+            pending.values().removeIf(m -> chatId.equals(m.getChatId()));
+            spillLock.lock();
+            try {
+                Path spill = spillPath();
+                for (Path path : List.of(replayingPath(spill), spill)) {
+                    removeFromSpillFile(path, chatId);
+                }
+            } finally {
+                spillLock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 立即写入队列中的消息，需要读到最新数据再修改时使用
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Message> batch = new ArrayList<>();
+            while (queue.drainTo(batch, Math.max(1, properties.getMaxBatchSize())) > 0) {
+                write(batch);
+                batch.clear();
+            }
+            if (queue.isEmpty() && System.currentTimeMillis() >= nextReplayAt) {
+                replay();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("消息批量写入异常", e);
+        }
+    }
+
+    private void write(List<Message> batch) {
+        long start = System.nanoTime();
+        for (Map.Entry<String, List<Message>> group : groupByCollection(batch).entrySet()) {
+            try {
+                bulkInsert(group.getKey(), group.getValue());
+                writtenCounter.increment(group.getValue().size());
+                group.getValue().forEach(m -> pending.remove(m.getId()));
+            } catch (Exception e) {
+                log.warn("消息批量写入失败，落盘等待回放 collection={} count={}，原因：{}",
+                        group.getKey(), group.getValue().size(), e.getMessage());
+                spill(group.getValue());
+                nextReplayAt = System.currentTimeMillis() + properties.getReplayRetryInterval().toMillis();
+            }
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void bulkInsert(String collectionName, List<Message> messages) {
+        mongoIndexManager.ensureMessageIndex(collectionName);
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class, collectionName)
+                    .insert(messages)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static Map<String, List<Message>> groupByCollection(List<Message> messages) {
+        Map<String, List<Message>> groups = new LinkedHashMap<>();
+        for (Message message : messages) {
+            groups.computeIfAbsent(MongoUtil.getMsgCollectionName(message.getChatId()), c -> new ArrayList<>()).add(message);
+        }
+        return groups;
+    }
+
+    /**
+     * 以 JSON Lines 追加到落盘文件并强制刷盘
+     */
+    private void spill(List<Message> messages) {
+        spillLock.lock();
+        try {
+            Path path = spillPath();
+            try {
+                Files.createDirectories(path.getParent());
+                StringBuilder lines = new StringBuilder();
+                for (Message message : messages) {
+                    lines.append(objectMapper.writeValueAsString(message)).append('\n');
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+                spilledCounter.increment(messages.size());
+            } catch (IOException e) {
+                log.error("消息落盘失败，{} 条消息丢失 path={}", messages.size(), path, e);
+                messages.forEach(m -> pending.remove(m.getId()));
+            }
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 把落盘文件改名后整体回放，回放期间新的落盘写入新文件；回放失败时保留文件下次重试
+     */
+    private void replay() {
+        Path spill = spillPath();
+        Path replaying = replayingPath(spill);
+        try {
+            spillLock.lock();
+            try {
+                if (!Files.exists(replaying)) {
+                    if (!Files.exists(spill)) {
+                        return;
+                    }
+                    Files.move(spill, replaying, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } finally {
+                spillLock.unlock();
+            }
+            List<Message> messages = readSpillFile(replaying);
+            int batchSize = Math.max(1, properties.getMaxBatchSize());
+            for (Map.Entry<String, List<Message>> group : groupByCollection(messages).entrySet()) {
+                List<Message> list = group.getValue();
+                for (int i = 0; i < list.size(); i += batchSize) {
+                    bulkInsert(group.getKey(), list.subList(i, Math.min(i + batchSize, list.size())));
+                }
+            }
+            Files.delete(replaying);
+            messages.forEach(m -> pending.remove(m.getId()));
+            replayedCounter.increment(messages.size());
+            log.info("落盘消息回放完成，共 {} 条", messages.size());
+        } catch (Exception e) {
+            nextReplayAt = System.currentTimeMillis() + properties.getReplayRetryInterval().toMillis();
+            log.warn("落盘消息回放失败，稍后重试，原因：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 启动时把上次未回放完的落盘消息登记为未写入，回放前加载历史仍能读到
+     */
+    private void loadSpilled() {
+        Path spill = spillPath();
+        for (Path path : List.of(replayingPath(spill), spill)) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try {
+                readSpillFile(path).forEach(m -> pending.put(m.getId(), m));
+            } catch (IOException e) {
+                log.warn("读取落盘消息失败 path={}，原因：{}", path, e.getMessage());
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.info("发现 {} 条待回放的落盘消息", pending.size());
+        }
+    }
+
+    private List<Message> readSpillFile(Path path) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    messages.add(objectMapper.readValue(line, Message.class));
+                } catch (IOException e) {
+                    // 进程在写入中途退出时最后一行可能不完整
+                    log.warn("跳过无法解析的落盘消息: {}", line);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 重写落盘文件，去掉指定会话的消息；先写临时文件并刷盘再整体替换，中途失败时原文件不受影响
+     */
+    private void removeFromSpillFile(Path path, Long chatId) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            List<Message> messages = readSpillFile(path);
+            if (messages.stream().noneMatch(m -> chatId.equals(m.getChatId()))) {
+                return;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Message message : messages) {
+                if (!chatId.equals(message.getChatId())) {
+                    lines.append(objectMapper.writeValueAsString(message)).append('\n');
+                }
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("从落盘文件移除已删除会话的消息失败 chatId={} path={}，原因：{}", chatId, path, e.getMessage());
+        }
+    }
+
+    private static Path replayingPath(Path spill) {
+        return spill.resolveSibling(spill.getFileName() + ".replaying");
+    }
+
+    private Path spillPath() {
+        String path = StringUtils.isNotEmpty(properties.getSpillPath())
+                ? properties.getSpillPath()
+                : XiaoGuConfig.getProfile() + "/message-spill/messages.jsonl";
+        return Paths.get(path);
+    }
+}
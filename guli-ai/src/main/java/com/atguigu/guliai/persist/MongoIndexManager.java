@@ -0,0 +1,134 @@
+package com.atguigu.guliai.persist;
+
+import com.atguigu.guliai.config.ChatPagingProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话与消息分片集合的索引管理
+ * chat_N 建 {projectId, userId, createTime, _id} 复合索引，message_N 建 {chatId, createTime, _id} 复合索引，
+ * 与按 createTime/_id 倒序的游标分页和历史窗口读取一致。
+ * 启动时只处理已存在的分片集合，避免一次性创建上千个空集合；新集合在首次写入或读取前补建。
+ */
+@Slf4j
+@Component
+public class MongoIndexManager {
+
+    private static final String CHAT_INDEX = "idx_projectId_userId_createTime_id";
+    private static final String MESSAGE_INDEX = "idx_chatId_createTime_id";
+    /** 早期版本创建的消息索引，已被新索引覆盖 */
+    private static final String LEGACY_MESSAGE_INDEX = "idx_chatId_createTime";
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatPagingProperties properties;
+
+    /** 已确认建好索引的集合 */
+    private final Set<String> ensured = ConcurrentHashMap.newKeySet();
+
+    public MongoIndexManager(MongoTemplate mongoTemplate, ChatPagingProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureOnStartup() {
+        if (!properties.isEnsureIndexesOnStartup()) {
+            return;
+        }
+        Schedulers.boundedElastic().schedule(() -> {
+            long start = System.currentTimeMillis();
+            int count = 0;
+            try {
+                for (String name : mongoTemplate.getCollectionNames()) {
+                    if (isShard(name, SystemConstant.CHAT_COLLECTION_PREFIX)) {
+                        ensureChatIndex(name);
+                        count++;
+                    } else if (isShard(name, SystemConstant.MSG_COLLECTION_PREFIX)) {
+                        ensureMessageIndex(name);
+                        count++;
+                    }
+                }
+                log.info("MongoDB分片集合索引检查完成，集合数：{}，耗时：{}ms", count, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("MongoDB分片集合索引检查失败", e);
+            }
+        });
+    }
+
+    public void ensureChatIndex(String collectionName) {
+        ensure(collectionName, new Index()
+                .on("projectId", Sort.Direction.ASC)
+                .on("userId", Sort.Direction.ASC)
+                .on("createTime", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named(CHAT_INDEX), null);
+    }
+
+    public void ensureMessageIndex(String collectionName) {
+        ensure(collectionName, new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("createTime", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named(MESSAGE_INDEX), LEGACY_MESSAGE_INDEX);
+    }
+
+    /**
+     * 非阻塞版本，索引已确认时立即完成，否则在弹性线程池中建索引
+     */
+    public Mono<Void> ensureMessageIndexAsync(String collectionName) {
+        if (ensured.contains(collectionName)) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> ensureMessageIndex(collectionName))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * 集合被删除后需重新建索引
+     */
+    public void forget(String collectionName) {
+        ensured.remove(collectionName);
+    }
+
+    private void ensure(String collectionName, Index index, String legacyIndex) {
+        if (ensured.contains(collectionName)) {
+            return;
+        }
+        try {
+            IndexOperations indexOps = mongoTemplate.indexOps(collectionName);
+            indexOps.ensureIndex(index);
+            if (legacyIndex != null && indexOps.getIndexInfo().stream().anyMatch(i -> legacyIndex.equals(i.getName()))) {
+                indexOps.dropIndex(legacyIndex);
+            }
+            ensured.add(collectionName);
+        } catch (Exception e) {
+            // 建索引失败不影响读写，下次访问时重试
+            log.warn("创建索引失败 collection={}，原因：{}", collectionName, e.getMessage());
+        }
+    }
+
+    private static boolean isShard(String name, String prefix) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package com.atguigu.guliai.pojo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@Document
+public class ChatSummary {
+
+    @Schema(description = "会话id")
+    @Id
+    private Long chatId;
+
+    @Schema(description = "早期对话的滚动摘要")
+    private String summary;
+
+    @Schema(description = "已纳入摘要的最后一条消息的时间")
+    private Date coveredUntil;
+
+    @Schema(description = "摘要更新时间")
+    private Date updateTime;
+}
@@ -0,0 +1,74 @@
+package com.atguigu.guliai.pojo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@Document
+public class IngestJob {
+
+    @Schema(description = "入库任务id")
+    @Id
+    private Long jobId;
+
+    @Schema(description = "项目id")
+    private Long projectId;
+
+    @Schema(description = "解析后写入MySQL的知识库id，为空说明尚未解析")
+    private Long knowledgeId;
+
+    @Schema(description = "原始文件名")
+    private String fileName;
+
+    @Schema(description = "原始文件在本地的保存路径")
+    private String filePath;
+
+    @Schema(description = "备注")
+    private String remark;
+
+    @Schema(description = "上传用户id")
+    private Long userId;
+
+    @Schema(description = "上传用户名")
+    private String createBy;
+
+    @Schema(description = "任务状态：PENDING、RUNNING、RETRYING、COMPLETED、FAILED")
+    private String state;
+
+    @Schema(description = "已执行次数")
+    private Integer attempts;
+
+    @Schema(description = "分块总数")
+    private Integer totalChunks;
+
+    @Schema(description = "已写入向量库的分块数，续跑断点")
+    private Integer committedChunks;
+
+    @Schema(description = "本次执行开始时已提交的分块数，用于估算剩余时间")
+    private Integer runStartChunks;
+
+    @Schema(description = "执行该任务的节点")
+    private String owner;
+
+    @Schema(description = "最近一次失败原因")
+    private String errorMsg;
+
+    @Schema(description = "创建时间")
+    private Date createTime;
+
+    @Schema(description = "本次执行开始时间")
+    private Date startTime;
+
+    @Schema(description = "最近一次进度更新时间，用于判断执行节点是否存活")
+    private Date updateTime;
+
+    @Schema(description = "下一次重试时间")
+    private Date nextRunTime;
+
+    @Schema(description = "结束时间")
+    private Date finishTime;
+}
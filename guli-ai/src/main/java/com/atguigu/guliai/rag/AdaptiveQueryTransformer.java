@@ -0,0 +1,262 @@
+package com.atguigu.guliai.rag;
+
+import com.atguigu.guliai.config.QueryRewriteProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 自适应查询重写
+ * 1. 查询较短且用词已覆盖知识库词表时跳过重写；
+ * 2. 重写结果按规范化后的查询缓存；
+ * 3. 需要重写时同时用原始查询检索，原始查询的检索结果足够好就不再等待重写，否则取两者中得分更高的一方。
+ * 返回的检索结果通过顾问上下文交给 RAG 顾问，避免重复检索。
+ * 推测执行的重写提交到独立线程池：调用方本身占用弹性线程池阻塞等待，若重写也排在同一线程池，
+ * 高并发时重写会排在等待它的请求之后，直到超时。
+ */
+@Slf4j
+public class AdaptiveQueryTransformer {
+
+    /** 依赖上下文的指代词，出现时原始查询不适合直接检索 */
+    private static final Pattern CONTEXT_DEPENDENT = Pattern.compile("它|他们|她们|这个|那个|这些|那些|上面|刚才|之前|还有呢|然后呢");
+    private static final Pattern NORMALIZE_PUNCTUATION = Pattern.compile("[\\s\\p{Punct}，。！？、；：“”‘’（）《》【】…~～]+");
+
+    private final QueryTransformer rewriter;
+    private final DocumentRetriever retriever;
+    private final KeywordIndex keywordIndex;
+    private final QueryRewriteProperties properties;
+    private final Executor rewriteExecutor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedRewrite> cache = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final Timer rewriteTimer;
+    private final Map<Path, Counter> pathCounters = new EnumMap<>(Path.class);
+    private final Map<Path, DistributionSummary> savedSummaries = new EnumMap<>(Path.class);
+
+    /**
+     * @param rewriteExecutor 执行推测性重写的线程池，不能与调用 plan 的线程池相同
+     */
+    public AdaptiveQueryTransformer(QueryTransformer rewriter, DocumentRetriever retriever, KeywordIndex keywordIndex,
+                                    QueryRewriteProperties properties, MeterRegistry meterRegistry,
+                                    Executor rewriteExecutor) {
+        this.rewriter = rewriter;
+        this.retriever = retriever;
+        this.keywordIndex = keywordIndex;
+        this.properties = properties;
+        this.rewriteExecutor = rewriteExecutor;
+        this.rewriteTimer = Timer.builder("guli.ai.query.rewrite.duration")
+                .description("调用大模型重写查询的耗时")
+                .register(meterRegistry);
+        for (Path path : Path.values()) {
+            pathCounters.put(path, Counter.builder("guli.ai.query.rewrite.decisions")
+                    .tag("path", path.name().toLowerCase(Locale.ROOT))
+                    .description("查询重写阶段的决策次数")
+                    .register(meterRegistry));
+            savedSummaries.put(path, DistributionSummary.builder("guli.ai.query.rewrite.ttft.saved")
+                    .tag("path", path.name().toLowerCase(Locale.ROOT))
+                    .baseUnit("milliseconds")
+                    .description("相比每次都先重写再检索，首字响应节省的时间")
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 决定用于检索的查询，必要时附带已完成的检索结果
+     * 该方法会阻塞等待大模型，需在弹性线程池中调用
+     *
+     * @param query 用户原始查询
+     */
+    public Plan plan(String query) {
+        return plan(query, Map.of());
+    }
+
+    /**
+     * @param query   用户原始查询
+     * @param context 传给重写器与检索器的查询上下文，如请求归属、链路记录
+     */
+    public Plan plan(String query, Map<String, Object> context) {
+        if (isRetrievalReady(query)) {
+            return decide(Path.SKIPPED, query, null, averageRewriteMillis());
+        }
+        String key = normalize(query);
+        String cached = getCached(key);
+        if (cached != null) {
+            return decide(Path.CACHED, cached, null, averageRewriteMillis());
+        }
+        if (!properties.isSpeculativeEnabled()) {
+            TimedRewrite rewritten = rewrite(query, context);
+            if (rewritten == null) {
+                return decide(Path.FALLBACK, query, null, 0);
+            }
+            putCached(key, rewritten.text());
+            return decide(Path.REWRITTEN, rewritten.text(), null, 0);
+        }
+
+        CompletableFuture<TimedRewrite> pending = CompletableFuture.supplyAsync(() -> rewrite(query, context), rewriteExecutor);
+        List<Document> rawDocuments = retriever.retrieve(Query.builder().text(query).context(context).build());
+        double rawScore = bestVectorScore(rawDocuments);
+
+        if (rawScore >= properties.getSpeculativeAcceptScore()) {
+            // 原始查询已足够好，重写在后台完成后只写入缓存，节省的时间即重写本应占用的时间
+            pending.thenAccept(rewritten -> {
+                if (rewritten != null) {
+                    putCached(key, rewritten.text());
+                    savedSummaries.get(Path.RAW).record(rewritten.millis());
+                }
+            });
+            pathCounters.get(Path.RAW).increment();
+            return new Plan(query, rawDocuments, Path.RAW);
+        }
+
+        TimedRewrite rewritten = null;
+        try {
+            rewritten = pending.get(properties.getRewriteTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("等待查询重写失败，使用原始查询: {}", e.getMessage());
+        }
+        if (rewritten == null) {
+            return decide(Path.FALLBACK, query, rawDocuments, 0);
+        }
+        putCached(key, rewritten.text());
+        List<Document> rewrittenDocuments = retriever.retrieve(Query.builder().text(rewritten.text()).context(context).build());
+        return bestVectorScore(rewrittenDocuments) >= rawScore
+                ? decide(Path.REWRITTEN, rewritten.text(), rewrittenDocuments, 0)
+                : decide(Path.RAW, query, rawDocuments, 0);
+    }
+
+    /**
+     * 廉价判断原始查询能否直接检索：长度适中、不含依赖上下文的指代、用词大多出现在知识库中
+     */
+    public boolean isRetrievalReady(String query) {
+        if (!properties.isSkipEnabled() || query == null) {
+            return false;
+        }
+        String text = query.trim();
+        if (text.length() < properties.getSkipMinChars() || text.length() > properties.getSkipMaxChars()) {
+            return false;
+        }
+        if (CONTEXT_DEPENDENT.matcher(text).find()) {
+            return false;
+        }
+        return keywordIndex.vocabularyCoverage(text) >= properties.getSkipMinVocabularyCoverage();
+    }
+
+    private Plan decide(Path path, String text, List<Document> documents, double savedMillis) {
+        pathCounters.get(path).increment();
+        savedSummaries.get(path).record(savedMillis);
+        log.debug("查询重写决策: path={}, query='{}'", path, text);
+        return new Plan(text, documents, path);
+    }
+
+    private TimedRewrite rewrite(String query, Map<String, Object> context) {
+        long start = System.nanoTime();
+        try {
+            String text = rewriter.transform(Query.builder().text(query).context(context).build()).text();
+            long elapsed = System.nanoTime() - start;
+            rewriteTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            return text == null || text.isBlank() ? null : new TimedRewrite(text.trim(), elapsed / 1_000_000);
+        } catch (Exception e) {
+            log.warn("查询重写失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private double averageRewriteMillis() {
+        return rewriteTimer.count() > 0 ? rewriteTimer.mean(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    static String normalize(String query) {
+        return NORMALIZE_PUNCTUATION.matcher(query.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static double bestVectorScore(List<Document> documents) {
+        double best = 0;
+        for (Document document : documents) {
+            best = Math.max(best, HybridDocumentRetriever.vectorScore(document));
+        }
+        return best;
+    }
+
+    private String getCached(String key) {
+        lock.lock();
+        try {
+            CachedRewrite cached = cache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expireAt() <= System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return cached.text();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putCached(String key, String text) {
+        lock.lock();
+        try {
+            cache.put(key, new CachedRewrite(text, System.currentTimeMillis() + properties.getCacheTtl().toMillis()));
+            var it = cache.keySet().iterator();
+            while (cache.size() > properties.getCacheMaxEntries() && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 查询重写阶段的决策路径
+     */
+    public enum Path {
+        /** 原始查询可直接检索，未调用大模型 */
+        SKIPPED,
+        /** 命中重写缓存 */
+        CACHED,
+        /** 使用重写后的查询 */
+        REWRITTEN,
+        /** 推测性检索中原始查询胜出 */
+        RAW,
+        /** 重写失败或超时，退回原始查询 */
+        FALLBACK
+    }
+
+    /**
+     * 检索计划
+     *
+     * @param query     用于检索的查询
+     * @param documents 已完成的检索结果，为空时由 RAG 顾问自行检索
+     * @param path      决策路径
+     */
+    public record Plan(String query, List<Document> documents, Path path) {
+    }
+
+    private record TimedRewrite(String text, long millis) {
+    }
+
+    private record CachedRewrite(String text, long expireAt) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.atguigu.guliai.rag;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.SegToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 面向检索的中文分词
+ * 结巴搜索模式切出词语，再补充连续汉字的二元组，词典中没有的楼名、人名等专有名词也能被命中；
+ * 字母数字串（课程代码、门牌号等）整体保留并转为小写。
+ */
+public final class ChineseTokenizer {
+
+    private ChineseTokenizer() {
+    }
+
+    private static final class Holder {
+        // 词典加载较慢，首次使用时再初始化
+        private static final JiebaSegmenter SEGMENTER = new JiebaSegmenter();
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        for (SegToken token : Holder.SEGMENTER.process(text, JiebaSegmenter.SegMode.SEARCH)) {
+            String word = token.word.trim().toLowerCase(Locale.ROOT);
+            // 单个汉字多为虚词，由下面的二元组覆盖
+            if (word.length() > 1 && isIndexable(word)) {
+                tokens.add(word);
+            } else if (word.length() == 1 && Character.isLetterOrDigit(word.charAt(0)) && !isHan(word.charAt(0))) {
+                tokens.add(word);
+            }
+        }
+        addHanBigrams(text, tokens);
+        return tokens;
+    }
+
+    private static void addHanBigrams(String text, List<String> tokens) {
+        for (int i = 0; i + 1 < text.length(); i++) {
+            char a = text.charAt(i);
+            char b = text.charAt(i + 1);
+            if (isHan(a) && isHan(b)) {
+                tokens.add(new String(new char[]{a, b}));
+            }
+        }
+    }
+
+    private static boolean isIndexable(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetterOrDigit(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+}
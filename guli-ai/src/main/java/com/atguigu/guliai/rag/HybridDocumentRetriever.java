@@ -0,0 +1,77 @@
+package com.atguigu.guliai.rag;
+
+import com.atguigu.guliai.config.RetrievalProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量检索 + 关键词检索的混合检索器
+ * 两路结果按倒数排名融合（RRF）：score = Σ 1 / (k + rank)，同一分块在两路中都靠前时排名最高。
+ * 关键词检索在本地内存中完成，不增加网络开销。
+ */
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    /** 融合后 score 变为排名得分，原始向量相似度保存在该元数据中 */
+    public static final String VECTOR_SCORE_KEY = "vectorScore";
+
+    private final DocumentRetriever vectorRetriever;
+    private final KeywordIndex keywordIndex;
+    private final RetrievalProperties properties;
+
+    public HybridDocumentRetriever(DocumentRetriever vectorRetriever, KeywordIndex keywordIndex,
+                                   RetrievalProperties properties) {
+        this.vectorRetriever = vectorRetriever;
+        this.keywordIndex = keywordIndex;
+        this.properties = properties;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        List<Document> vectorResults = vectorRetriever.retrieve(query).stream()
+                .map(d -> d.getScore() != null ? d.mutate().metadata(VECTOR_SCORE_KEY, d.getScore()).build() : d)
+                .toList();
+        List<Document> keywordResults = keywordIndex.search(query.text(), properties.getKeywordCandidates());
+        return fuse(List.of(vectorResults, keywordResults), properties.getRrfK(), properties.getTopK());
+    }
+
+    /**
+     * 文档的向量相似度，未经融合的纯向量检索结果直接取 score
+     */
+    public static double vectorScore(Document document) {
+        Object score = document.getMetadata().get(VECTOR_SCORE_KEY);
+        if (score instanceof Number number) {
+            return number.doubleValue();
+        }
+        return document.getScore() != null ? document.getScore() : 0;
+    }
+
+    /**
+     * 倒数排名融合
+     *
+     * @param rankings 各路检索结果，均已按相关度降序
+     * @param k        融合常数
+     * @param topK     返回条数
+     * @return 融合后的文档，score 为融合得分
+     */
+    public static List<Document> fuse(List<List<Document>> rankings, int k, int topK) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK)
+                .map(e -> documents.get(e.getKey()).mutate().score(e.getValue()).build())
+                .toList();
+    }
+}
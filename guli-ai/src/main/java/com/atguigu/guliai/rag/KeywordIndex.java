@@ -0,0 +1,346 @@
+package com.atguigu.guliai.rag;
+
+import com.atguigu.guliai.config.RetrievalProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ollama 知识库分块的本地倒排索引，按 BM25 打分
+ * 索引内容为分块正文与关键词增强写入的 keywords / excerpt_keywords 元数据，关键词额外加权。
+ * ETL 写入与删除向量时同步维护，启动时从 Qdrant 全量加载一次。
+ */
+@Slf4j
+@Component
+public class KeywordIndex {
+
+    private static final String CONTENT_FIELD = "doc_content";
+    private static final String[] KEYWORD_FIELDS = {"keywords", "excerpt_keywords"};
+    /** 关键词元数据中的词按该倍数计入词频 */
+    private static final int KEYWORD_BOOST = 2;
+    private static final int SCROLL_PAGE_SIZE = 256;
+
+    private final RetrievalProperties properties;
+    /** 只在启动加载与重建索引时使用 */
+    private final ObjectProvider<QdrantClient> qdrantClientProvider;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    private long totalLength;
+
+    public KeywordIndex(RetrievalProperties properties, ObjectProvider<QdrantClient> qdrantClientProvider, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.qdrantClientProvider = qdrantClientProvider;
+        Gauge.builder("guli.ai.keyword.index.size", this, KeywordIndex::size)
+                .description("关键词倒排索引中的分块数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 写入或覆盖分块
+     */
+    public void add(Collection<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+        List<Entry> prepared = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            if (document.getId() != null && document.getText() != null) {
+                prepared.add(toEntry(document));
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : prepared) {
+                removeEntry(entry.id());
+                entries.put(entry.id(), entry);
+                totalLength += entry.length();
+                entry.termFreqs().forEach((term, tf) ->
+                        postings.computeIfAbsent(term, t -> new HashMap<>()).put(entry.id(), tf));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeEntry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeByKnowledgeId(String knowledgeId) {
+        removeByMetadata("knowledgeId", knowledgeId);
+    }
+
+    public void removeByProjectId(String projectId) {
+        removeByMetadata("projectId", projectId);
+    }
+
+    /**
+     * 一次遍历删除多个知识库的分块
+     */
+    public void removeByKnowledgeIds(Collection<String> knowledgeIds) {
+        Set<String> targets = new HashSet<>(knowledgeIds);
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            entries.values().forEach(entry -> {
+                if (targets.contains(String.valueOf(entry.metadata().get("knowledgeId")))) {
+                    ids.add(entry.id());
+                }
+            });
+            ids.forEach(this::removeEntry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索
+     *
+     * @param query 查询文本
+     * @param topK  返回条数
+     * @return 按得分降序排列的分块，score 为 BM25 得分
+     */
+    public List<Document> search(String query, int topK) {
+        Set<String> terms = new LinkedHashSet<>(ChineseTokenizer.tokenize(query));
+        if (terms.isEmpty() || topK <= 0) {
+            return List.of();
+        }
+        double k1 = properties.getBm25K1();
+        double b = properties.getBm25B();
+        lock.readLock().lock();
+        try {
+            int n = entries.size();
+            if (n == 0) {
+                return List.of();
+            }
+            double avgLength = (double) totalLength / n;
+            Map<String, Double> scores = new HashMap<>();
+            Map<String, Integer> matched = new HashMap<>();
+            for (String term : terms) {
+                Map<String, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (n - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((id, tf) -> {
+                    double norm = tf + k1 * (1 - b + b * entries.get(id).length() / avgLength);
+                    scores.merge(id, idf * tf * (k1 + 1) / norm, Double::sum);
+                    matched.merge(id, 1, Integer::sum);
+                });
+            }
+            int minMatched = (int) Math.ceil(terms.size() * properties.getKeywordMinShouldMatch());
+            return scores.entrySet().stream()
+                    .filter(e -> matched.get(e.getKey()) >= minMatched)
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .limit(topK)
+                    .map(e -> {
+                        Entry entry = entries.get(e.getKey());
+                        return Document.builder()
+                                .id(entry.id())
+                                .text(entry.text())
+                                .metadata(entry.metadata())
+                                .score(e.getValue())
+                                .build();
+                    })
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询词在索引词表中的覆盖率，用于判断查询是否已使用知识库中的说法
+     */
+    public double vocabularyCoverage(String text) {
+        Set<String> terms = new LinkedHashSet<>(ChineseTokenizer.tokenize(text));
+        if (terms.isEmpty()) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            long known = terms.stream().filter(postings::containsKey).count();
+            return (double) known / terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 启动完成后在后台从向量库加载已有分块，加载期间检索退化为纯向量结果
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                int loaded = rebuild();
+                log.info("关键词索引加载完成，分块数：{}", loaded);
+            } catch (Exception e) {
+                log.error("关键词索引加载失败，混合检索暂时只使用向量结果", e);
+            }
+        });
+    }
+
+    /**
+     * 分页遍历 Ollama 向量集合，把所有分块写入索引
+     *
+     * @return 加载的分块数
+     */
+    public int rebuild() throws Exception {
+        int loaded = 0;
+        Points.PointId offset = null;
+        do {
+            Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(SystemConstant.VECTOR_STORE_OLLAMA)
+                    .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                    .setLimit(SCROLL_PAGE_SIZE);
+            if (offset != null) {
+                request.setOffset(offset);
+            }
+            Points.ScrollResponse response = qdrantClientProvider.getObject().scrollAsync(request.build()).get();
+            List<Document> page = new ArrayList<>(response.getResultCount());
+            for (Points.RetrievedPoint point : response.getResultList()) {
+                Document document = toDocument(point);
+                if (document != null) {
+                    page.add(document);
+                }
+            }
+            add(page);
+            loaded += page.size();
+            offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+        } while (offset != null);
+        return loaded;
+    }
+
+    private static Document toDocument(Points.RetrievedPoint point) {
+        Map<String, JsonWithInt.Value> payload = point.getPayloadMap();
+        JsonWithInt.Value content = payload.get(CONTENT_FIELD);
+        if (content == null || !content.hasStringValue()) {
+            return null;
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        payload.forEach((key, value) -> {
+            if (!CONTENT_FIELD.equals(key)) {
+                metadata.put(key, toObject(value));
+            }
+        });
+        String id = point.getId().hasUuid() ? point.getId().getUuid() : String.valueOf(point.getId().getNum());
+        return Document.builder().id(id).text(content.getStringValue()).metadata(metadata).build();
+    }
+
+    private static Object toObject(JsonWithInt.Value value) {
+        return switch (value.getKindCase()) {
+            case STRING_VALUE -> value.getStringValue();
+            case INTEGER_VALUE -> value.getIntegerValue();
+            case DOUBLE_VALUE -> value.getDoubleValue();
+            case BOOL_VALUE -> value.getBoolValue();
+            default -> value.toString();
+        };
+    }
+
+    private static Entry toEntry(Document document) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String token : ChineseTokenizer.tokenize(document.getText())) {
+            termFreqs.merge(token, 1, Integer::sum);
+            length++;
+        }
+        for (String field : KEYWORD_FIELDS) {
+            Object keywords = document.getMetadata().get(field);
+            if (keywords == null) {
+                continue;
+            }
+            for (String token : ChineseTokenizer.tokenize(String.valueOf(keywords))) {
+                termFreqs.merge(token, KEYWORD_BOOST, Integer::sum);
+                length += KEYWORD_BOOST;
+            }
+        }
+        return new Entry(document.getId(), document.getText(), Map.copyOf(withoutNulls(document.getMetadata())),
+                termFreqs, Math.max(length, 1));
+    }
+
+    private static Map<String, Object> withoutNulls(Map<String, Object> metadata) {
+        Map<String, Object> result = new HashMap<>();
+        metadata.forEach((key, value) -> {
+            if (key != null && value != null) {
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    private void removeByMetadata(String key, String value) {
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            entries.values().forEach(entry -> {
+                if (value.equals(String.valueOf(entry.metadata().get(key)))) {
+                    ids.add(entry.id());
+                }
+            });
+            ids.forEach(this::removeEntry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private void removeEntry(String id) {
+        Entry old = entries.remove(id);
+        if (old == null) {
+            return;
+        }
+        totalLength -= old.length();
+        old.termFreqs().keySet().forEach(term -> {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        });
+    }
+
+    private record Entry(String id, String text, Map<String, Object> metadata,
+                         Map<String, Integer> termFreqs, int length) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.atguigu.guliai.router;
+
+import com.atguigu.guliai.enums.AgentTypeEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 路由流的增量解析器，每次路由请求使用一个新实例
+ * 逐个接收大模型输出的片段，累计文本的前缀唯一对应某个智能体名称时立即给出结果，无需等待整段输出。
+ */
+public class IntentPrefixMatcher {
+
+    /** 前缀至少达到该长度才做判断，避免单个字母误判 */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private AgentTypeEnum matched;
+
+    /**
+     * 追加一个片段
+     *
+     * @param token 路由流输出的片段
+     * @return 是否已确定目标智能体
+     */
+    public boolean offer(String token) {
+        if (matched != null) {
+            return true;
+        }
+        if (token != null) {
+            buffer.append(token);
+        }
+        String prefix = normalize(buffer);
+        if (prefix.length() < MIN_PREFIX_LENGTH) {
+            return false;
+        }
+        List<AgentTypeEnum> candidates = new ArrayList<>();
+        for (AgentTypeEnum type : AgentTypeEnum.values()) {
+            if (type == AgentTypeEnum.ROUTE) {
+                continue;
+            }
+            String name = type.getAgentName();
+            if (name.startsWith(prefix) || prefix.startsWith(name)) {
+                candidates.add(type);
+            }
+        }
+        if (candidates.size() == 1) {
+            matched = candidates.get(0);
+        }
+        return matched != null;
+    }
+
+    /**
+     * @return 已确定的智能体，尚未确定或输出不是智能体名称时为 null
+     */
+    public AgentTypeEnum getMatched() {
+        return matched;
+    }
+
+    public String getText() {
+        return buffer.toString();
+    }
+
+    /**
+     * 去掉模型可能输出的前导空白、引号与 Markdown 标记
+     */
+    private static String normalize(CharSequence text) {
+        int start = 0;
+        while (start < text.length()) {
+            char c = text.charAt(start);
+            if (!Character.isWhitespace(c) && c != '"' && c != '\'' && c != '`' && c != '*') {
+                break;
+            }
+            start++;
+        }
+        return text.subSequence(start, text.length()).toString();
+    }
+}
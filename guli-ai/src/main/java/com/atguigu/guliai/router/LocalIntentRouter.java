@@ -0,0 +1,266 @@
+package com.atguigu.guliai.router;
+
+import com.atguigu.guliai.config.IntentRouterProperties;
+import com.atguigu.guliai.enums.AgentTypeEnum;
+import com.atguigu.guliai.rag.ChineseTokenizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 本地意图路由
+ * 问题经分词后做特征哈希得到向量，与各智能体标注样例的质心比较余弦相似度，
+ * 再叠加从样例中提取的关键词规则得分。得分或领先幅度不足时交给大模型路由。
+ * 全程只在内存中计算，不调用任何模型。
+ */
+@Slf4j
+@Component
+public class LocalIntentRouter {
+
+    private static final int DIMENSION = 512;
+    private static final Pattern PHONE = Pattern.compile("1[3-9]\\d{9}");
+    private static final Pattern SCORE = Pattern.compile("\\d{3}\\s*分");
+    /** 一个词至少出现在同一智能体的这么多条样例中且未出现在其他智能体样例中，才成为该智能体的关键词 */
+    private static final int MIN_KEYWORD_EXAMPLES = 2;
+
+    private final IntentRouterProperties properties;
+    private final ResourceLoader resourceLoader;
+
+    private final Map<AgentTypeEnum, float[]> centroids = new EnumMap<>(AgentTypeEnum.class);
+    private final Map<AgentTypeEnum, Set<String>> keywords = new EnumMap<>(AgentTypeEnum.class);
+
+    private final Timer latencyTimer;
+    private final Counter localCounter;
+    private final Counter llmCounter;
+    private final MeterRegistry meterRegistry;
+
+    public LocalIntentRouter(IntentRouterProperties properties, ResourceLoader resourceLoader, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.resourceLoader = resourceLoader;
+        this.meterRegistry = meterRegistry;
+        this.latencyTimer = Timer.builder("guli.ai.router.latency")
+                .description("本地意图路由耗时")
+                .register(meterRegistry);
+        this.localCounter = Counter.builder("guli.ai.router.decisions")
+                .tag("source", "local")
+                .description("意图路由决策次数")
+                .register(meterRegistry);
+        this.llmCounter = Counter.builder("guli.ai.router.decisions")
+                .tag("source", "llm")
+                .description("意图路由决策次数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Map<AgentTypeEnum, List<String>> examples = loadExamples();
+        Map<String, Set<AgentTypeEnum>> tokenLabels = new HashMap<>();
+        Map<AgentTypeEnum, Map<String, Integer>> tokenCounts = new EnumMap<>(AgentTypeEnum.class);
+
+        examples.forEach((type, questions) -> {
+            float[] centroid = new float[DIMENSION];
+            for (String question : questions) {
+                float[] vector = embed(question);
+                for (int i = 0; i < DIMENSION; i++) {
+                    centroid[i] += vector[i];
+                }
+                for (String token : new HashSet<>(ChineseTokenizer.tokenize(question))) {
+                    tokenLabels.computeIfAbsent(token, t -> new HashSet<>()).add(type);
+                    tokenCounts.computeIfAbsent(type, t -> new HashMap<>()).merge(token, 1, Integer::sum);
+                }
+            }
+            centroids.put(type, normalize(centroid));
+        });
+
+        tokenCounts.forEach((type, counts) -> {
+            Set<String> words = new HashSet<>();
+            counts.forEach((token, count) -> {
+                if (count >= MIN_KEYWORD_EXAMPLES && tokenLabels.get(token).size() == 1) {
+                    words.add(token);
+                }
+            });
+            keywords.put(type, words);
+        });
+        log.info("本地意图路由初始化完成: 样例={}, 关键词={}",
+                examples.values().stream().mapToInt(List::size).sum(), keywords);
+    }
+
+    /**
+     * 对问题做本地意图判断
+     *
+     * @param question 用户问题
+     * @return 路由结果，confident 为 false 时应交给大模型路由
+     */
+    public RouteDecision route(String question) {
+        if (!properties.isEnabled() || centroids.isEmpty() || question == null || question.isBlank()) {
+            llmCounter.increment();
+            return RouteDecision.NONE;
+        }
+        long start = System.nanoTime();
+        float[] vector = embed(question);
+        Set<String> tokens = new HashSet<>(ChineseTokenizer.tokenize(question));
+
+        AgentTypeEnum best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<AgentTypeEnum, float[]> entry : centroids.entrySet()) {
+            AgentTypeEnum type = entry.getKey();
+            double score = dot(vector, entry.getValue()) + keywordScore(type, tokens, question);
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = type;
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+        double margin = secondScore == Double.NEGATIVE_INFINITY ? bestScore : bestScore - secondScore;
+        // 寒暄类问题需要大模型按提示词作答，即使置信度高也交给大模型
+        boolean confident = best != AgentTypeEnum.ROUTE
+                && bestScore >= properties.getMinScore()
+                && margin >= properties.getMinMargin();
+        latencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        (confident ? localCounter : llmCounter).increment();
+        return new RouteDecision(best, bestScore, margin, confident);
+    }
+
+    /**
+     * 是否对本次本地路由结果抽样做大模型复核
+     */
+    public boolean shouldShadow() {
+        return properties.getShadowSampleRate() > 0
+                && ThreadLocalRandom.current().nextDouble() < properties.getShadowSampleRate();
+    }
+
+    /**
+     * 记录本地判断与大模型判断是否一致
+     *
+     * @param local  本地路由结果
+     * @param llm    大模型路由结果，非智能体名称时为 null
+     * @param source shadow 为抽样复核，fallback 为置信度不足时的回退
+     */
+    public void recordAgreement(RouteDecision local, AgentTypeEnum llm, String source) {
+        if (local.agentType() == null) {
+            return;
+        }
+        AgentTypeEnum expected = llm != null ? llm : AgentTypeEnum.ROUTE;
+        Counter.builder("guli.ai.router.agreement")
+                .tag("source", source)
+                .tag("result", local.agentType() == expected ? "agree" : "disagree")
+                .description("本地路由与大模型路由的一致次数")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private double keywordScore(AgentTypeEnum type, Set<String> tokens, String question) {
+        int hits = 0;
+        for (String keyword : keywords.getOrDefault(type, Set.of())) {
+            if (tokens.contains(keyword)) {
+                hits++;
+            }
+        }
+        if (type == AgentTypeEnum.RESERVATION && PHONE.matcher(question).find()) {
+            hits += 2;
+        }
+        return Math.min(hits, properties.getMaxKeywordHits()) * properties.getKeywordWeight();
+    }
+
+    /**
+     * 特征哈希向量：分词结果与数字模式特征按哈希映射到固定维度，带符号以减少冲突偏差
+     */
+    static float[] embed(String text) {
+        List<String> features = new ArrayList<>(ChineseTokenizer.tokenize(text));
+        if (PHONE.matcher(text).find()) {
+            features.add("<phone>");
+        }
+        if (SCORE.matcher(text).find()) {
+            features.add("<score>");
+        }
+        float[] vector = new float[DIMENSION];
+        for (String feature : features) {
+            int hash = feature.hashCode();
+            int index = Math.floorMod(hash, DIMENSION);
+            vector[index] += (hash >>> 31) == 0 ? 1f : -1f;
+        }
+        return normalize(vector);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) (vector[i] / norm);
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private Map<AgentTypeEnum, List<String>> loadExamples() throws IOException {
+        Map<AgentTypeEnum, List<String>> examples = new EnumMap<>(AgentTypeEnum.class);
+        Resource resource = resourceLoader.getResource(properties.getExamplesLocation());
+        if (!resource.exists()) {
+            log.warn("未找到意图路由样例文件 {}，全部问题交给大模型路由", properties.getExamplesLocation());
+            return examples;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", 2);
+                AgentTypeEnum type = parts.length == 2 ? AgentTypeEnum.agentNameOf(parts[0].trim()) : null;
+                if (type == null) {
+                    log.warn("忽略无法识别的意图样例: {}", line);
+                    continue;
+                }
+                examples.computeIfAbsent(type, t -> new ArrayList<>()).add(parts[1].trim());
+            }
+        }
+        return examples;
+    }
+
+    /**
+     * 路由结果
+     *
+     * @param agentType  得分最高的智能体
+     * @param score      最高得分
+     * @param margin     与第二名的差距
+     * @param confident  是否可直接采用
+     */
+    public record RouteDecision(AgentTypeEnum agentType, double score, double margin, boolean confident) {
+        public static final RouteDecision NONE = new RouteDecision(null, 0, 0, false);
+    }
+}
@@ -0,0 +1,190 @@
+package com.atguigu.guliai.sensitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 敏感词多模式匹配自动机（Aho–Corasick）
+ * 构建后不可变，可被任意线程并发使用。词库与待匹配文本都先经 {@link TextNormalizer} 归一化，
+ * 一次扫描即可找出所有命中，耗时只与文本长度和命中数有关，与词库大小无关。
+ * 根节点的转移使用按字符直接寻址的数组，其余节点的转移按字符有序存放并二分查找。
+ */
+public final class AhoCorasickMatcher {
+
+    public static final AhoCorasickMatcher EMPTY = new AhoCorasickMatcher(List.of());
+
+    private final int[] rootNext;
+    /** 节点 i 的转移为 keys/targets 的 [offsets[i], offsets[i + 1]) 区间 */
+    private final int[] offsets;
+    private final char[] keys;
+    private final int[] targets;
+    private final int[] fail;
+    /** 以该节点结尾的词下标，非词尾为 -1 */
+    private final int[] wordAt;
+    /** 沿失败链最近的词尾节点，没有为 0 */
+    private final int[] outputLink;
+    private final String[] words;
+    private final int[] wordLengths;
+
+    public AhoCorasickMatcher(Collection<String> dictionary) {
+        // 归一化后去重，保留最先出现的原词
+        Map<String, String> normalized = new LinkedHashMap<>();
+        for (String word : dictionary) {
+            if (word != null && !word.isBlank()) {
+                normalized.putIfAbsent(TextNormalizer.normalize(word.trim()), word.trim());
+            }
+        }
+        this.words = normalized.values().toArray(new String[0]);
+        this.wordLengths = new int[words.length];
+
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        children.add(new TreeMap<>());
+        terminal.add(-1);
+        int index = 0;
+        for (String word : normalized.keySet()) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(c, next);
+                    children.add(new TreeMap<>());
+                    terminal.add(-1);
+                }
+                node = next;
+            }
+            terminal.set(node, index);
+            wordLengths[index] = word.length();
+            index++;
+        }
+
+        int size = children.size();
+        this.offsets = new int[size + 1];
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = edges;
+            edges += children.get(i).size();
+        }
+        offsets[size] = edges;
+        this.keys = new char[edges];
+        this.targets = new int[edges];
+        for (int i = 0; i < size; i++) {
+            int pos = offsets[i];
+            for (Map.Entry<Character, Integer> entry : children.get(i).entrySet()) {
+                keys[pos] = entry.getKey();
+                targets[pos] = entry.getValue();
+                pos++;
+            }
+        }
+        this.rootNext = new int[Character.MAX_VALUE + 1];
+        children.get(0).forEach((c, next) -> rootNext[c] = next);
+        this.wordAt = terminal.stream().mapToInt(Integer::intValue).toArray();
+
+        // 按层次遍历计算失败指针与输出链
+        this.fail = new int[size];
+        this.outputLink = new int[size];
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int pos = offsets[0]; pos < offsets[1]; pos++) {
+            queue[tail++] = targets[pos];
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int pos = offsets[node]; pos < offsets[node + 1]; pos++) {
+                char c = keys[pos];
+                int child = targets[pos];
+                int f = fail[node];
+                int next;
+                while ((next = step(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = Math.max(next, 0);
+                outputLink[child] = wordAt[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * 一次扫描返回所有命中，包括相互重叠的词
+     */
+    public List<Hit> findAll(CharSequence text) {
+        if (text == null || words.length == 0) {
+            return List.of();
+        }
+        List<Hit> hits = new ArrayList<>();
+        scan(text, hits, false);
+        return hits;
+    }
+
+    /**
+     * @return 第一个命中，没有命中返回 null
+     */
+    public Hit findFirst(CharSequence text) {
+        if (text == null || words.length == 0) {
+            return null;
+        }
+        List<Hit> hits = new ArrayList<>(1);
+        scan(text, hits, true);
+        return hits.isEmpty() ? null : hits.get(0);
+    }
+
+    public boolean matches(CharSequence text) {
+        return findFirst(text) != null;
+    }
+
+    private void scan(CharSequence text, List<Hit> hits, boolean firstOnly) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = TextNormalizer.normalize(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            int node = wordAt[state] >= 0 ? state : outputLink[state];
+            while (node != 0) {
+                int word = wordAt[node];
+                hits.add(new Hit(words[word], i + 1 - wordLengths[word], i + 1));
+                if (firstOnly) {
+                    return;
+                }
+                node = outputLink[node];
+            }
+        }
+    }
+
+    /**
+     * @return 转移到的节点，不存在时为 -1
+     */
+    private int step(int node, char c) {
+        if (node == 0) {
+            int next = rootNext[c];
+            return next == 0 ? -1 : next;
+        }
+        int pos = Arrays.binarySearch(keys, offsets[node], offsets[node + 1], c);
+        return pos >= 0 ? targets[pos] : -1;
+    }
+
+    /**
+     * 命中结果
+     *
+     * @param word  词库中的原词
+     * @param start 在原文中的起始下标（含）
+     * @param end   在原文中的结束下标（不含）
+     */
+    public record Hit(String word, int start, int end) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.atguigu.guliai.sensitive;
+
+import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.config.SensitiveWordProperties;
+import com.atguigu.system.service.ISysConfigService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 敏感词过滤
+ * 词库由内置词表与参数设置中的词合并而成，编译为 Aho–Corasick 自动机后整体替换，
+ * 读取方只读取一次 volatile 引用，重载期间不加锁也不会读到构建一半的词库。
+ */
+@Slf4j
+@Component
+public class SensitiveWordFilter {
+
+    private static final Pattern SEPARATOR = Pattern.compile("[,，;；\\r\\n]+");
+
+    private final List<String> builtinWords;
+    private final ISysConfigService configService;
+    private final SensitiveWordProperties properties;
+
+    private volatile AhoCorasickMatcher matcher = AhoCorasickMatcher.EMPTY;
+    /** 上次加载时的参数值，未变化时跳过重建 */
+    private volatile String loadedConfig;
+    private Disposable reloadTask;
+
+    public SensitiveWordFilter(@Qualifier("sensitiveWords") List<String> builtinWords,
+                               ISysConfigService configService,
+                               SensitiveWordProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.builtinWords = builtinWords;
+        this.configService = configService;
+        this.properties = properties;
+        Gauge.builder("guli.ai.sensitive.words", this, f -> f.matcher.size())
+                .description("敏感词库词数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        long interval = Math.max(1000, properties.getReloadInterval().toMillis());
+        reloadTask = Schedulers.boundedElastic().schedulePeriodically(this::reload, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (reloadTask != null) {
+            reloadTask.dispose();
+        }
+    }
+
+    /**
+     * @return 第一个命中的敏感词，没有命中返回 null
+     */
+    public AhoCorasickMatcher.Hit findFirst(String text) {
+        return matcher.findFirst(text);
+    }
+
+    /**
+     * 一次扫描返回所有命中的敏感词及位置
+     */
+    public List<AhoCorasickMatcher.Hit> findAll(String text) {
+        return matcher.findAll(text);
+    }
+
+    public boolean matches(String text) {
+        return matcher.matches(text);
+    }
+
+    /**
+     * 参数值变化时重建词库，读取或构建失败时继续使用旧词库
+     */
+    public void reload() {
+        try {
+            String config = null;
+            try {
+                config = configService.selectConfigByKey(properties.getConfigKey());
+            } catch (Exception e) {
+                log.warn("读取敏感词参数失败，仅使用已加载的词库: {}", e.getMessage());
+                if (loadedConfig != null) {
+                    return;
+                }
+            }
+            String current = StringUtils.isNotEmpty(config) ? config : "";
+            if (current.equals(loadedConfig)) {
+                return;
+            }
+            List<String> words = new ArrayList<>(builtinWords);
+            if (!current.isEmpty()) {
+                Arrays.stream(SEPARATOR.split(current))
+                        .map(String::trim)
+                        .filter(w -> !w.isEmpty())
+                        .forEach(words::add);
+            }
+            long start = System.nanoTime();
+            AhoCorasickMatcher rebuilt = new AhoCorasickMatcher(words);
+            matcher = rebuilt;
+            loadedConfig = current;
+            log.info("敏感词库已加载，词数：{}，构建耗时：{}ms", rebuilt.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.error("敏感词库重建失败，继续使用旧词库", e);
+        }
+    }
+}
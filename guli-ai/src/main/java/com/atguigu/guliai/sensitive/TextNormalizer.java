@@ -0,0 +1,59 @@
+package com.atguigu.guliai.sensitive;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 敏感词匹配前的逐字归一化：全角转半角、英文转小写、繁体转简体
+ * 每个字符只映射为一个字符，归一化后的下标与原文一一对应，命中位置可直接用于原文。
+ */
+public final class TextNormalizer {
+
+    private static final String T2S_RESOURCE = "/sensitive/t2s.txt";
+    private static final char[] TABLE = buildTable();
+
+    private TextNormalizer() {
+    }
+
+    public static char normalize(char c) {
+        return TABLE[c];
+    }
+
+    public static String normalize(CharSequence text) {
+        char[] chars = new char[text.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = TABLE[text.charAt(i)];
+        }
+        return new String(chars);
+    }
+
+    private static char[] buildTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int mapped = c;
+            if (c == '　') {
+                mapped = ' ';
+            } else if (c >= '！' && c <= '～') {
+                mapped = c - 0xFEE0;
+            }
+            table[c] = Character.toLowerCase((char) mapped);
+        }
+        try (InputStream in = TextNormalizer.class.getResourceAsStream(T2S_RESOURCE)) {
+            if (in != null) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 3 && line.charAt(1) == '\t') {
+                        table[line.charAt(0)] = line.charAt(2);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("加载繁简映射表失败", e);
+        }
+        return table;
+    }
+}
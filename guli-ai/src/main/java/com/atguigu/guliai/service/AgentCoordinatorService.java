@@ -2,15 +2,20 @@ package com.atguigu.guliai.service;
 
 import com.atguigu.guliai.agent.Agent;
 import com.atguigu.guliai.enums.AgentTypeEnum;
+import com.atguigu.guliai.monitor.ChatPipelineMetrics;
+import com.atguigu.guliai.monitor.ChatTrace;
+import com.atguigu.guliai.router.IntentPrefixMatcher;
+import com.atguigu.guliai.router.LocalIntentRouter;
 import com.atguigu.guliai.vo.QueryVo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -18,13 +23,15 @@ import java.util.Map;
 public class AgentCoordinatorService {
 
     private final Map<String, Agent> agents;
-    @Lazy // 添加延迟加载注解解决循环依赖
-    private AiService aiService; // 从构造器注入改为字段注入
+    private final LocalIntentRouter intentRouter;
+    private final ChatPipelineMetrics chatPipelineMetrics;
 
     @Autowired
-    public AgentCoordinatorService(ApplicationContext context, AiService aiService) {
+    public AgentCoordinatorService(ApplicationContext context, LocalIntentRouter intentRouter,
+                                   ChatPipelineMetrics chatPipelineMetrics) {
         this.agents = context.getBeansOfType(Agent.class);
-        this.aiService = aiService;
+        this.intentRouter = intentRouter;
+        this.chatPipelineMetrics = chatPipelineMetrics;
 
         // 注册检查
         log.info("===== 智能体注册检查 =====");
@@ -38,35 +45,77 @@ public class AgentCoordinatorService {
         }
     }
 
-    public Flux<String> coordinate(String question, String sessionId, Long projectId) {
+    /**
+     * @param trace 本次请求的链路记录，路由确定后写入实际处理的智能体，可为空
+     */
+    public Flux<String> coordinate(String question, String sessionId, Long projectId, ChatTrace trace) {
         log.info("【智能体路由】开始处理问题: {}", question);
 
-        // 1. 使用RouteAgent进行意图识别
+        // 1. 先用本地路由判断意图，置信度足够时直接分发，省去一次大模型调用
+        LocalIntentRouter.RouteDecision decision = intentRouter.route(question);
+        if (decision.confident()) {
+            log.info("【智能体路由】本地路由到 {} 智能体 (得分={}, 领先={})", decision.agentType().getDesc(),
+                    String.format("%.3f", decision.score()), String.format("%.3f", decision.margin()));
+            if (intentRouter.shouldShadow()) {
+                shadowRoute(question, sessionId, projectId, decision);
+            }
+            recordAgent(trace, decision.agentType());
+            return getAgentByType(decision.agentType()).processStream(question, sessionId, projectId);
+        }
+
+        // 2. 置信度不足时使用RouteAgent进行意图识别
         Agent routeAgent = getAgentByType(AgentTypeEnum.ROUTE);
 
-        // 修改点：收集所有响应片段并合并为完整字符串
-        return routeAgent.processStream(question, sessionId, projectId)
-                .collectList()  // 收集所有响应片段
-                .flatMapMany(parts -> {
-                    // 合并片段为完整意图字符串
-                    String fullIntent = String.join("", parts);
-                    log.info("【智能体路由】完整意图: {}", fullIntent);
-
-                    // 2. 转换为AgentType
-                    AgentTypeEnum agentType = AgentTypeEnum.agentNameOf(fullIntent.trim());
-
-                    // 3. 处理非路由类型
-                    if (agentType != null && agentType != AgentTypeEnum.ROUTE) {
-                        log.info("【智能体路由】分发到 {} 智能体", agentType.getDesc());
-                        Agent targetAgent = getAgentByType(agentType);
-
-                        // 直接调用目标智能体处理
-                        return targetAgent.processStream(question, sessionId, projectId);
-                    }
-
-                    // 4. 非路由结果直接返回
-                    return Flux.just(fullIntent);
-                });
+        // 增量解析路由流：前缀唯一匹配某个智能体名称时立即取消剩余路由流并分发，
+        // 输出不是智能体名称（如寒暄回复）时在路由流结束后原样返回
+        return Flux.defer(() -> {
+            IntentPrefixMatcher matcher = new IntentPrefixMatcher();
+            return chatPipelineMetrics.stage(ChatPipelineMetrics.STAGE_ROUTE, routeAgent.processStream(question, sessionId, projectId)
+                            .bufferUntil(matcher::offer)
+                            .next()
+                            .defaultIfEmpty(List.of()))
+                    .flatMapMany(parts -> {
+                        String intentText = matcher.getText();
+                        AgentTypeEnum agentType = matcher.getMatched() != null
+                                ? matcher.getMatched()
+                                : AgentTypeEnum.agentNameOf(intentText.trim());
+                        log.info("【智能体路由】意图: {} (已接收: {})", agentType, intentText);
+                        intentRouter.recordAgreement(decision, agentType, "fallback");
+                        recordAgent(trace, agentType != null ? agentType : AgentTypeEnum.ROUTE);
+
+                        // 3. 处理非路由类型
+                        if (agentType != null && agentType != AgentTypeEnum.ROUTE) {
+                            log.info("【智能体路由】分发到 {} 智能体", agentType.getDesc());
+                            Agent targetAgent = getAgentByType(agentType);
+
+                            // 直接调用目标智能体处理
+                            return targetAgent.processStream(question, sessionId, projectId);
+                        }
+
+                        // 4. 非路由结果直接返回
+                        return Flux.just(intentText);
+                    });
+        });
+    }
+
+    /**
+     * 抽样用大模型复核本地路由结果，只用于统计准确率，不影响本次回答
+     */
+    private void shadowRoute(String question, String sessionId, Long projectId, LocalIntentRouter.RouteDecision decision) {
+        IntentPrefixMatcher matcher = new IntentPrefixMatcher();
+        getAgentByType(AgentTypeEnum.ROUTE).processStream(question, sessionId, projectId)
+                .bufferUntil(matcher::offer)
+                .next()
+                .map(parts -> matcher.getMatched() != null ? matcher.getMatched().getAgentName() : matcher.getText().trim())
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(intent -> intentRouter.recordAgreement(decision, AgentTypeEnum.agentNameOf(intent), "shadow"),
+                        e -> log.debug("路由复核失败: {}", e.getMessage()));
+    }
+
+    private static void recordAgent(ChatTrace trace, AgentTypeEnum agentType) {
+        if (trace != null) {
+            trace.agentType(agentType.getAgentName());
+        }
     }
 
     private Agent getAgentByType(AgentTypeEnum type) {
@@ -3,25 +3,42 @@ package com.atguigu.guliai.service;
 import cn.hutool.core.lang.Snowflake;
 import cn.hutool.core.util.IdUtil;
 import com.atguigu.common.core.domain.R;
-import com.atguigu.common.core.domain.model.LoginUser;
-import com.atguigu.common.utils.SecurityUtils;
+import com.atguigu.common.exception.ServiceException;
 import com.atguigu.common.utils.StringUtils;
 import com.atguigu.guliai.advisor.RecordOptimizationAdvisor;
+import com.atguigu.guliai.cache.SemanticAnswerCache;
+import com.atguigu.guliai.client.ChatClientRegistry;
+import com.atguigu.guliai.config.MessagePersistenceProperties;
+import com.atguigu.guliai.persist.MessageWriter;
+import com.atguigu.guliai.persist.MongoIndexManager;
+import com.atguigu.guliai.config.ChatPagingProperties;
+import com.atguigu.guliai.config.VectorDeletionProperties;
+import com.atguigu.guliai.utils.KeysetCursor;
+import com.atguigu.guliai.vo.CursorPage;
 import com.atguigu.guliai.pojo.Chat;
+import com.atguigu.guliai.rag.KeywordIndex;
+import com.atguigu.guliai.sensitive.AhoCorasickMatcher;
+import com.atguigu.guliai.sensitive.SensitiveWordFilter;
+import com.atguigu.guliai.llm.LlmBusyException;
+import com.atguigu.guliai.llm.LlmTenant;
+import com.atguigu.guliai.monitor.ChatPipelineMetrics;
+import com.atguigu.guliai.monitor.ChatTrace;
 import com.atguigu.guliai.pojo.Message;
 import com.atguigu.guliai.strategy.AiBean;
+import com.atguigu.guliai.stream.ResumableStreamRegistry;
 import com.atguigu.guliai.strategy.AiOperator;
 import com.atguigu.guliai.strategy.OllamaAiOperator;
 import com.atguigu.guliai.strategy.OpenAiOperator;
-import com.atguigu.guliai.utils.FileUtil;
 import com.atguigu.guliai.utils.MongoUtil;
 import com.atguigu.guliai.vo.ChatVo;
 import com.atguigu.guliai.vo.MessageVo;
 import com.atguigu.guliai.vo.QueryVo;
+import com.atguigu.guliai.vo.VectorDeletionResult;
+import com.atguigu.system.cache.ChatProjectCache;
+import com.atguigu.system.cache.ChatProjectChangedEvent;
 import com.atguigu.system.domain.ChatKnowledge;
 import com.atguigu.system.domain.ChatProject;
 import com.atguigu.system.mapper.ChatKnowledgeMapper;
-import com.atguigu.system.mapper.ChatProjectMapper;
 import com.atguigu.guliai.constant.SystemConstant;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.AssistantMessage;
@@ -37,6 +54,8 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -48,9 +67,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -60,13 +83,49 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
     private ChatKnowledgeMapper chatKnowledgeMapper;
 
     @Autowired
-    private ChatProjectMapper chatProjectMapper;
+    private MongoTemplate mongoTemplate;
 
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private SensitiveWordFilter sensitiveWordFilter;
+
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+
+    @Autowired
+    private KeywordIndex keywordIndex;
+
+    @Autowired
+    private ChatClientRegistry chatClientRegistry;
+
+    @Autowired
+    private ChatHistoryProvider chatHistoryProvider;
+
+    @Autowired
+    private MessageWriter messageWriter;
+
+    @Autowired
+    private MessagePersistenceProperties messagePersistenceProperties;
+
+    @Autowired
+    private MongoIndexManager mongoIndexManager;
+
+    @Autowired
+    private ChatPagingProperties chatPagingProperties;
+
+    @Autowired
+    private ProjectMetadataProvider projectMetadataProvider;
 
     @Autowired
-    private List<String> sensitiveWords;
+    private ChatProjectCache chatProjectCache;
+
+    @Autowired
+    private VectorDeletionProperties vectorDeletionProperties;
+
+    @Autowired
+    private ResumableStreamRegistry resumableStreamRegistry;
+
+    @Autowired
+    private ChatPipelineMetrics chatPipelineMetrics;
 
     @Autowired
     @Lazy // 添加延迟加载注解解决循环依赖
@@ -105,36 +164,6 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
         return MAP.get(type);
     }
 
-    /**
-     * 获取知识库列表
-     *
-     * @param chatKnowledge
-     * @param file
-     */
-    @Transactional
-    public void upload(ChatKnowledge chatKnowledge, MultipartFile file) {
-        //从文件中把内容取出来,通过工具类
-        String content = FileUtil.getContentFromFile(file);
-
-        //保存知识库到本地数据库(mysql)
-        chatKnowledge.setFileName(file.getOriginalFilename());
-        chatKnowledge.setContent(content);
-        //获取登录用户信息
-        LoginUser loginUser = SecurityUtils.getLoginUser();
-        chatKnowledge.setUserId(loginUser.getUserId());
-        chatKnowledge.setCreateBy(loginUser.getUsername());
-        chatKnowledge.setCreateTime(new Date());
-        this.chatKnowledgeMapper.insertChatKnowledge(chatKnowledge);
-
-        //保存知识库到向量数据库:projectId knowledgeId content
-        //根据projectId查询项目(模型的类型)
-        ChatProject chatProject = this.chatProjectMapper.selectChatProjectByProjectId(chatKnowledge.getProjectId());
-
-        //向向量数据库初始化知识库
-        // 确保向量存储操作在事务范围内
-        this.getAiOperator(chatProject.getType()).addDocs(chatKnowledge);
-    }
-
     /**
      * 创建会话
      *
@@ -151,7 +180,9 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
         //创建时间
         chat.setCreateTime(new Date());
         //保存到MongoDB,并指定保存到MongoDB的哪个集合中
-        this.mongoTemplate.insert(chat, MongoUtil.getChatCollectionName(chatVo.getProjectId()));
+        String collectionName = MongoUtil.getChatCollectionName(chatVo.getProjectId());
+        this.mongoIndexManager.ensureChatIndex(collectionName);
+        this.mongoTemplate.insert(chat, collectionName);
         return chatId.toString();
     }
 
@@ -170,6 +201,33 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
                 Chat.class, MongoUtil.getChatCollectionName(projectId));
     }
 
+    /**
+     * 按创建时间倒序分页获取会话列表
+     *
+     * @param projectId
+     * @param userId
+     * @param cursor    上一页返回的游标，为空时从最新的会话开始
+     * @param size      每页条数
+     * @return
+     */
+    public CursorPage<Chat> pageChat(Long projectId, Long userId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        Criteria criteria = Criteria.where("projectId").is(projectId).and("userId").is(userId);
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        if (after != null) {
+            criteria = criteria.andOperator(after.before());
+        }
+        List<Chat> chats = this.mongoTemplate.find(Query.query(criteria)
+                        .with(Sort.by(Sort.Order.desc("createTime"), Sort.Order.desc("_id")))
+                        .limit(limit + 1),
+                Chat.class, MongoUtil.getChatCollectionName(projectId));
+        boolean hasMore = chats.size() > limit;
+        List<Chat> records = hasMore ? chats.subList(0, limit) : chats;
+        Chat last = records.isEmpty() ? null : records.get(records.size() - 1);
+        String nextCursor = hasMore ? new KeysetCursor(last.getCreateTime(), last.getChatId()).encode() : null;
+        return new CursorPage<>(records, nextCursor, hasMore);
+    }
+
     /**
      * 更新会话标题
      *
@@ -183,6 +241,7 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
 
     /**
      * 直接模型处理（移除内部的消息保存）
+     * 项目元数据与历史消息均以非阻塞方式读取，调用方线程只负责组装响应流
      */
     public Flux<String> directModelProcessing(QueryVo queryVo) {
         log.info("【直接模型处理】开始处理问题，绕过路由系统: {}", queryVo.getMsg());
@@ -191,95 +250,165 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
         if (queryVo.getProjectId() == null) {
             throw new IllegalArgumentException("项目ID不能为空");
         }
-        ChatProject project = chatProjectMapper.selectChatProjectByProjectId(queryVo.getProjectId());
-        if (project == null) {
-            throw new RuntimeException("找不到ID为 " + queryVo.getProjectId() + " 的项目");
-        }
-
-        // +++ 移除原有的用户消息保存代码 +++
-
-        return this.processChatRequest(queryVo, project.getType());
+        return this.projectMetadataProvider.get(queryVo.getProjectId())
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("找不到ID为 " + queryVo.getProjectId() + " 的项目")))
+                .flatMapMany(project -> this.processChatRequest(queryVo, project.getType()));
     }
 
     private Flux<String> processChatRequest(QueryVo queryVo, String modelType) {
-        // +++ 此处已移除用户消息保存代码 +++
-
-        // 仅保留以下逻辑：
-        //2.查询本地知识库:Qdrant
-        ChatProject chatProject = this.chatProjectMapper.selectChatProjectByProjectId(queryVo.getProjectId());
-        if (chatProject == null) {
-            throw new RuntimeException("对应的项目不存在!");
-        }
-
         // 向量检索改为仅在 ChatClient + RetrievalAugmentationAdvisor 中执行，移除预检索
 
-        //3.查询历史问答（包含刚保存的用户消息）
-        String collectionName = MongoUtil.getMsgCollectionName(queryVo.getChatId());
-        List<Message> messages = this.mongoTemplate.find(Query
-                .query(Criteria.where("chatId").is(queryVo.getChatId()))
-                .with(Sort.by(Sort.Order.asc("createTime"))), Message.class, collectionName);
+        //查询历史问答（包含刚保存的用户消息），只读取最新的窗口，早期对话以摘要形式提供
+        return this.chatPipelineMetrics.stage(ChatPipelineMetrics.STAGE_HISTORY,
+                        this.chatHistoryProvider.loadReactive(queryVo.getChatId(), modelType))
+                .flatMapMany(history -> this.getAiOperator(modelType)
+                        .chat_stream(buildMessages(history), queryVo.getProjectId()));
+    }
 
-        //组装上下文提示
+    /**
+     * 组装上下文提示：系统提示、早期对话摘要与窗口内的历史消息
+     */
+    private static org.springframework.ai.chat.messages.Message[] buildMessages(ChatHistoryProvider.ChatHistory history) {
         List<org.springframework.ai.chat.messages.Message> msgs = new ArrayList<>();
         String systemPrompt = "你是一个AI助手，负责回答用户问题。当需要查询课程信息时，必须使用提供的工具进行查询。所有工具调用必须包含projectId参数，其值为当前项目ID。";
         msgs.add(new SystemMessage(systemPrompt));
-        if (!CollectionUtils.isEmpty(messages)) {//用户问答提示
-            messages.forEach(m -> {
-                org.springframework.ai.chat.messages.Message msg = null;
-                if (m.getType().intValue() == 0) { //如果type为0,则说明是用户的提问UserMessage
-                    msg = new UserMessage(m.getContent());
-                } else { //如果type为1,则说明是AI的回答内容
-                    msg = new AssistantMessage(m.getContent());
-                }
-                if (msg != null && StringUtils.hasText(msg.getText())) {
-                    msgs.add(msg);
-                }
-            });
+        if (StringUtils.hasText(history.summary())) {
+            msgs.add(new SystemMessage("此前对话摘要：" + history.summary()));
         }
-
-        AiOperator aiOperator = this.getAiOperator(modelType);
-
-        // 4.发送请求给大模型，获取问答结果
+        history.messages().forEach(m -> {
+            org.springframework.ai.chat.messages.Message msg = null;
+            if (m.getType().intValue() == 0) { //如果type为0,则说明是用户的提问UserMessage
+                msg = new UserMessage(m.getContent());
+            } else { //如果type为1,则说明是AI的回答内容
+                msg = new AssistantMessage(m.getContent());
+            }
+            if (msg != null && StringUtils.hasText(msg.getText())) {
+                msgs.add(msg);
+            }
+        });
         // 将List转换为数组，确保类型一致
-        org.springframework.ai.chat.messages.Message[] messagesArray =
-                msgs.toArray(new org.springframework.ai.chat.messages.Message[0]);
-
-        return aiOperator.chat_stream(messagesArray);
+        return msgs.toArray(new org.springframework.ai.chat.messages.Message[0]);
     }
 
     /**
      * 聊天
+     * 纯文本流无法区分事件类型，大模型繁忙时把提示作为文本返回；提示不经过回答收集，不会存为历史消息
      *
      * @param queryVo
      * @return
      */
     public Flux<String> chatStream(QueryVo queryVo) {
+        return this.answerStream(queryVo)
+                .onErrorResume(LlmBusyException.class, e -> Flux.just(e.getMessage()));
+    }
+
+    /**
+     * 生成回答，大模型繁忙时以 {@link LlmBusyException} 结束
+     *
+     * @param queryVo
+     * @return
+     */
+    private Flux<String> answerStream(QueryVo queryVo) {
         // 项目验证
         if (queryVo.getProjectId() == null) {
             return Flux.error(new IllegalArgumentException("项目ID不能为空"));
         }
 
-        ChatProject project = chatProjectMapper.selectChatProjectByProjectId(queryVo.getProjectId());
-        if (project == null) {
-            return Flux.error(new RuntimeException("找不到ID为 " + queryVo.getProjectId() + " 的项目"));
-        }
+        // 整条链路不阻塞请求线程：项目元数据从缓存或弹性线程池读取，历史消息使用响应式驱动读取，
+        // 控制器返回后Tomcat线程即被释放，流式输出期间每个连接只占用少量内存
+        // 各阶段耗时记入同一条链路记录，随Reactor上下文传递
+        return Flux.defer(() -> {
+            ChatTrace trace = this.chatPipelineMetrics.begin();
+            Flux<String> answer = this.chatPipelineMetrics.stage(ChatPipelineMetrics.STAGE_PROJECT,
+                            this.projectMetadataProvider.get(queryVo.getProjectId()))
+                    .switchIfEmpty(Mono.error(() -> new RuntimeException("找不到ID为 " + queryVo.getProjectId() + " 的项目")))
+                    .flatMapMany(project -> {
+                        trace.projectType(project.getType());
+                        // +++ 新增：在路由前保存用户消息 +++
+                        // 确保用户提问消息存入MongoDB
+                        this.chatPipelineMetrics.stage(trace, ChatPipelineMetrics.STAGE_SAVE_MESSAGE, () -> saveUserMessage(queryVo));
+
+                        // 只对OpenAI项目启用智能体路由
+                        if (SystemConstant.MODEL_TYPE_OPENAI.equals(project.getType())) {
+                            log.info("【智能体路由】OpenAI项目进入路由系统");
+                            // 智能体与工具调用仍是阻塞式的，组装过程放到弹性线程池
+                            return captureReply(queryVo.getChatId(), Flux.defer(() -> agentCoordinatorService.coordinate(
+                                    queryVo.getMsg(),
+                                    queryVo.getChatId().toString(),
+                                    queryVo.getProjectId(),
+                                    trace
+                            )).subscribeOn(Schedulers.boundedElastic()));
+                        }
+
+                        // 非OpenAI项目直接处理
+                        log.info("【直接模型处理】非OpenAI项目直接处理");
+                        trace.agentType(ChatPipelineMetrics.AGENT_RAG);
+                        // 以会话作为调度单位，同一项目内的不同会话轮流获得大模型槽位
+                        return captureReply(queryVo.getChatId(), this.processChatRequest(queryVo, project.getType())
+                                .contextWrite(ctx -> ctx.put(LlmTenant.CONTEXT_KEY,
+                                        LlmTenant.of(queryVo.getProjectId(), queryVo.getChatId()))));
+                    });
+            return this.chatPipelineMetrics.answer(answer)
+                    .contextWrite(ctx -> ctx.put(ChatTrace.CONTEXT_KEY, trace));
+        });
+    }
 
-        // +++ 新增：在路由前保存用户消息 +++
-        saveUserMessage(queryVo); // 确保用户提问消息存入MongoDB
+    /**
+     * 可续传的聊天，回答在服务端生成并缓冲，客户端断开后可通过 {@link #resumeStream} 从断点继续接收
+     *
+     * @param queryVo
+     * @param userId  当前用户，未登录为 null，此时续传按会话id校验
+     * @return SSE 事件流，首个 stream 事件携带续传所需的流id
+     */
+    public Flux<ServerSentEvent<String>> chatStreamResumable(QueryVo queryVo, Long userId) {
+        String owner = ResumableStreamRegistry.owner(userId, queryVo.getChatId());
+        // 繁忙提示以 error 事件输出，不作为回答分片
+        String streamId = this.resumableStreamRegistry.start(owner, this.answerStream(queryVo));
+        return this.resumableStreamRegistry.events(streamId, owner, 0);
+    }
 
-        // 只对OpenAI项目启用智能体路由
-        if (SystemConstant.MODEL_TYPE_OPENAI.equals(project.getType())) {
-            log.info("【智能体路由】OpenAI项目进入路由系统");
-            return agentCoordinatorService.coordinate(
-                    queryVo.getMsg(),
-                    queryVo.getChatId().toString(),
-                    queryVo.getProjectId()
-            );
+    /**
+     * 断线续传，不会重新生成回答
+     *
+     * @param streamId 流id
+     * @param userId   当前用户，未登录为 null
+     * @param chatId   发起提问时的会话id，未登录时用于校验归属
+     * @param afterSeq 已收到的最后一个分片序号
+     * @return
+     */
+    public Flux<ServerSentEvent<String>> resumeStream(String streamId, Long userId, Long chatId, long afterSeq) {
+        return this.resumableStreamRegistry.events(streamId, ResumableStreamRegistry.owner(userId, chatId), afterSeq);
+    }
+
+    /**
+     * 在流式输出的同时收集回答，流结束或客户端中断时保存已输出的内容，前端无需再调用保存接口
+     */
+    private Flux<String> captureReply(Long chatId, Flux<String> answer) {
+        if (chatId == null || !messagePersistenceProperties.isCaptureReply()) {
+            return answer;
         }
+        return Flux.defer(() -> {
+            StringBuilder content = new StringBuilder();
+            AtomicBoolean saved = new AtomicBoolean();
+            Runnable save = () -> {
+                if (content.length() > 0 && saved.compareAndSet(false, true)) {
+                    this.messageWriter.save(newMessage(chatId, 1, content.toString()));
+                }
+            };
+            return answer.doOnNext(content::append)
+                    .doOnComplete(save)
+                    .doOnCancel(save);
+        });
+    }
 
-        // 非OpenAI项目直接处理
-        log.info("【直接模型处理】非OpenAI项目直接处理");
-        return this.directModelProcessing(queryVo);
+    private static Message newMessage(Long chatId, int type, String content) {
+        Message message = new Message();
+        message.setId(IdUtil.getSnowflake().nextId());
+        message.setChatId(chatId);
+        message.setType(type);
+        message.setContent(content);
+        message.setCreateTime(new Date());
+        return message;
     }
 
     /**
@@ -287,23 +416,17 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
      * @param queryVo 查询参数
      */
     private void saveUserMessage(QueryVo queryVo) {
-        String collectionName = MongoUtil.getMsgCollectionName(queryVo.getChatId());
-        Message message = new Message();
-        message.setId(IdUtil.getSnowflake().nextId());
-        message.setChatId(queryVo.getChatId());
-        message.setType(0); // 用户消息类型
-        message.setContent(queryVo.getMsg());
-        message.setCreateTime(new Date());
+        Message message = newMessage(queryVo.getChatId(), 0, queryVo.getMsg()); // 用户消息类型
 
-        // 检查敏感词
-        for (String word : sensitiveWords) {
-            if (message.getContent().contains(word)) {
-                throw new RuntimeException("消息包含敏感词: " + word);
-            }
+        // 检查敏感词，一次扫描完成全部词的匹配
+        AhoCorasickMatcher.Hit hit = sensitiveWordFilter.findFirst(message.getContent());
+        if (hit != null) {
+            throw new RuntimeException("消息包含敏感词: " + hit.word());
         }
 
-        mongoTemplate.insert(message, collectionName);
-        log.info("保存用户消息到集合 {}: {}", collectionName, queryVo.getMsg());
+        // 异步批量写入，不阻塞对话请求
+        this.messageWriter.save(message);
+        log.info("保存用户消息 chatId={}: {}", queryVo.getChatId(), queryVo.getMsg());
     }
 
     /**
@@ -312,14 +435,12 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
      * @param messageVo
      */
     public void saveMsg(MessageVo messageVo) {
-        Message message = new Message();
-        //生成聊天消息的id
-        message.setId(IdUtil.getSnowflake().nextId());
-        message.setChatId(messageVo.getChatId());
-        message.setType(1);
-        message.setContent(messageVo.getContent());
-        message.setCreateTime(new Date());
-        this.mongoTemplate.insert(message, MongoUtil.getMsgCollectionName(messageVo.getChatId()));
+        if (messagePersistenceProperties.isCaptureReply()) {
+            // 回答已在服务端流式输出时保存，兼容旧前端的重复调用
+            log.debug("回答已由服务端保存，忽略保存请求 chatId={}", messageVo.getChatId());
+            return;
+        }
+        this.messageWriter.save(newMessage(messageVo.getChatId(), 1, messageVo.getContent()));
     }
 
     /**
@@ -329,10 +450,75 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
      * @return
      */
     public List<Message> listMsg(Long chatId) {
-        return this.mongoTemplate.find(Query
+        List<Message> messages = this.mongoTemplate.find(Query
                         .query(Criteria.where("chatId").is(chatId))
                         .with(Sort.by(Sort.Order.asc("createTime"))),
                 Message.class, MongoUtil.getMsgCollectionName(chatId));
+        // 追加尚未写入MongoDB的消息
+        List<Message> pending = this.messageWriter.pendingMessages(chatId);
+        if (!pending.isEmpty()) {
+            Set<Long> ids = messages.stream().map(Message::getId).collect(Collectors.toSet());
+            messages = new ArrayList<>(messages);
+            for (Message message : pending) {
+                if (!ids.contains(message.getId())) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 从最新的消息开始向前分页加载，每页按时间升序返回，便于前端向上滚动时懒加载
+     *
+     * @param chatId
+     * @param cursor 上一页返回的游标，为空时加载最新一页
+     * @param size   每页条数
+     * @return
+     */
+    public CursorPage<Message> pageMsg(Long chatId, String cursor, Integer size) {
+        int limit = pageSize(size);
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        Criteria criteria = Criteria.where("chatId").is(chatId);
+        if (after != null) {
+            criteria = criteria.andOperator(after.before());
+        }
+        String collectionName = MongoUtil.getMsgCollectionName(chatId);
+        this.mongoIndexManager.ensureMessageIndex(collectionName);
+        List<Message> newest = new ArrayList<>();
+        Set<Long> ids = new HashSet<>();
+        if (after == null) {
+            // 第一页包含尚未写入MongoDB的消息
+            List<Message> pending = new ArrayList<>(this.messageWriter.pendingMessages(chatId));
+            Collections.reverse(pending);
+            pending.forEach(m -> {
+                if (ids.add(m.getId())) {
+                    newest.add(m);
+                }
+            });
+        }
+        this.mongoTemplate.find(Query.query(criteria)
+                                .with(Sort.by(Sort.Order.desc("createTime"), Sort.Order.desc("_id")))
+                                .limit(limit + 1),
+                        Message.class, collectionName)
+                .forEach(m -> {
+                    if (ids.add(m.getId())) {
+                        newest.add(m);
+                    }
+                });
+        boolean hasMore = newest.size() > limit;
+        List<Message> records = new ArrayList<>(hasMore ? newest.subList(0, limit) : newest);
+        Message oldest = records.isEmpty() ? null : records.get(records.size() - 1);
+        String nextCursor = hasMore ? new KeysetCursor(oldest.getCreateTime(), oldest.getId()).encode() : null;
+        Collections.reverse(records);
+        return new CursorPage<>(records, nextCursor, hasMore);
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null || size <= 0) {
+            return chatPagingProperties.getDefaultPageSize();
+        }
+        return Math.min(size, chatPagingProperties.getMaxPageSize());
     }
 
     /**
@@ -342,6 +528,7 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
      * @param projectId
      */
     public void deleteChat(Long chatId, Long projectId) {
+        this.messageWriter.discard(chatId);
         //1.删除MongoDB中的聊天记录
         this.mongoTemplate.remove(Query
                         .query(Criteria.where("chatId").is(chatId)),
@@ -357,6 +544,7 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
         if (this.mongoTemplate.collectionExists(msgCollectionName)) {
             this.mongoTemplate.dropCollection(msgCollectionName);
         }
+        this.chatHistoryProvider.onChatDeleted(chatId);
     }
 
     @Transactional
@@ -384,6 +572,8 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
 
     // 在 AiService 类中添加以下方法
     public void deleteLastTwoMessages(Long chatId) {
+        // 先写入队列中的消息，保证删除的是最新的两条
+        this.messageWriter.flush();
         String collectionName = MongoUtil.getMsgCollectionName(chatId);
 
         // 按创建时间倒序，取前两条消息
@@ -407,52 +597,121 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
         deleteLastTwoMessages(event.getSessionId());
     }
 
+    /**
+     * 知识库编辑后重建其向量索引，支持增量的策略只重新向量化变化的分块；
+     * 全量重建时旧向量未能删除则不写入新向量，避免新旧分块同时被检索到
+     *
+     * @param knowledgeId
+     * @throws ServiceException 旧向量删除失败，需重试
+     */
+    public void reindexKnowledge(Long knowledgeId) {
+        ChatKnowledge ck = this.chatKnowledgeMapper.selectChatKnowledgeByKnowledgeId(knowledgeId);
+        if (ck == null) {
+            return;
+        }
+        ChatProject project = this.chatProjectCache.get(ck.getProjectId());
+        if (project == null) {
+            log.warn("重建向量跳过：未找到项目，knowledgeId={} projectId={}", knowledgeId, ck.getProjectId());
+            return;
+        }
+        AiOperator aiOperator = this.getAiOperator(project.getType());
+        if (!aiOperator.reindexDocs(ck)) {
+            VectorDeletionResult deletion = this.deleteKnowledgeVectors(new Long[]{knowledgeId});
+            if (!deletion.getFailedIds().isEmpty()) {
+                // 旧向量可能已被部分删除，缓存的回答同样不再可信
+                this.semanticAnswerCache.invalidateProject(ck.getProjectId());
+                throw new ServiceException("删除旧向量失败，未重建向量，请重试: knowledgeId=" + knowledgeId);
+            }
+            if (StringUtils.isNotEmpty(ck.getContent())) {
+                aiOperator.addDocs(ck);
+            }
+        }
+        this.semanticAnswerCache.invalidateProject(ck.getProjectId());
+    }
+
+    /**
+     * 项目配置修改或删除后失效该项目的语义缓存与按项目构建的客户端，所有项目共享的客户端不受影响；
+     * 其他节点的修改经 Redis 通知后同样触发，因此只清理本节点
+     *
+     * @param event
+     */
+    @EventListener
+    public void onProjectChanged(ChatProjectChangedEvent event) {
+        this.chatClientRegistry.invalidateProject(event.projectId());
+        this.semanticAnswerCache.evictProject(event.projectId());
+    }
+
+    /**
+     * 批量删除知识库的向量
+     * 知识库与项目各一次查询，按项目模型类型分组到对应向量库，每批按 knowledgeId IN (...) 过滤删除。
+     * 某一批失败只记录该批的知识库id，不会退化为删除整个项目的向量。
+     *
+     * @param knowledgeIds
+     * @return 删除结果，failedIds 可重试
+     */
     @Transactional
-    public void deleteKnowledgeVectors(Long[] knowledgeIds) {
+    public VectorDeletionResult deleteKnowledgeVectors(Long[] knowledgeIds) {
+        VectorDeletionResult result = new VectorDeletionResult();
         if (knowledgeIds == null || knowledgeIds.length == 0) {
-            return;
+            return result;
+        }
+        result.setRequested(knowledgeIds.length);
+        List<ChatKnowledge> knowledges = this.chatKnowledgeMapper.selectChatKnowledgeProjectByKnowledgeIds(knowledgeIds);
+        Map<Long, ChatProject> projects = this.chatProjectCache.getAll(
+                knowledges.stream().map(ChatKnowledge::getProjectId).collect(Collectors.toSet()));
+
+        Set<Long> found = new HashSet<>();
+        Map<QdrantVectorStore, List<ChatKnowledge>> byStore = new LinkedHashMap<>();
+        for (ChatKnowledge ck : knowledges) {
+            found.add(ck.getKnowledgeId());
+            ChatProject project = projects.get(ck.getProjectId());
+            if (project == null) {
+                log.warn("删除向量跳过：未找到项目，knowledgeId={} projectId={}", ck.getKnowledgeId(), ck.getProjectId());
+                result.getSkippedIds().add(ck.getKnowledgeId());
+                continue;
+            }
+            QdrantVectorStore targetStore = SystemConstant.MODEL_TYPE_OLLAMA.equals(project.getType())
+                    ? ollamaVectorStore : openAiVectorStore;
+            byStore.computeIfAbsent(targetStore, k -> new ArrayList<>()).add(ck);
         }
         for (Long knowledgeId : knowledgeIds) {
-            try {
-                ChatKnowledge ck = this.chatKnowledgeMapper.selectChatKnowledgeByKnowledgeId(knowledgeId);
-                if (ck == null) {
-                    continue;
-                }
-                ChatProject project = this.chatProjectMapper.selectChatProjectByProjectId(ck.getProjectId());
-                if (project == null) {
-                    log.warn("删除向量跳过：未找到项目，knowledgeId={} projectId={}", knowledgeId, ck.getProjectId());
-                    continue;
-                }
-                QdrantVectorStore targetStore = SystemConstant.MODEL_TYPE_OLLAMA.equals(project.getType())
-                        ? ollamaVectorStore : openAiVectorStore;
-
-                String pid = String.valueOf(ck.getProjectId());
-                String kid = String.valueOf(ck.getKnowledgeId());
+            if (!found.contains(knowledgeId)) {
+                result.getSkippedIds().add(knowledgeId);
+            }
+        }
 
-                // 优先按 projectId + knowledgeId 精确删除
+        int batchSize = Math.max(1, this.vectorDeletionProperties.getBatchSize());
+        int total = byStore.values().stream().mapToInt(List::size).sum();
+        int processed = 0;
+        for (Map.Entry<QdrantVectorStore, List<ChatKnowledge>> group : byStore.entrySet()) {
+            List<ChatKnowledge> list = group.getValue();
+            for (int i = 0; i < list.size(); i += batchSize) {
+                List<ChatKnowledge> batch = list.subList(i, Math.min(i + batchSize, list.size()));
+                List<Object> kids = batch.stream().map(ck -> (Object) String.valueOf(ck.getKnowledgeId())).toList();
                 try {
-                    targetStore.delete(new FilterExpressionBuilder()
-                            .and(
-                                    new FilterExpressionBuilder().eq("projectId", pid),
-                                    new FilterExpressionBuilder().eq("knowledgeId", kid)
-                            ).build());
-                    log.info("已删除向量：projectId={}, knowledgeId={}", pid, kid);
-                } catch (Exception preciseEx) {
-                    // 兼容旧数据（可能缺少 knowledgeId 元数据）时，退化为按 projectId 删除
-                    log.warn("按projectId+knowledgeId删除失败，尝试按projectId。pid={}, kid={}, err={}", pid, kid, preciseEx.getMessage());
-                    targetStore.delete(new FilterExpressionBuilder().eq("projectId", pid).build());
-                    log.info("已按projectId删除向量：projectId={}", pid);
+                    group.getKey().delete(new FilterExpressionBuilder().in("knowledgeId", kids).build());
+                    this.keywordIndex.removeByKnowledgeIds(kids.stream().map(String::valueOf).toList());
+                    batch.stream().map(ChatKnowledge::getProjectId).distinct()
+                            .forEach(this.semanticAnswerCache::invalidateProject);
+                    result.setDeleted(result.getDeleted() + batch.size());
+                } catch (Exception e) {
+                    log.error("批量删除向量失败 knowledgeIds={}，原因：{}", kids, e.getMessage());
+                    batch.forEach(ck -> result.getFailedIds().add(ck.getKnowledgeId()));
                 }
-            } catch (Exception e) {
-                log.error("删除向量失败 knowledgeId={}，原因：{}", knowledgeId, e.getMessage());
+                processed += batch.size();
+                log.info("删除向量进度 {}/{}，失败 {}", processed, total, result.getFailedIds().size());
             }
         }
+        if (!result.getSkippedIds().isEmpty()) {
+            log.info("删除向量跳过 {} 个知识库：{}", result.getSkippedIds().size(), result.getSkippedIds());
+        }
+        return result;
     }
 
     @Transactional
     public void deleteKnowledgeVectorsByProjectId(Long projectId) {
         try {
-            ChatProject project = this.chatProjectMapper.selectChatProjectByProjectId(projectId);
+            ChatProject project = this.chatProjectCache.get(projectId);
             if (project == null) {
                 log.warn("按projectId删除向量跳过：未找到项目，projectId={}", projectId);
                 return;
@@ -462,6 +721,8 @@ public class AiService implements ApplicationContextAware, ApplicationListener<R
             String pid = String.valueOf(projectId);
             targetStore.delete(new FilterExpressionBuilder().eq("projectId", pid).build());
             log.info("已按projectId删除向量：projectId={}", pid);
+            this.keywordIndex.removeByProjectId(pid);
+            this.semanticAnswerCache.invalidateProject(projectId);
         } catch (Exception e) {
             log.error("按projectId删除向量失败 projectId={}，原因：{}", projectId, e.getMessage());
         }
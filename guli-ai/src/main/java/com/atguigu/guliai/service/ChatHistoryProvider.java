@@ -0,0 +1,278 @@
+package com.atguigu.guliai.service;
+
+import com.atguigu.guliai.client.ChatClientRegistry;
+import com.atguigu.guliai.config.ChatHistoryProperties;
+import com.atguigu.guliai.llm.LlmRequestScheduler;
+import com.atguigu.guliai.llm.LlmTenant;
+import com.atguigu.guliai.persist.MessageWriter;
+import com.atguigu.guliai.persist.MongoIndexManager;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.guliai.pojo.ChatSummary;
+import com.atguigu.guliai.pojo.Message;
+import com.atguigu.guliai.utils.MongoUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 对话历史加载
+ * 按 chatId + createTime 索引倒序读取最新消息，达到条数上限或 token 预算即停止，不再整段读取会话。
+ * 开启滚动摘要时，窗口之外的早期消息在后台压缩为一段摘要，与窗口内消息一起作为上下文。
+ * {@link #loadReactive} 使用响应式驱动读取，对话链路不占用请求线程。
+ */
+@Slf4j
+@Component
+public class ChatHistoryProvider {
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ChatHistoryProperties properties;
+    private final ChatClientRegistry chatClientRegistry;
+    private final MessageWriter messageWriter;
+    private final MongoIndexManager mongoIndexManager;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /** 正在更新摘要的会话，避免同一会话并发摘要 */
+    private final Set<Long> summarizing = ConcurrentHashMap.newKeySet();
+
+    private final DistributionSummary loadedMessages;
+    private final DistributionSummary loadedTokens;
+
+    public ChatHistoryProvider(MongoTemplate mongoTemplate, ReactiveMongoTemplate reactiveMongoTemplate,
+                               ChatHistoryProperties properties,
+                               ChatClientRegistry chatClientRegistry, MessageWriter messageWriter,
+                               MongoIndexManager mongoIndexManager, LlmRequestScheduler llmRequestScheduler,
+                               MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.properties = properties;
+        this.chatClientRegistry = chatClientRegistry;
+        this.messageWriter = messageWriter;
+        this.mongoIndexManager = mongoIndexManager;
+        this.llmRequestScheduler = llmRequestScheduler;
+        this.loadedMessages = DistributionSummary.builder("guli.ai.history.messages")
+                .description("每次对话加载的历史消息条数")
+                .register(meterRegistry);
+        this.loadedTokens = DistributionSummary.builder("guli.ai.history.tokens")
+                .description("每次对话加载的历史消息token数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 加载会话的最新消息窗口
+     *
+     * @param chatId    会话id
+     * @param modelType 项目模型类型，更新摘要时使用对应的模型
+     * @return 按时间升序排列的窗口消息与早期对话摘要
+     */
+    public ChatHistory load(Long chatId, String modelType) {
+        String collectionName = MongoUtil.getMsgCollectionName(chatId);
+        mongoIndexManager.ensureMessageIndex(collectionName);
+
+        Window window = new Window();
+        try (Stream<Message> stream = mongoTemplate.stream(windowQuery(chatId), Message.class, collectionName)) {
+            Iterator<Message> iterator = Stream.concat(pendingNewestFirst(chatId).stream(), stream).iterator();
+            while (iterator.hasNext()) {
+                if (!window.offer(iterator.next())) {
+                    break;
+                }
+            }
+        }
+        String summary = null;
+        if (properties.isSummaryEnabled()) {
+            ChatSummary chatSummary = mongoTemplate.findById(chatId, ChatSummary.class, SystemConstant.CHAT_SUMMARY_COLLECTION);
+            summary = chatSummary != null ? chatSummary.getSummary() : null;
+        }
+        return finish(chatId, modelType, window, summary);
+    }
+
+    /**
+     * {@link #load} 的非阻塞版本，窗口填满后取消游标，不再读取更早的消息
+     */
+    public Mono<ChatHistory> loadReactive(Long chatId, String modelType) {
+        String collectionName = MongoUtil.getMsgCollectionName(chatId);
+        return mongoIndexManager.ensureMessageIndexAsync(collectionName)
+                .then(Mono.defer(() -> {
+                    Window window = new Window();
+                    Mono<Window> messages = Flux.concat(Flux.fromIterable(pendingNewestFirst(chatId)),
+                                    reactiveMongoTemplate.find(windowQuery(chatId), Message.class, collectionName))
+                            .takeWhile(window::offer)
+                            .then(Mono.just(window));
+                    Mono<Optional<String>> summary = properties.isSummaryEnabled()
+                            ? reactiveMongoTemplate.findById(chatId, ChatSummary.class, SystemConstant.CHAT_SUMMARY_COLLECTION)
+                            .mapNotNull(ChatSummary::getSummary)
+                            .map(Optional::of)
+                            .defaultIfEmpty(Optional.empty())
+                            : Mono.just(Optional.empty());
+                    return Mono.zip(messages, summary)
+                            .map(t -> finish(chatId, modelType, t.getT1(), t.getT2().orElse(null)));
+                }));
+    }
+
+    private Query windowQuery(Long chatId) {
+        int maxMessages = Math.max(1, properties.getMaxMessages());
+        return Query.query(Criteria.where("chatId").is(chatId))
+                .with(Sort.by(Sort.Order.desc("createTime"), Sort.Order.desc("_id")))
+                .limit(maxMessages + 1)
+                .cursorBatchSize(Math.min(maxMessages + 1, 100));
+    }
+
+    /**
+     * 尚未写入MongoDB的消息比库中的都新，先于游标结果计入窗口
+     */
+    private List<Message> pendingNewestFirst(Long chatId) {
+        List<Message> pending = new ArrayList<>(messageWriter.pendingMessages(chatId));
+        Collections.reverse(pending);
+        return pending;
+    }
+
+    private ChatHistory finish(Long chatId, String modelType, Window window, String summary) {
+        List<Message> messages = window.messages;
+        Collections.reverse(messages);
+        loadedMessages.record(messages.size());
+        loadedTokens.record(window.tokens);
+        if (properties.isSummaryEnabled() && window.truncated) {
+            summarizeAsync(chatId, modelType, messages.get(0).getCreateTime());
+        }
+        return new ChatHistory(messages, summary);
+    }
+
+    /**
+     * 后台把摘要之后、窗口之前的消息合并进滚动摘要，本次对话不等待结果
+     */
+    private void summarizeAsync(Long chatId, String modelType, Date windowStart) {
+        if (windowStart == null || !summarizing.add(chatId)) {
+            return;
+        }
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                summarize(chatId, modelType, windowStart);
+            } catch (Exception e) {
+                log.warn("更新会话摘要失败 chatId={}，原因：{}", chatId, e.getMessage());
+            } finally {
+                summarizing.remove(chatId);
+            }
+        });
+    }
+
+    private void summarize(Long chatId, String modelType, Date windowStart) throws Exception {
+        ChatSummary current = mongoTemplate.findById(chatId, ChatSummary.class, SystemConstant.CHAT_SUMMARY_COLLECTION);
+        Criteria criteria = Criteria.where("chatId").is(chatId);
+        if (current != null && current.getCoveredUntil() != null) {
+            criteria = criteria.and("createTime").gt(current.getCoveredUntil()).lt(windowStart);
+        } else {
+            criteria = criteria.and("createTime").lt(windowStart);
+        }
+        List<Message> pending = mongoTemplate.find(Query.query(criteria)
+                        .with(Sort.by(Sort.Order.asc("createTime"), Sort.Order.asc("_id")))
+                        .limit(Math.max(1, properties.getSummaryMaxMessages())),
+                Message.class, MongoUtil.getMsgCollectionName(chatId));
+        if (pending.size() < properties.getSummaryMinMessages()) {
+            return;
+        }
+
+        StringBuilder dialog = new StringBuilder();
+        for (Message message : pending) {
+            dialog.append(message.getType() != null && message.getType() == 0 ? "用户：" : "助手：")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        String prompt = """
+                请把已有摘要和新增对话合并为一段新的对话摘要，保留用户的身份信息、诉求、已确认的事实和未解决的问题，
+                不超过%d字，只输出摘要本身。
+
+                已有摘要：%s
+
+                新增对话：
+                %s""".formatted(properties.getSummaryMaxChars(),
+                current != null && current.getSummary() != null ? current.getSummary() : "无",
+                dialog);
+        Callable<String> call = () -> chatClientRegistry.get(modelType, ChatClientRegistry.ADVISORS_NONE)
+                .prompt()
+                .user(prompt)
+                .call()
+                .content();
+        // 本地模型的摘要作为后台任务排队，不与对话争抢槽位
+        String summary = SystemConstant.MODEL_TYPE_OLLAMA.equals(modelType)
+                ? llmRequestScheduler.execute(LlmRequestScheduler.Priority.BACKGROUND, LlmTenant.of(null, chatId), call)
+                : call.call();
+        if (summary == null || summary.isBlank()) {
+            return;
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(chatId)),
+                Update.update("summary", summary.trim())
+                        .set("coveredUntil", pending.get(pending.size() - 1).getCreateTime())
+                        .set("updateTime", new Date()),
+                ChatSummary.class, SystemConstant.CHAT_SUMMARY_COLLECTION);
+        log.info("会话摘要已更新 chatId={}，新纳入消息 {} 条", chatId, pending.size());
+    }
+
+    /**
+     * 删除会话时一并删除摘要；消息集合可能随之被删除，下次加载时重新确认索引
+     */
+    public void onChatDeleted(Long chatId) {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(chatId)), SystemConstant.CHAT_SUMMARY_COLLECTION);
+        mongoIndexManager.forget(MongoUtil.getMsgCollectionName(chatId));
+    }
+
+    /**
+     * 按时间倒序逐条计入的消息窗口，达到条数上限或 token 预算即截止
+     */
+    private final class Window {
+        private final int maxMessages = Math.max(1, properties.getMaxMessages());
+        private final Set<Long> seen = new HashSet<>();
+        private final List<Message> messages = new ArrayList<>();
+        private int tokens;
+        private boolean truncated;
+
+        /**
+         * @return 是否继续读取更早的消息
+         */
+        boolean offer(Message message) {
+            if (!seen.add(message.getId())) {
+                return true;
+            }
+            int cost = message.getContent() != null ? tokenCountEstimator.estimate(message.getContent()) : 0;
+            // 最新一条消息即当前提问，无论预算都保留
+            if (!messages.isEmpty() && (messages.size() >= maxMessages || tokens + cost > properties.getTokenBudget())) {
+                truncated = true;
+                return false;
+            }
+            messages.add(message);
+            tokens += cost;
+            return true;
+        }
+    }
+
+    /**
+     * @param messages 按时间升序排列的窗口消息
+     * @param summary  窗口之外早期对话的摘要，未开启或尚未生成时为 null
+     */
+    public record ChatHistory(List<Message> messages, String summary) {
+    }
+}
@@ -0,0 +1,371 @@
+package com.atguigu.guliai.service;
+
+import cn.hutool.core.util.IdUtil;
+import com.atguigu.common.config.XiaoGuConfig;
+import com.atguigu.common.core.domain.model.LoginUser;
+import com.atguigu.common.exception.ServiceException;
+import com.atguigu.common.utils.SecurityUtils;
+import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.cache.SemanticAnswerCache;
+import com.atguigu.guliai.config.IngestJobProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.guliai.enums.IngestJobStateEnum;
+import com.atguigu.guliai.etl.IngestProgress;
+import com.atguigu.guliai.pojo.IngestJob;
+import com.atguigu.guliai.strategy.AiOperator;
+import com.atguigu.guliai.utils.FileUtil;
+import com.atguigu.guliai.vo.IngestJobVo;
+import com.atguigu.system.cache.ChatProjectCache;
+import com.atguigu.system.domain.ChatKnowledge;
+import com.atguigu.system.domain.ChatProject;
+import com.atguigu.system.mapper.ChatKnowledgeMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 知识库异步入库任务
+ * 上传请求只保存原始文件并登记任务，解析、写MySQL、向量化由工作线程池完成；
+ * 任务状态与已提交分块数保存在MongoDB中，重启后从最后提交的分块继续。
+ */
+@Slf4j
+@Service
+public class KnowledgeIngestService {
+
+    private static final String NODE_ID = resolveNodeId();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ChatKnowledgeMapper chatKnowledgeMapper;
+
+    @Autowired
+    private ChatProjectCache chatProjectCache;
+
+    @Autowired
+    @Lazy
+    private AiService aiService;
+
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+
+    @Autowired
+    private IngestJobProperties properties;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, properties.getWorkers()));
+        executor.setMaxPoolSize(Math.max(1, properties.getWorkers()));
+        executor.setThreadNamePrefix("Ingest-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 保存原始文件并登记入库任务，立即返回任务id
+     *
+     * @param chatKnowledge 知识库信息（projectId、remark）
+     * @param file          上传的文件
+     * @return 任务id
+     */
+    public Long submit(ChatKnowledge chatKnowledge, MultipartFile file) {
+        if (chatKnowledge.getProjectId() == null) {
+            throw new ServiceException("项目ID不能为空");
+        }
+        if (chatProjectCache.get(chatKnowledge.getProjectId()) == null) {
+            throw new ServiceException("找不到ID为 " + chatKnowledge.getProjectId() + " 的项目");
+        }
+        Long jobId = IdUtil.getSnowflake().nextId();
+        String fileName = file.getOriginalFilename();
+        Path target = storageDir().resolve(jobId + "_" + Paths.get(StringUtils.isEmpty(fileName) ? "unknown" : fileName).getFileName());
+        try {
+            Files.createDirectories(target.getParent());
+            file.transferTo(target);
+        } catch (IOException e) {
+            log.error("保存上传文件失败: {}", e.getMessage());
+            throw new ServiceException("保存上传文件失败: " + e.getMessage());
+        }
+
+        LoginUser loginUser = SecurityUtils.getLoginUser();
+        Date now = new Date();
+        IngestJob job = new IngestJob();
+        job.setJobId(jobId);
+        job.setProjectId(chatKnowledge.getProjectId());
+        job.setFileName(fileName);
+        job.setFilePath(target.toString());
+        job.setRemark(chatKnowledge.getRemark());
+        job.setUserId(loginUser.getUserId());
+        job.setCreateBy(loginUser.getUsername());
+        job.setState(IngestJobStateEnum.PENDING.getState());
+        job.setAttempts(0);
+        job.setCommittedChunks(0);
+        job.setCreateTime(now);
+        job.setUpdateTime(now);
+        mongoTemplate.insert(job, SystemConstant.INGEST_JOB_COLLECTION);
+        log.info("登记入库任务: jobId={}, file={}, projectId={}", jobId, fileName, job.getProjectId());
+
+        dispatch(jobId);
+        return jobId;
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @param jobId 任务id
+     * @return 任务状态，不存在时返回null
+     */
+    public IngestJobVo getStatus(Long jobId) {
+        IngestJob job = mongoTemplate.findById(jobId, IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        if (job == null) {
+            return null;
+        }
+        IngestJobVo vo = new IngestJobVo();
+        vo.setJobId(String.valueOf(job.getJobId()));
+        vo.setKnowledgeId(job.getKnowledgeId());
+        vo.setFileName(job.getFileName());
+        vo.setState(job.getState());
+        vo.setTotalChunks(job.getTotalChunks());
+        vo.setCommittedChunks(job.getCommittedChunks());
+        vo.setAttempts(job.getAttempts());
+        vo.setErrorMsg(job.getErrorMsg());
+        vo.setCreateTime(job.getCreateTime());
+        vo.setFinishTime(job.getFinishTime());
+        vo.setEtaSeconds(estimateRemainingSeconds(job));
+        return vo;
+    }
+
+    /**
+     * 启动后恢复未完成的任务：本节点宕机前执行中的任务重新排队，等待中的任务重新分发
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("state").is(IngestJobStateEnum.RUNNING.getState()).and("owner").is(NODE_ID)),
+                Update.update("state", IngestJobStateEnum.PENDING.getState()),
+                IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        List<IngestJob> pending = mongoTemplate.find(
+                Query.query(Criteria.where("state").is(IngestJobStateEnum.PENDING.getState())),
+                IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        if (!pending.isEmpty()) {
+            log.info("恢复未完成的入库任务 {} 个", pending.size());
+        }
+        pending.forEach(job -> dispatch(job.getJobId()));
+    }
+
+    /**
+     * 定时分发到期的重试任务，并接管超时未更新进度的执行中任务
+     */
+    @Scheduled(fixedDelay = 15000)
+    public void sweep() {
+        Date now = new Date();
+        Date staleBefore = new Date(now.getTime() - properties.getStaleTimeout().toMillis());
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("state").is(IngestJobStateEnum.RUNNING.getState()).and("updateTime").lt(staleBefore)),
+                Update.update("state", IngestJobStateEnum.PENDING.getState()),
+                IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        List<IngestJob> due = mongoTemplate.find(
+                Query.query(new Criteria().orOperator(
+                        Criteria.where("state").is(IngestJobStateEnum.RETRYING.getState()).and("nextRunTime").lte(now),
+                        Criteria.where("state").is(IngestJobStateEnum.PENDING.getState()).and("updateTime").lt(staleBefore))),
+                IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        due.forEach(job -> dispatch(job.getJobId()));
+    }
+
+    private void dispatch(Long jobId) {
+        executor.execute(() -> run(jobId));
+    }
+
+    private void run(Long jobId) {
+        IngestJob job = claim(jobId);
+        if (job == null) {
+            // 已被其他线程或节点领取
+            return;
+        }
+        log.info("开始执行入库任务: jobId={}, 第{}次, 已提交分块={}", jobId, job.getAttempts(), job.getCommittedChunks());
+        try {
+            process(job);
+            Date now = new Date();
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(jobId)),
+                    new Update().set("state", IngestJobStateEnum.COMPLETED.getState())
+                            .set("errorMsg", null)
+                            .set("updateTime", now)
+                            .set("finishTime", now),
+                    IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+            semanticAnswerCache.invalidateProject(job.getProjectId());
+            deleteQuietly(job.getFilePath());
+            log.info("入库任务完成: jobId={}", jobId);
+        } catch (Exception e) {
+            log.error("入库任务失败: jobId={}, 第{}次, 原因: {}", jobId, job.getAttempts(), e.getMessage(), e);
+            Date now = new Date();
+            Update update = new Update().set("errorMsg", e.getMessage()).set("updateTime", now);
+            if (job.getAttempts() < properties.getMaxAttempts()) {
+                long backoff = properties.getRetryBackoff().toMillis() << Math.min(job.getAttempts() - 1, 10);
+                update.set("state", IngestJobStateEnum.RETRYING.getState())
+                        .set("nextRunTime", new Date(now.getTime() + backoff));
+            } else {
+                update.set("state", IngestJobStateEnum.FAILED.getState()).set("finishTime", now);
+            }
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(jobId)), update,
+                    IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        }
+    }
+
+    /**
+     * 原子地把等待中的任务标记为执行中，保证同一任务只会被一个线程执行
+     */
+    private IngestJob claim(Long jobId) {
+        Date now = new Date();
+        Query query = Query.query(Criteria.where("_id").is(jobId).and("state")
+                .in(IngestJobStateEnum.PENDING.getState(), IngestJobStateEnum.RETRYING.getState()));
+        IngestJob current = mongoTemplate.findOne(query, IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        if (current == null) {
+            return null;
+        }
+        Update update = new Update()
+                .set("state", IngestJobStateEnum.RUNNING.getState())
+                .set("owner", NODE_ID)
+                .set("startTime", now)
+                .set("updateTime", now)
+                .set("runStartChunks", current.getCommittedChunks())
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+    }
+
+    private void process(IngestJob job) throws IOException {
+        ChatKnowledge chatKnowledge;
+        if (job.getKnowledgeId() == null) {
+            // 首次执行：解析文件并保存知识库到MySQL，知识库id作为第一个断点；
+            // 写入MySQL后、记录断点前失败的重试按任务id找回已写入的记录，不重复插入
+            chatKnowledge = chatKnowledgeMapper.selectChatKnowledgeByIngestJobId(job.getJobId());
+            if (chatKnowledge == null) {
+                byte[] bytes = Files.readAllBytes(Paths.get(job.getFilePath()));
+                String content = FileUtil.getContentFromFile(job.getFileName(), bytes);
+                chatKnowledge = new ChatKnowledge();
+                chatKnowledge.setProjectId(job.getProjectId());
+                chatKnowledge.setFileName(job.getFileName());
+                chatKnowledge.setContent(content);
+                chatKnowledge.setRemark(job.getRemark());
+                chatKnowledge.setUserId(job.getUserId());
+                chatKnowledge.setCreateBy(job.getCreateBy());
+                chatKnowledge.setCreateTime(new Date());
+                chatKnowledge.setIngestJobId(job.getJobId());
+                chatKnowledgeMapper.insertChatKnowledge(chatKnowledge);
+            }
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(job.getJobId())),
+                    Update.update("knowledgeId", chatKnowledge.getKnowledgeId()).set("updateTime", new Date()),
+                    IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        } else {
+            chatKnowledge = chatKnowledgeMapper.selectChatKnowledgeByKnowledgeId(job.getKnowledgeId());
+            if (chatKnowledge == null) {
+                throw new ServiceException("知识库记录已被删除: knowledgeId=" + job.getKnowledgeId());
+            }
+        }
+
+        ChatProject project = chatProjectCache.get(job.getProjectId());
+        if (project == null) {
+            throw new ServiceException("找不到ID为 " + job.getProjectId() + " 的项目");
+        }
+        AiOperator aiOperator = aiService.getAiOperator(project.getType());
+        aiOperator.addDocs(chatKnowledge, new JobProgress(job));
+    }
+
+    private Long estimateRemainingSeconds(IngestJob job) {
+        if (!IngestJobStateEnum.RUNNING.getState().equals(job.getState())
+                || job.getTotalChunks() == null || job.getStartTime() == null) {
+            return null;
+        }
+        int committed = job.getCommittedChunks() == null ? 0 : job.getCommittedChunks();
+        int runStart = job.getRunStartChunks() == null ? 0 : job.getRunStartChunks();
+        int doneThisRun = committed - runStart;
+        if (doneThisRun <= 0) {
+            return null;
+        }
+        long elapsedMillis = System.currentTimeMillis() - job.getStartTime().getTime();
+        double millisPerChunk = (double) elapsedMillis / doneThisRun;
+        return Math.round(Math.max(job.getTotalChunks() - committed, 0) * millisPerChunk / 1000);
+    }
+
+    private Path storageDir() {
+        String base = StringUtils.isNotEmpty(properties.getStoragePath())
+                ? properties.getStoragePath()
+                : XiaoGuConfig.getProfile() + "/ingest";
+        return Paths.get(base);
+    }
+
+    private static void deleteQuietly(String filePath) {
+        try {
+            Files.deleteIfExists(Paths.get(filePath));
+        } catch (Exception e) {
+            log.warn("删除已入库的原始文件失败: {}", e.getMessage());
+        }
+    }
+
+    private static String resolveNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "local";
+        }
+    }
+
+    /**
+     * 把ETL进度写回任务文档
+     */
+    private class JobProgress implements IngestProgress {
+        private final IngestJob job;
+
+        JobProgress(IngestJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public int committedChunks() {
+            return job.getCommittedChunks() == null ? 0 : job.getCommittedChunks();
+        }
+
+        @Override
+        public void onTotal(int totalChunks) {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(job.getJobId())),
+                    Update.update("totalChunks", totalChunks).set("updateTime", new Date()),
+                    IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        }
+
+        @Override
+        public void onBatchCommitted(int committedChunks) {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(job.getJobId())),
+                    Update.update("committedChunks", committedChunks).set("updateTime", new Date()),
+                    IngestJob.class, SystemConstant.INGEST_JOB_COLLECTION);
+        }
+    }
+}
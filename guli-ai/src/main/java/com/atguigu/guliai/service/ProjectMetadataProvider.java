@@ -0,0 +1,70 @@
+package com.atguigu.guliai.service;
+
+import com.atguigu.system.cache.ChatProjectCache;
+import com.atguigu.system.domain.ChatProject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 对话链路的项目元数据读取
+ * 读取 {@link ChatProjectCache}，本地命中时直接返回；未命中时 MyBatis 查询在弹性线程池中执行，请求线程不阻塞在数据库上，
+ * 同一项目同时未命中的请求共用一次查询。
+ * 缓存与失效都由 ChatProjectCache 负责，这里不另外保存项目数据。
+ */
+@Component
+public class ProjectMetadataProvider {
+
+    private final ChatProjectCache chatProjectCache;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    /** 正在查询的项目，查询结束即移除 */
+    private final ConcurrentHashMap<Long, Mono<ChatProject>> loading = new ConcurrentHashMap<>();
+
+    public ProjectMetadataProvider(ChatProjectCache chatProjectCache, MeterRegistry meterRegistry) {
+        this.chatProjectCache = chatProjectCache;
+        this.hitCounter = Counter.builder("guli.ai.project.metadata.lookups")
+                .tag("result", "hit")
+                .description("对话链路读取项目元数据的次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("guli.ai.project.metadata.lookups")
+                .tag("result", "miss")
+                .description("对话链路读取项目元数据的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return 项目不存在时为空
+     */
+    public Mono<ChatProject> get(Long projectId) {
+        if (projectId == null) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            ChatProject cached = chatProjectCache.getIfPresent(projectId);
+            if (cached != null) {
+                hitCounter.increment();
+                return Mono.just(cached);
+            }
+            missCounter.increment();
+            return loading.computeIfAbsent(projectId, this::load);
+        });
+    }
+
+    private Mono<ChatProject> load(Long projectId) {
+        AtomicReference<Mono<ChatProject>> self = new AtomicReference<>();
+        Mono<ChatProject> load = Mono.fromCallable(() -> chatProjectCache.get(projectId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> loading.remove(projectId, self.get()))
+                .cache();
+        self.set(load);
+        return load;
+    }
+}
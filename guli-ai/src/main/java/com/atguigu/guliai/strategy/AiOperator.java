@@ -1,10 +1,16 @@
 package com.atguigu.guliai.strategy;
 
+import com.atguigu.guliai.etl.IngestProgress;
 import com.atguigu.guliai.vo.QueryVo;
 import com.atguigu.system.domain.ChatKnowledge;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.document.Document;
 import reactor.core.publisher.Flux;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -18,11 +24,57 @@ public interface AiOperator {
      */
     void addDocs(ChatKnowledge chatKnowledge);
 
+    /**
+     * 可续跑的入库方法：失败时抛出异常由调用方重试，默认把整条知识库视为一个分块
+     * @param chatKnowledge
+     * @param progress
+     */
+    default void addDocs(ChatKnowledge chatKnowledge, IngestProgress progress) {
+        progress.onTotal(1);
+        if (progress.committedChunks() < 1) {
+            addDocs(chatKnowledge);
+        }
+        progress.onBatchCommitted(1);
+    }
+
+    /**
+     * 知识库内容变更后增量重建向量索引
+     * @param chatKnowledge
+     * @return 返回false表示该策略不支持增量重建，由调用方删除旧向量后全量写入
+     */
+    default boolean reindexDocs(ChatKnowledge chatKnowledge) {
+        return false;
+    }
+
     /**
      * 流式聊天方法
-     * @param messages
+     * @param messages 依次为调用方的通用系统提示、早期对话摘要（可选）与按时间升序排列的窗口消息，最后一条为当前提问
      * @return
      */
     // 修改方法签名，接受数组而不是List
     Flux<String> chat_stream(org.springframework.ai.chat.messages.Message[] messages);
+
+    /**
+     * 带项目上下文的流式聊天方法，需要按项目区分缓存或检索范围的策略类可重写该方法
+     * @param messages
+     * @param projectId
+     * @return
+     */
+    default Flux<String> chat_stream(org.springframework.ai.chat.messages.Message[] messages, Long projectId) {
+        return chat_stream(messages);
+    }
+
+    /**
+     * 用策略类自己的系统提示替换调用方的通用系统提示，保留早期对话摘要与窗口内的历史消息
+     * @param messages
+     * @param systemPrompt
+     * @return
+     */
+    static List<Message> withSystemPrompt(Message[] messages, String systemPrompt) {
+        List<Message> result = new ArrayList<>(messages.length + 1);
+        result.add(new SystemMessage(systemPrompt));
+        int from = messages.length > 0 && messages[0].getMessageType() == MessageType.SYSTEM ? 1 : 0;
+        result.addAll(Arrays.asList(messages).subList(from, messages.length));
+        return result;
+    }
 }
@@ -1,11 +1,11 @@
 package com.atguigu.guliai.strategy;
 
+import com.atguigu.guliai.client.ChatClientRegistry;
 import com.atguigu.guliai.constant.SystemConstant;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.model.ChatModel;
+import com.atguigu.guliai.llm.LlmRequestScheduler;
+import com.atguigu.guliai.llm.LlmTenant;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.model.transformer.KeywordMetadataEnricher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -19,8 +19,25 @@ import java.util.stream.Collectors;
 @Component
 public class MyKeywordEnricher {
 
+    private static final PromptTemplate KEYWORD_TEMPLATE = new PromptTemplate("""
+            请从文本中提取最具检索价值的关键词：
+            1. 提取3-5个最能代表文本内容的关键词
+            2. 可以是名词、动词或形容词
+            3. 关键词长度不限但需精炼
+            4. 必须用单个空格分隔
+            5. 示例：
+               输入：学校东区晚上有很多小吃摊
+               输出：东区 夜间餐饮 小吃摊
+               
+            文本内容：{text}
+            
+            关键词：""");
+
+    @Autowired
+    private ChatClientRegistry chatClientRegistry;
     @Autowired
-    private ChatModel ollamaChatModel;
+    private LlmRequestScheduler llmRequestScheduler;
+
     /**
      * 为文档列表添加关键词元信息，提升可搜索性
      *
@@ -33,26 +50,12 @@ public class MyKeywordEnricher {
 
     private Document extractKeywords(Document document) {
         try {
-            String prompt = """
-                    请从文本中提取最具检索价值的关键词：
-                    1. 提取3-5个最能代表文本内容的关键词
-                    2. 可以是名词、动词或形容词
-                    3. 关键词长度不限但需精炼
-                    4. 必须用单个空格分隔
-                    5. 示例：
-                       输入：学校东区晚上有很多小吃摊
-                       输出：东区 夜间餐饮 小吃摊
-                       
-                    文本内容：{text}
-                    
-                    关键词：""";
-
-            PromptTemplate template = new PromptTemplate(prompt);
-            String keywords = ChatClient.create(ollamaChatModel)
-                    .prompt()
-                    .user(template.render(Map.of("text", document.getText())))
-                    .call()
-                    .content();
+            String keywords = llmRequestScheduler.execute(LlmRequestScheduler.Priority.BACKGROUND, LlmTenant.SYSTEM,
+                    () -> chatClientRegistry.get(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_NONE)
+                            .prompt()
+                            .user(KEYWORD_TEMPLATE.render(Map.of("text", document.getText())))
+                            .call()
+                            .content());
 
             // 格式化处理
             String cleanKeywords = keywords.replace("输出", "")
@@ -1,11 +1,27 @@
 package com.atguigu.guliai.strategy;
 
 import com.atguigu.common.utils.StringUtils;
+import com.atguigu.guliai.cache.CachingEmbeddingModel;
+import com.atguigu.guliai.client.ChatClientRegistry;
+import com.atguigu.guliai.cache.SemanticAnswerCache;
+import com.atguigu.guliai.config.QueryRewriteProperties;
+import com.atguigu.guliai.config.RetrievalProperties;
 import com.atguigu.guliai.constant.SystemConstant;
 import com.atguigu.guliai.vo.QueryVo;
 import com.atguigu.system.domain.ChatKnowledge;
+import com.atguigu.guliai.etl.IngestProgress;
 import com.atguigu.guliai.etl.OllamaKnowledgeEtlService;
+import com.atguigu.guliai.llm.LlmBusyException;
+import com.atguigu.guliai.llm.LlmRequestScheduler;
+import com.atguigu.guliai.llm.LlmTenant;
+import com.atguigu.guliai.monitor.ChatPipelineMetrics;
+import com.atguigu.guliai.monitor.ChatTrace;
+import com.atguigu.guliai.rag.AdaptiveQueryTransformer;
+import com.atguigu.guliai.rag.HybridDocumentRetriever;
+import com.atguigu.guliai.rag.KeywordIndex;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
@@ -17,9 +33,6 @@ import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.model.transformer.KeywordMetadataEnricher;
-import org.springframework.ai.ollama.OllamaChatModel;
-import org.springframework.ai.rag.Query;
 import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
 import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
@@ -28,10 +41,14 @@ import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugment
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
-import org.springframework.ai.vectorstore.qdrant.QdrantVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -43,17 +60,41 @@ public class OllamaAiOperator implements AiOperator {
     private static final String METADATA_CHUNK_SIZE = "chunkSize";
     private static final String METADATA_KNOWLEDGE_ID = "knowledgeId";
     private static final int CHUNK_SIZE = 500;
-    private static final double SIMILARITY_THRESHOLD = 0.6;
-    private static final int RAG_TOP_K = 3; // 统一控制RAG检索的topK
+    // 预先完成重写的查询通过advisor上下文传入，避免RAG顾问再次调用大模型重写
+    private static final String REWRITTEN_QUERY_KEY = "guliai.rewrittenQuery";
+    // 查询计划阶段已完成的检索结果，RAG顾问直接使用
+    private static final String RETRIEVED_DOCUMENTS_KEY = "guliai.retrievedDocuments";
 
     @Autowired
-    private QdrantVectorStore ollamaVectorStore;
+    @Qualifier("ollamaVectorStore")
+    private VectorStore ollamaVectorStore;
     @Autowired
-    private OllamaChatModel ollamaChatModel;
+    @Qualifier("ollamaChatModel")
+    private ChatModel ollamaChatModel;
+    @Autowired
+    @Qualifier("ollamaCachingEmbeddingModel")
+    private CachingEmbeddingModel ollamaCachingEmbeddingModel;
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+    @Autowired
+    private KeywordIndex keywordIndex;
+    @Autowired
+    private RetrievalProperties retrievalProperties;
+    @Autowired
+    private QueryRewriteProperties queryRewriteProperties;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ChatClientRegistry chatClientRegistry;
+    @Autowired
+    private LlmRequestScheduler llmRequestScheduler;
+    @Autowired
+    private ChatPipelineMetrics chatPipelineMetrics;
 
     private QueryTransformer queryTransformer;
-    private KeywordMetadataEnricher keywordMetadataEnricher;
     private RetrievalAugmentationAdvisor retrievalAugmentationAdvisor;
+    private AdaptiveQueryTransformer adaptiveQueryTransformer;
+    private ThreadPoolTaskExecutor rewriteExecutor;
     private List<Document> retrievedDocuments; // 添加检索到的文档列表
 
     private final OllamaKnowledgeEtlService etlService;
@@ -87,9 +128,6 @@ public class OllamaAiOperator implements AiOperator {
                     .promptTemplate(new PromptTemplate(promptTemplate))
                     .build();
 
-            // 初始化KeywordMetadataEnricher，提取8个关键词
-            this.keywordMetadataEnricher = new KeywordMetadataEnricher(ollamaChatModel, 8);
-
             // 创建空上下文提示词模板
             PromptTemplate emptyContextPromptTemplate = PromptTemplate.builder()
                     .template("""
@@ -106,16 +144,28 @@ public class OllamaAiOperator implements AiOperator {
 
             // 移除硬编码的DocumentRetriever创建
             // 创建RAG检索增强顾问 - 使用简化的方式，不预创建DocumentRetriever
-            DocumentRetriever baseRetriever = VectorStoreDocumentRetriever.builder()
+            boolean hybrid = retrievalProperties.isHybridEnabled();
+            DocumentRetriever vectorRetriever = VectorStoreDocumentRetriever.builder()
                     .vectorStore(ollamaVectorStore)
-                    .similarityThreshold(SIMILARITY_THRESHOLD)
-                    .topK(RAG_TOP_K)
+                    .similarityThreshold(retrievalProperties.getSimilarityThreshold())
+                    .topK(hybrid ? retrievalProperties.getVectorCandidates() : retrievalProperties.getTopK())
                     .build();
+            // 混合检索：向量结果与本地关键词索引结果按倒数排名融合，弥补向量检索对专有名词不敏感的问题
+            DocumentRetriever hybridRetriever = hybrid
+                    ? new HybridDocumentRetriever(vectorRetriever, keywordIndex, retrievalProperties)
+                    : vectorRetriever;
+            // 检索耗时计入所属请求的链路记录
+            DocumentRetriever baseRetriever = query -> chatPipelineMetrics.stage(ChatTrace.from(query.context()),
+                    ChatPipelineMetrics.STAGE_RETRIEVAL, () -> hybridRetriever.retrieve(query));
 
             // 日志包装器：打印重写后的查询、topK、召回数量与相似度
             DocumentRetriever loggingRetriever = query -> {
-                List<Document> docs = baseRetriever.retrieve(query);
-                log.info("RAG检索: 重写后='{}', topK={}, 召回={}", query.text(), RAG_TOP_K, docs.size());
+                Object planned = query.context().get(RETRIEVED_DOCUMENTS_KEY);
+                @SuppressWarnings("unchecked")
+                List<Document> docs = planned instanceof List<?> list
+                        ? (List<Document>) list
+                        : baseRetriever.retrieve(query);
+                log.info("RAG检索: 重写后='{}', topK={}, 召回={}", query.text(), retrievalProperties.getTopK(), docs.size());
                 for (int i = 0; i < docs.size(); i++) {
                     Document d = docs.get(i);
                     double score = d.getScore() != null ? d.getScore() : 0.0;
@@ -127,17 +177,60 @@ public class OllamaAiOperator implements AiOperator {
                         Object k2 = d.getMetadata().get("excerpt_keywords");
                         keywords = k1 != null ? String.valueOf(k1) : (k2 != null ? String.valueOf(k2) : "-");
                     }
-                    log.info("RAG检索 文档{}: 相似度={}, 文件={}, 关键词={}", i + 1, String.format("%.4f", score), fileName, keywords);
+                    log.info("RAG检索 文档{}: 得分={}, 文件={}, 关键词={}", i + 1, String.format("%.4f", score), fileName, keywords);
                 }
                 return docs;
             };
 
+            // 已在语义缓存查询阶段完成重写时直接复用结果
+            QueryTransformer rewriteOnceTransformer = query -> {
+                Object rewritten = query.context().get(REWRITTEN_QUERY_KEY);
+                return rewritten != null
+                        ? query.mutate().text(String.valueOf(rewritten)).build()
+                        : chatPipelineMetrics.stage(ChatTrace.from(query.context()), ChatPipelineMetrics.STAGE_REWRITE,
+                        () -> this.queryTransformer.transform(query));
+            };
+
+            // 查询计划阶段的重写单独占用调度槽位；顾问内的兜底重写已处于生成请求的槽位内，不再重复申请
+            QueryTransformer scheduledRewriter = query -> {
+                Object tenant = query.context().get(LlmTenant.CONTEXT_KEY);
+                return chatPipelineMetrics.stage(ChatTrace.from(query.context()), ChatPipelineMetrics.STAGE_REWRITE, () -> {
+                    try {
+                        return llmRequestScheduler.execute(LlmRequestScheduler.Priority.INTERACTIVE,
+                                tenant instanceof LlmTenant t ? t : LlmTenant.SYSTEM,
+                                () -> this.queryTransformer.transform(query));
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            };
+
+            // 自适应重写：可直接检索的查询跳过重写，其余查询重写与原始查询检索并行
+            this.rewriteExecutor = new ThreadPoolTaskExecutor();
+            this.rewriteExecutor.setCorePoolSize(Math.max(1, queryRewriteProperties.getRewriteThreads()));
+            this.rewriteExecutor.setMaxPoolSize(Math.max(1, queryRewriteProperties.getRewriteThreads()));
+            this.rewriteExecutor.setThreadNamePrefix("QueryRewrite-");
+            this.rewriteExecutor.setWaitForTasksToCompleteOnShutdown(false);
+            this.rewriteExecutor.initialize();
+            this.adaptiveQueryTransformer = new AdaptiveQueryTransformer(scheduledRewriter, baseRetriever,
+                    keywordIndex, queryRewriteProperties, meterRegistry, this.rewriteExecutor);
+
             this.retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
                     .documentRetriever(loggingRetriever)
                     .queryAugmenter(queryAugmenter)
-                    .queryTransformers(this.queryTransformer)
+                    .queryTransformers(rewriteOnceTransformer)
                     .build();
 
+            // 顾问链在此固定，生成回答时复用同一个ChatClient
+            RetrievalAugmentationAdvisor ragAdvisor = this.retrievalAugmentationAdvisor;
+            SimpleLoggerAdvisor loggerAdvisor = new SimpleLoggerAdvisor();
+            chatClientRegistry.register(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_RAG,
+                    projectId -> ChatClient.builder(ollamaChatModel)
+                            .defaultAdvisors(ragAdvisor, loggerAdvisor)
+                            .build());
+
             // 初始化检索到的文档列表
             this.retrievedDocuments = new ArrayList<>();
             log.info("组件初始化成功");
@@ -148,6 +241,13 @@ public class OllamaAiOperator implements AiOperator {
         }
     }
 
+    @PreDestroy
+    public void destroy() {
+        if (rewriteExecutor != null) {
+            rewriteExecutor.shutdown();
+        }
+    }
+
     @Autowired
     public OllamaAiOperator(OllamaKnowledgeEtlService etlService) {
         this.etlService = etlService;
@@ -169,8 +269,36 @@ public class OllamaAiOperator implements AiOperator {
         }
     }
 
+    @Override
+    public void addDocs(ChatKnowledge chatKnowledge, IngestProgress progress) {
+        // 入库任务需要感知失败以便重试，这里不吞掉异常
+        this.etlService.etlIngest(chatKnowledge, progress);
+    }
+
+    @Override
+    public boolean reindexDocs(ChatKnowledge chatKnowledge) {
+        // 只向量化内容哈希发生变化的分块
+        this.etlService.reindex(chatKnowledge);
+        return true;
+    }
+
     @Override
     public Flux<String> chat_stream(Message[] messages) {
+        return chat_stream(messages, null);
+    }
+
+    /**
+     * 大模型繁忙时以 {@link LlmBusyException} 结束，由调用方决定如何展示，不作为回答内容输出
+     */
+    @Override
+    public Flux<String> chat_stream(Message[] messages, Long projectId) {
+        // 请求归属由调用方通过Reactor上下文传入，未传入时按项目归属
+        return Flux.deferContextual(ctx -> chat_stream(messages, projectId,
+                ctx.getOrDefault(LlmTenant.CONTEXT_KEY, LlmTenant.of(projectId, null)),
+                ctx.getOrDefault(ChatTrace.CONTEXT_KEY, null)));
+    }
+
+    private Flux<String> chat_stream(Message[] messages, Long projectId, LlmTenant tenant, ChatTrace trace) {
         try {
             // 获取用户查询
             String userQuery = "";
@@ -191,26 +319,107 @@ public class OllamaAiOperator implements AiOperator {
             3. 不要基于你的通用知识回答问题，只能基于已有知识库内容回答，不能胡编乱造或者篡改知识库
             """);
 
-            List<Message> messageList = new ArrayList<>();
-            messageList.add(systemMessage);
-            if (!userMessages.isEmpty()) {
-                messageList.add(userMessages.get(userMessages.size() - 1));
-            }
+            // 早期对话摘要与窗口内的历史消息一并传给模型，追问时能看到上文
+            List<Message> messageList = AiOperator.withSystemPrompt(messages, systemMessage.getText());
 
-            // 使用RetrievalAugmentationAdvisor处理聊天
-            ChatClient chatClient = ChatClient.builder(ollamaChatModel)
-                    .defaultAdvisors(retrievalAugmentationAdvisor)
-                    .defaultAdvisors(new SimpleLoggerAdvisor())
-                    .build();
+            if (StringUtils.isEmpty(userQuery)) {
+                return generate(messageList, null, tenant);
+            }
 
-            return chatClient.prompt()
-                    .messages(messageList)  // 包含系统消息和用户消息
-                    .stream()
-                    .content()
-                    .doOnError(e -> log.error("聊天流处理错误", e));
+            // 先确定检索用的查询（跳过/缓存/重写），语义缓存命中时直接重放，跳过检索与生成
+            String query = userQuery;
+            // 缓存只按查询向量匹配，依赖上文的回答不能复用给其他会话，因此只缓存没有上文的提问
+            boolean standalone = messageList.size() <= 2;
+            boolean useSemanticCache = projectId != null && standalone && semanticAnswerCache.isEnabled();
+            Map<String, Object> planContext = new HashMap<>();
+            planContext.put(LlmTenant.CONTEXT_KEY, tenant);
+            if (trace != null) {
+                planContext.put(ChatTrace.CONTEXT_KEY, trace);
+            }
+            // 兜底只覆盖查询计划与缓存查询，生成阶段的错误直接向上传递，避免已输出部分回答后再生成一遍
+            return Mono.fromCallable(() -> {
+                        // 在检索之前取得失效代数，检索或生成期间知识库变化时回答不写入缓存
+                        long generation = useSemanticCache ? semanticAnswerCache.generation(projectId) : 0;
+                        AdaptiveQueryTransformer.Plan plan = this.adaptiveQueryTransformer.plan(query, planContext);
+                        float[] embedding = useSemanticCache ? ollamaCachingEmbeddingModel.embed(plan.query()) : null;
+                        RewrittenQuery rewritten = new RewrittenQuery(plan.query(), embedding, plan.documents(), generation);
+                        List<String> cached = useSemanticCache
+                                ? semanticAnswerCache.lookup(projectId, embedding)
+                                .map(SemanticAnswerCache.CachedAnswer::chunks)
+                                .orElse(null)
+                                : null;
+                        return new PlannedQuery(rewritten, cached);
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(e -> !(e instanceof LlmBusyException), e -> {
+                        log.warn("查询计划或语义缓存查询失败，直接生成回答: {}", e.getMessage());
+                        return Mono.just(new PlannedQuery(null, null));
+                    })
+                    .flatMapMany(planned -> {
+                        if (planned.cachedChunks() != null) {
+                            return Flux.fromIterable(planned.cachedChunks());
+                        }
+                        return useSemanticCache && planned.rewritten() != null
+                                ? generateAndCache(messageList, projectId, planned.rewritten(), tenant)
+                                : generate(messageList, planned.rewritten(), tenant);
+                    });
         } catch (Exception e) {
             log.error("构建聊天流失败", e);
             return Flux.error(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 调用RAG顾问生成回答，rewritten不为空时跳过顾问内部的查询重写，并复用已完成的检索结果
+     * 获得调度槽位后才发起调用，流结束或客户端断开时归还
+     */
+    private Flux<String> generate(List<Message> messageList, RewrittenQuery rewritten, LlmTenant tenant) {
+        // 使用RetrievalAugmentationAdvisor处理聊天，检索范围不区分项目，使用共享实例
+        ChatClient chatClient = chatClientRegistry.get(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_RAG);
+
+        return Flux.deferContextual(ctx -> llmRequestScheduler.schedule(LlmRequestScheduler.Priority.INTERACTIVE, tenant, () -> chatClient.prompt()
+                .messages(messageList)  // 包含系统消息和用户消息
+                .advisors(a -> {
+                    // 顾问内兜底的重写与检索计入所属请求
+                    if (ctx.hasKey(ChatTrace.CONTEXT_KEY)) {
+                        a.param(ChatTrace.CONTEXT_KEY, ctx.get(ChatTrace.CONTEXT_KEY));
+                    }
+                    if (rewritten != null) {
+                        a.param(REWRITTEN_QUERY_KEY, rewritten.text());
+                        if (rewritten.documents() != null) {
+                            a.param(RETRIEVED_DOCUMENTS_KEY, rewritten.documents());
+                        }
+                    }
+                })
+                .stream()
+                .content()))
+                .doOnError(e -> !(e instanceof LlmBusyException), e -> log.error("聊天流处理错误", e));
+    }
+
+    /**
+     * 生成回答，并在流正常结束后写入语义缓存
+     */
+    private Flux<String> generateAndCache(List<Message> messageList, Long projectId, RewrittenQuery rewritten,
+                                          LlmTenant tenant) {
+        return Flux.defer(() -> {
+            long start = System.currentTimeMillis();
+            List<String> chunks = new ArrayList<>();
+            return generate(messageList, rewritten, tenant)
+                    .doOnNext(chunks::add)
+                    .doOnComplete(() -> semanticAnswerCache.put(projectId, rewritten.text(),
+                            rewritten.embedding(), chunks, System.currentTimeMillis() - start, rewritten.generation()));
+        });
+    }
+
+    /**
+     * @param generation 检索前取得的语义缓存失效代数
+     */
+    private record RewrittenQuery(String text, float[] embedding, List<Document> documents, long generation) {
+    }
+
+    /**
+     * 查询计划结果，cachedChunks不为空时表示语义缓存命中；计划失败时rewritten为空
+     */
+    private record PlannedQuery(RewrittenQuery rewritten, List<String> cachedChunks) {
+    }
+}
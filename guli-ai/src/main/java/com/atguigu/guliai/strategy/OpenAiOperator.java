@@ -7,8 +7,6 @@ import com.atguigu.guliai.vo.QueryVo;
 import com.atguigu.system.domain.ChatKnowledge;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.MessageType;
-import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.vectorstore.SearchRequest;
@@ -60,18 +58,8 @@ public class OpenAiOperator implements AiOperator {
 
     @Override
     public Flux<String> chat_stream(org.springframework.ai.chat.messages.Message[] messages) {
-        // 只保留最新的用户消息
-        Optional<Message> latestUserMessage = Arrays.stream(messages)
-                .filter(msg -> msg.getMessageType() == MessageType.USER)
-                .reduce((first, second) -> second); // 获取最后一个用户消息
-
-        List<Message> cleanedMessages = new ArrayList<>();
-
-        // 添加路由智能体提示词
-        cleanedMessages.add(0, new SystemMessage(SystemConstant.ROUTE_AGENT_PROMPT));
-
-        // 添加最新的用户消息（如果存在）
-        latestUserMessage.ifPresent(cleanedMessages::add);
+        // 路由智能体提示词 + 早期对话摘要 + 窗口内的历史消息，追问时模型能看到上文
+        List<Message> cleanedMessages = AiOperator.withSystemPrompt(messages, SystemConstant.ROUTE_AGENT_PROMPT);
 
         // 调试日志
         if (log.isDebugEnabled()) {
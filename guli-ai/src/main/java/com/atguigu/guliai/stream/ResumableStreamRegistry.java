@@ -0,0 +1,248 @@
+package com.atguigu.guliai.stream;
+
+import com.atguigu.guliai.config.ResumableStreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可续传的流式回答
+ * 回答由服务端独立订阅生成，客户端断开不会中断生成；分片按序号写入环形缓冲，
+ * 重连的客户端带上最后收到的序号即可从断点继续接收，不会重新检索和调用大模型。
+ * 开启 Redis 同步后分片批量写入 Redis 列表，重连到其他节点时从 Redis 轮询读取。
+ * 流id为随机 UUID，不可推测；续传时还要校验归属：登录用户按用户id，未登录按会话id，两者都没有的回答只能在首次连接中接收。
+ */
+@Slf4j
+@Component
+public class ResumableStreamRegistry {
+
+    private static final String KEY_PREFIX = "guli:ai:stream:";
+    private static final String EVENT_STREAM = "stream";
+    private static final String EVENT_DONE = "done";
+    private static final String EVENT_ERROR = "error";
+
+    private final ResumableStreamProperties properties;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final Map<String, TurnBuffer> turns = new ConcurrentHashMap<>();
+
+    private final Counter resumedLocal;
+    private final Counter resumedRedis;
+
+    public ResumableStreamRegistry(ResumableStreamProperties properties, ObjectProvider<StringRedisTemplate> redisTemplate,
+                                   MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.resumedLocal = Counter.builder("guli.ai.stream.resumed")
+                .tag("source", "local")
+                .description("断线续传次数")
+                .register(meterRegistry);
+        this.resumedRedis = Counter.builder("guli.ai.stream.resumed")
+                .tag("source", "redis")
+                .description("断线续传次数")
+                .register(meterRegistry);
+        Gauge.builder("guli.ai.stream.buffered", turns, Map::size)
+                .description("本节点缓冲中的回答数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 回答的归属标识：登录用户为 user:用户id，未登录时为 chat:会话id；
+     * 两者都没有时返回一次性的随机标识，续传时无法再次匹配
+     *
+     * @param userId 当前登录用户，未登录为 null
+     * @param chatId 会话id
+     */
+    public static String owner(Long userId, Long chatId) {
+        if (userId != null) {
+            return "user:" + userId;
+        }
+        if (chatId != null) {
+            return "chat:" + chatId;
+        }
+        return "anonymous:" + UUID.randomUUID();
+    }
+
+    /**
+     * 在服务端订阅回答并开始缓冲
+     *
+     * @param owner      归属标识，见 {@link #owner(Long, Long)}，续传时校验
+     * @param generation 回答流
+     * @return 流id
+     */
+    public String start(String owner, Flux<String> generation) {
+        String streamId = UUID.randomUUID().toString();
+        TurnBuffer buffer = new TurnBuffer(streamId, owner, properties.getBufferSize());
+        turns.put(streamId, buffer);
+        AtomicReference<String> error = new AtomicReference<>();
+        Flux.defer(() -> generation)
+                .onErrorResume(e -> {
+                    log.warn("流式回答生成失败 streamId={}，原因：{}", streamId, e.getMessage());
+                    error.set(e.getMessage() != null ? e.getMessage() : "回答生成失败");
+                    return Flux.empty();
+                })
+                .map(buffer::append)
+                .transform(chunks -> mirror(buffer, chunks))
+                .then(Mono.defer(() -> finishRedis(buffer, error.get())))
+                .doFinally(signal -> {
+                    buffer.complete(error.get());
+                    Schedulers.parallel().schedule(() -> turns.remove(streamId, buffer),
+                            properties.getRetention().toMillis(), TimeUnit.MILLISECONDS);
+                })
+                .subscribe();
+        return streamId;
+    }
+
+    /**
+     * 以 SSE 事件输出回答，首个事件为流id，每个分片以序号作为事件id，结束时输出 done 或 error 事件
+     *
+     * @param afterSeq 已收到的最后一个分片序号，首次接入为 0
+     */
+    public Flux<ServerSentEvent<String>> events(String streamId, String owner, long afterSeq) {
+        Flux<ServerSentEvent<String>> chunks = attach(streamId, owner, afterSeq)
+                .map(chunk -> ServerSentEvent.builder(chunk.content()).id(String.valueOf(chunk.seq())).build());
+        return Flux.just(ServerSentEvent.builder(streamId).event(EVENT_STREAM).build())
+                .concatWith(chunks)
+                .concatWith(Mono.fromSupplier(() -> ServerSentEvent.<String>builder().event(EVENT_DONE).build()))
+                .onErrorResume(StreamFailedException.class,
+                        e -> Mono.just(ServerSentEvent.builder(e.getMessage()).event(EVENT_ERROR).build()));
+    }
+
+    /**
+     * 接收序号大于 afterSeq 的分片，本节点没有该流时从 Redis 读取
+     */
+    public Flux<StreamChunk> attach(String streamId, String owner, long afterSeq) {
+        if (streamId == null || owner == null) {
+            return Flux.error(new StreamFailedException("无权访问该回答"));
+        }
+        TurnBuffer buffer = turns.get(streamId);
+        if (buffer != null) {
+            if (!owner.equals(buffer.owner())) {
+                return Flux.error(new StreamFailedException("无权访问该回答"));
+            }
+            if (afterSeq > 0) {
+                resumedLocal.increment();
+            }
+            return buffer.attach(afterSeq);
+        }
+        if (!properties.isRedisEnabled() || redisTemplate.getIfAvailable() == null) {
+            return Flux.error(new StreamFailedException("回答不存在或已过期，请重新提问"));
+        }
+        resumedRedis.increment();
+        return attachRedis(streamId, owner, afterSeq);
+    }
+
+    /**
+     * 分片按批写入 Redis，写入失败只影响跨节点续传，不影响本节点输出
+     */
+    private Flux<StreamChunk> mirror(TurnBuffer buffer, Flux<StreamChunk> chunks) {
+        StringRedisTemplate template = properties.isRedisEnabled() ? redisTemplate.getIfAvailable() : null;
+        if (template == null) {
+            return chunks;
+        }
+        return chunks.bufferTimeout(Math.max(1, properties.getRedisBatchSize()), properties.getRedisFlushInterval())
+                .concatMap(batch -> Mono.fromRunnable(() -> writeRedis(template, buffer, batch, null))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            log.warn("回答分片同步到Redis失败 streamId={}，原因：{}", buffer.streamId(), e.getMessage());
+                            return Mono.empty();
+                        })
+                        .thenMany(Flux.fromIterable(batch)));
+    }
+
+    private Mono<Void> finishRedis(TurnBuffer buffer, String error) {
+        StringRedisTemplate template = properties.isRedisEnabled() ? redisTemplate.getIfAvailable() : null;
+        if (template == null) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> writeRedis(template, buffer, List.of(), error == null ? "" : error))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * @param error 为 null 时表示尚未结束，空串表示正常结束
+     */
+    private void writeRedis(StringRedisTemplate template, TurnBuffer buffer, List<StreamChunk> batch, String error) {
+        String key = KEY_PREFIX + buffer.streamId();
+        String metaKey = key + ":meta";
+        long ttl = properties.getRedisTtl().toSeconds();
+        template.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            if (!batch.isEmpty()) {
+                redis.rPush(key, batch.stream().map(c -> c.seq() + "\t" + c.content()).toArray(String[]::new));
+                redis.lTrim(key, -Math.max(1, properties.getBufferSize()), -1);
+            }
+            redis.hSet(metaKey, "owner", buffer.owner());
+            if (error != null) {
+                redis.hSet(metaKey, "done", "1");
+                redis.hSet(metaKey, "error", error);
+            }
+            redis.expire(key, ttl);
+            redis.expire(metaKey, ttl);
+            return null;
+        });
+    }
+
+    /**
+     * 轮询 Redis 中的新分片，先读结束标记再读分片，读到结束标记时分片一定已写完
+     */
+    private Flux<StreamChunk> attachRedis(String streamId, String owner, long afterSeq) {
+        StringRedisTemplate template = redisTemplate.getObject();
+        String key = KEY_PREFIX + streamId;
+        String metaKey = key + ":meta";
+        AtomicLong cursor = new AtomicLong(afterSeq);
+        return Flux.interval(Duration.ZERO, properties.getPollInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(() -> {
+                    Map<Object, Object> meta = template.opsForHash().entries(metaKey);
+                    if (meta.isEmpty()) {
+                        throw new StreamFailedException("回答不存在或已过期，请重新提问");
+                    }
+                    if (!owner.equals(meta.get("owner"))) {
+                        throw new StreamFailedException("无权访问该回答");
+                    }
+                    List<String> values = template.opsForList().range(key, 0, -1);
+                    List<StreamChunk> chunks = new ArrayList<>();
+                    for (String value : values != null ? values : List.<String>of()) {
+                        int tab = value.indexOf('\t');
+                        long seq = Long.parseLong(value.substring(0, tab));
+                        if (seq > cursor.get()) {
+                            chunks.add(new StreamChunk(seq, value.substring(tab + 1)));
+                            cursor.set(seq);
+                        }
+                    }
+                    Object error = meta.get("error");
+                    return new Poll(chunks, meta.containsKey("done"), error != null ? error.toString() : null);
+                }).subscribeOn(Schedulers.boundedElastic()), 1)
+                .takeUntil(Poll::done)
+                .concatMap(poll -> {
+                    Flux<StreamChunk> chunks = Flux.fromIterable(poll.chunks());
+                    return poll.done() && poll.error() != null && !poll.error().isEmpty()
+                            ? chunks.concatWith(Flux.error(new StreamFailedException(poll.error())))
+                            : chunks;
+                });
+    }
+
+    private record Poll(List<StreamChunk> chunks, boolean done, String error) {
+    }
+}
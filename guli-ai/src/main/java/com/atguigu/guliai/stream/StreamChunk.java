@@ -0,0 +1,10 @@
+package com.atguigu.guliai.stream;
+
+/**
+ * 流式回答的一个分片
+ *
+ * @param seq     分片序号，从 1 开始连续递增
+ * @param content 分片内容
+ */
+public record StreamChunk(long seq, String content) {
+}
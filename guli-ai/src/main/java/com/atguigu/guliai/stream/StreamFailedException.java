@@ -0,0 +1,11 @@
+package com.atguigu.guliai.stream;
+
+/**
+ * 回答生成失败，或续传的流不存在、已过期、已中断
+ */
+public class StreamFailedException extends RuntimeException {
+
+    public StreamFailedException(String message) {
+        super(message);
+    }
+}
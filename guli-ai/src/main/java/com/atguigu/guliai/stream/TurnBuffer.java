@@ -0,0 +1,108 @@
+package com.atguigu.guliai.stream;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单轮回答的环形分片缓冲
+ * 生成端追加分片，任意数量的客户端从指定序号之后接入：先补发缓冲中的分片，再实时接收新分片。
+ * 补发与登记监听在同一把锁内完成，接入期间追加的分片不会丢失或重复。
+ */
+final class TurnBuffer {
+
+    private final String streamId;
+    private final String owner;
+    private final StreamChunk[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<FluxSink<StreamChunk>> listeners = new ArrayList<>();
+    private long lastSeq;
+    private boolean done;
+    private String error;
+
+    TurnBuffer(String streamId, String owner, int capacity) {
+        this.streamId = streamId;
+        this.owner = owner;
+        this.ring = new StreamChunk[Math.max(1, capacity)];
+    }
+
+    String streamId() {
+        return streamId;
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    StreamChunk append(String content) {
+        lock.lock();
+        try {
+            StreamChunk chunk = new StreamChunk(++lastSeq, content);
+            ring[(int) (chunk.seq() % ring.length)] = chunk;
+            // 下游取消时会在当前线程移除监听，遍历副本
+            for (FluxSink<StreamChunk> sink : List.copyOf(listeners)) {
+                sink.next(chunk);
+            }
+            return chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param error 生成失败的原因，正常结束为 null
+     */
+    void complete(String error) {
+        lock.lock();
+        try {
+            this.done = true;
+            this.error = error;
+            List<FluxSink<StreamChunk>> finished = List.copyOf(listeners);
+            listeners.clear();
+            finished.forEach(this::finish);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 接收序号大于 afterSeq 的分片，早于缓冲范围的分片已被丢弃，客户端可根据序号跳跃发现
+     */
+    Flux<StreamChunk> attach(long afterSeq) {
+        return Flux.create(sink -> {
+            lock.lock();
+            try {
+                long first = Math.max(afterSeq + 1, lastSeq - ring.length + 1);
+                for (long seq = Math.max(1, first); seq <= lastSeq; seq++) {
+                    sink.next(ring[(int) (seq % ring.length)]);
+                }
+                if (done) {
+                    finish(sink);
+                    return;
+                }
+                listeners.add(sink);
+                sink.onDispose(() -> {
+                    lock.lock();
+                    try {
+                        listeners.remove(sink);
+                    } finally {
+                        lock.unlock();
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void finish(FluxSink<StreamChunk> sink) {
+        if (error != null) {
+            sink.error(new StreamFailedException(error));
+        } else {
+            sink.complete();
+        }
+    }
+}
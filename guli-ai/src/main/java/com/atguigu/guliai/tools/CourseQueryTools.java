@@ -1,27 +1,59 @@
 // CourseQueryTools.java
 package com.atguigu.guliai.tools;
 
+import com.atguigu.guliai.cache.ToolResultCache;
+import com.atguigu.guliai.constant.SystemConstant;
 import com.atguigu.guliai.query.CourseQuery;
+import com.atguigu.system.cache.EntityChangedEvent;
 import com.atguigu.system.domain.Course;
 import com.atguigu.system.service.ICourseService;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Set;
 
 @Component
 @RequiredArgsConstructor
 public class CourseQueryTools {
 
+    private static final Set<String> SORT_FIELDS = Set.of("price", "duration");
+
     private final ICourseService courseService;
+    private final ToolResultCache toolResultCache;
+    private final ToolResultShaper toolResultShaper;
+
+    @Tool(description = "根据条件查询专业，结果为以|分隔的表格，首行为字段名", resultConverter = PlainTextResultConverter.class)
+    public String queryCourse(@ToolParam(required = false, description = "课程查询条件") CourseQuery query) {
+        CourseQuery condition = query != null ? query : new CourseQuery();
+        List<Course> courses = toolResultCache.get(SystemConstant.TOOL_QUERY_COURSE, condition, () -> {
+            QueryChainWrapper<Course> wrapper = courseService.query()
+                    .eq(condition.getType() != null, "type", condition.getType())
+                    .le(condition.getEdu() != null, "edu", condition.getEdu());
+            // 结果只输出前若干行，排序要在数据库完成，否则截断的是任意行
+            if (condition.getSorts() != null) {
+                for (CourseQuery.Sort sort : condition.getSorts()) {
+                    if (sort.getField() != null && SORT_FIELDS.contains(sort.getField())) {
+                        wrapper.orderBy(true, !Boolean.FALSE.equals(sort.getAsc()), sort.getField());
+                    }
+                }
+            }
+            return wrapper.list();
+        });
+        return toolResultShaper.shape(SystemConstant.TOOL_QUERY_COURSE, courses);
+    }
 
-    @Tool(description = "根据条件查询专业")
-    public List<Course> queryCourse(@ToolParam(required = false, description = "课程查询条件") CourseQuery query) {
-        return courseService.query()
-                .eq(query.getType() != null, "type", query.getType())
-                .le(query.getEdu() != null, "edu", query.getEdu())
-                .list();
+    /**
+     * 专业数据写入后清理缓存的查询结果
+     */
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (Course.class.equals(event.entityType())) {
+            toolResultCache.invalidate(SystemConstant.TOOL_QUERY_COURSE);
+        }
     }
-}
\ No newline at end of file
+}
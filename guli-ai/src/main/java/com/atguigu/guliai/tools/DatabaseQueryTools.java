@@ -1,5 +1,6 @@
 package com.atguigu.guliai.tools;
 
+import com.atguigu.guliai.config.ChatPagingProperties;
 import com.atguigu.guliai.pojo.Chat;
 import com.atguigu.guliai.utils.MongoUtil;
 import org.springframework.ai.tool.annotation.Tool;
@@ -19,14 +20,19 @@ public class DatabaseQueryTools {
     @Autowired
     private MongoTemplate mongoTemplate;
 
-    @Tool(name = "queryChatList", description = "根据项目ID和用户ID查询聊天会话列表")
+    @Autowired
+    private ChatPagingProperties chatPagingProperties;
+
+    @Tool(name = "queryChatList", description = "根据项目ID和用户ID查询最近的聊天会话列表")
     public List<Chat> queryChatList(
             @ToolParam(description = "项目ID") Long projectId,
             @ToolParam(description = "用户ID") Long userId) {
         Query query = Query.query(
                 Criteria.where("projectId").is(projectId)
                         .and("userId").is(userId)
-        ).with(Sort.by(Sort.Order.desc("createTime")));
+        ).with(Sort.by(Sort.Order.desc("createTime"), Sort.Order.desc("_id")))
+                // 只返回最近的会话，避免把全部会话放进模型上下文
+                .limit(chatPagingProperties.getDefaultPageSize());
 
         return mongoTemplate.find(
                 query,
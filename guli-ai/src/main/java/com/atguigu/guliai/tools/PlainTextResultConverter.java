@@ -0,0 +1,19 @@
+package com.atguigu.guliai.tools;
+
+import org.springframework.ai.tool.execution.DefaultToolCallResultConverter;
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+
+import java.lang.reflect.Type;
+
+/**
+ * 字符串结果原样交给大模型，默认转换器会把字符串再编码为 JSON 字符串，换行与引号都会被转义
+ */
+public class PlainTextResultConverter implements ToolCallResultConverter {
+
+    private final ToolCallResultConverter delegate = new DefaultToolCallResultConverter();
+
+    @Override
+    public String convert(Object result, Type returnType) {
+        return result instanceof String text ? text : delegate.convert(result, returnType);
+    }
+}
@@ -1,14 +1,14 @@
 // CourseQueryTools.java
 package com.atguigu.guliai.tools;
 
-import com.atguigu.guliai.query.CourseQuery;
-import com.atguigu.system.domain.Course;
+import com.atguigu.guliai.cache.ToolResultCache;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.system.cache.EntityChangedEvent;
 import com.atguigu.system.domain.School;
-import com.atguigu.system.service.ICourseService;
 import com.atguigu.system.service.ISchoolService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.tool.annotation.Tool;
-import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -18,9 +18,22 @@ import java.util.List;
 public class SchoolQueryTools {
 
     private final ISchoolService schoolService;
+    private final ToolResultCache toolResultCache;
+    private final ToolResultShaper toolResultShaper;
 
-    @Tool(description = "查询所有校区")
-    public List<School> queryAllSchools() {
-        return schoolService.list();
+    @Tool(description = "查询所有校区，结果为以|分隔的表格，首行为字段名", resultConverter = PlainTextResultConverter.class)
+    public String queryAllSchools() {
+        List<School> schools = toolResultCache.get(SystemConstant.TOOL_QUERY_ALL_SCHOOLS, null, schoolService::list);
+        return toolResultShaper.shape(SystemConstant.TOOL_QUERY_ALL_SCHOOLS, schools);
     }
-}
\ No newline at end of file
+
+    /**
+     * 校区数据写入后清理缓存的查询结果
+     */
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (School.class.equals(event.entityType())) {
+            toolResultCache.invalidate(SystemConstant.TOOL_QUERY_ALL_SCHOOLS);
+        }
+    }
+}
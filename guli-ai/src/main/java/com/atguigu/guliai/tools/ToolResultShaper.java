@@ -0,0 +1,84 @@
+package com.atguigu.guliai.tools;
+
+import com.atguigu.guliai.config.ToolShapingProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.util.json.JsonParser;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 智能体工具结果裁剪
+ * 查询类工具的结果会整体进入提示词，逐行 JSON 重复输出字段名，多数字段大模型也用不到。
+ * 这里按工具配置只保留需要的字段，超出行数上限的部分只给出条数，以「|」分隔的表格输出，首行为字段名。
+ */
+@Component
+public class ToolResultShaper {
+
+    private static final String SEPARATOR = "|";
+
+    private final ToolShapingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public ToolResultShaper(ToolShapingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param tool 工具名，用于读取该工具的字段与行数配置
+     * @param rows 查询结果
+     * @return 交给大模型的工具结果
+     */
+    public String shape(String tool, List<?> rows) {
+        String result = properties.isEnabled() ? table(tool, rows) : JsonParser.toJson(rows);
+        DistributionSummary.builder("guli.ai.tool.result.tokens")
+                .tag("tool", tool)
+                .description("工具结果进入提示词的token数")
+                .register(meterRegistry)
+                .record(tokenCountEstimator.estimate(result));
+        return result;
+    }
+
+    private String table(String tool, List<?> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return "没有符合条件的记录";
+        }
+        ToolShapingProperties.Shape shape = properties.getTools().get(tool);
+        int maxRows = shape != null && shape.getMaxRows() != null ? shape.getMaxRows() : properties.getDefaultMaxRows();
+        List<JsonNode> nodes = rows.stream().limit(Math.max(1, maxRows)).map(objectMapper::<JsonNode>valueToTree).toList();
+        List<String> fields = shape != null && !shape.getFields().isEmpty() ? shape.getFields() : fieldsOf(nodes.get(0));
+
+        StringBuilder table = new StringBuilder(String.join(SEPARATOR, fields));
+        for (JsonNode node : nodes) {
+            table.append('\n').append(fields.stream().map(field -> cell(node.get(field))).collect(Collectors.joining(SEPARATOR)));
+        }
+        if (rows.size() > nodes.size()) {
+            table.append('\n').append("……另有").append(rows.size() - nodes.size()).append("条未列出，如需查看请缩小查询条件");
+        }
+        return table.toString();
+    }
+
+    private static List<String> fieldsOf(JsonNode node) {
+        List<String> fields = new ArrayList<>();
+        node.fieldNames().forEachRemaining(fields::add);
+        return fields;
+    }
+
+    private static String cell(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return "";
+        }
+        String text = value.isValueNode() ? value.asText() : value.toString();
+        return text.replace(SEPARATOR, "/").replace('\n', ' ');
+    }
+}
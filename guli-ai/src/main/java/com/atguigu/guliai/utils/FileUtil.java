@@ -5,10 +5,8 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.poi.hwpf.HWPFDocument;
 import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.springframework.core.io.Resource;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 
 // 新增：PDFBox 3.x Loader
@@ -18,52 +16,33 @@ import org.apache.pdfbox.Loader;
 public class FileUtil {
 
     /**
-     * 从文件中读取文本内容
-     * @param file MultipartFile
+     * 从文件字节中读取文本内容（异步入库任务直接读取已保存的文件）
+     * @param fileName 原始文件名，用于判断类型
+     * @param bytes 文件内容
      * @return
      */
-    public static String getContentFromFile(MultipartFile file) {
-        String originalFilename = file.getOriginalFilename();
-        try {
-            String lowerName = originalFilename == null ? "" : originalFilename.toLowerCase();
-            // 优先使用文件名后缀判断类型（不区分大小写）
-            if (lowerName.endsWith(".txt") || lowerName.endsWith(".md")) {
-                return getContentFromText(file);
-            } else if (lowerName.endsWith(".pdf")) {
-                return getContentFromPdf(file);
-            } else if (lowerName.endsWith(".doc") || lowerName.endsWith(".docx")) {
-                return getContentFromWord(file);
-            } else {
-                log.error("不支持的文件类型: {}", originalFilename);
-                throw new RuntimeException("仅支持txt、md、pdf、doc/docx文件");
-            }
-        } catch (Exception e) {
-            log.error("文件解析异常: {}", e.getMessage());
-            throw new RuntimeException("文件解析失败: " + e.getMessage());
-        }
-    }
-
-    /**
-     * 读取普通文本的内容
-     * @param file
-     * @return
-     */
-    public static String getContentFromText(MultipartFile file) {
-        Resource resource = file.getResource();
-        try {
-            return resource.getContentAsString(StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public static String getContentFromFile(String fileName, byte[] bytes) {
+        String lowerName = fileName == null ? "" : fileName.toLowerCase();
+        // 优先使用文件名后缀判断类型（不区分大小写）
+        if (lowerName.endsWith(".txt") || lowerName.endsWith(".md")) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        } else if (lowerName.endsWith(".pdf")) {
+            return getContentFromPdf(fileName, bytes);
+        } else if (lowerName.endsWith(".doc") || lowerName.endsWith(".docx")) {
+            return getContentFromWord(bytes);
+        } else {
+            log.error("不支持的文件类型: {}", fileName);
+            throw new RuntimeException("仅支持txt、md、pdf、doc/docx文件");
         }
     }
 
     /**
      * 读取word的文本内容
-     * @param file
+     * @param bytes
      * @return
      */
-    private static String getContentFromWord(MultipartFile file) {
-        try (HWPFDocument document = new HWPFDocument(file.getInputStream())) {
+    private static String getContentFromWord(byte[] bytes) {
+        try (HWPFDocument document = new HWPFDocument(new ByteArrayInputStream(bytes))) {
             WordExtractor extractor = new WordExtractor(document);
             return String.join("\n", extractor.getParagraphText());
         } catch (Exception e) {
@@ -74,16 +53,17 @@ public class FileUtil {
 
     /**
      * 读取pdf的文本内容
-     * @param file
+     * @param fileName
+     * @param bytes
      * @return
      */
-    public static String getContentFromPdf(MultipartFile file) {
-        try (PDDocument document = Loader.loadPDF(file.getBytes())) {
+    private static String getContentFromPdf(String fileName, byte[] bytes) {
+        try (PDDocument document = Loader.loadPDF(bytes)) {
             if (!document.isEncrypted()) {
                 PDFTextStripper stripper = new PDFTextStripper();
                 return stripper.getText(document);
             } else {
-                log.error("加密PDF文件不支持解析: {}", file.getOriginalFilename());
+                log.error("加密PDF文件不支持解析: {}", fileName);
                 return null;
             }
         } catch (Exception e) {
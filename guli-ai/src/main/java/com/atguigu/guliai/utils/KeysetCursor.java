@@ -0,0 +1,46 @@
+package com.atguigu.guliai.utils;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.Date;
+
+/**
+ * 按 createTime、_id 倒序分页的游标，格式为「毫秒时间戳_id」
+ *
+ * @param createTime 上一页最后一条数据的创建时间
+ * @param id         上一页最后一条数据的id
+ */
+public record KeysetCursor(Date createTime, Long id) {
+
+    public String encode() {
+        return createTime.getTime() + "_" + id;
+    }
+
+    /**
+     * @return 游标为空或格式错误时返回 null，即从最新数据开始
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        int split = cursor.indexOf('_');
+        if (split <= 0) {
+            return null;
+        }
+        try {
+            return new KeysetCursor(new Date(Long.parseLong(cursor.substring(0, split))),
+                    Long.parseLong(cursor.substring(split + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 排在游标之后（更早）的数据：createTime 更小，或 createTime 相同且 _id 更小
+     */
+    public Criteria before() {
+        return new Criteria().orOperator(
+                Criteria.where("createTime").lt(createTime),
+                Criteria.where("createTime").is(createTime).and("_id").lt(id));
+    }
+}
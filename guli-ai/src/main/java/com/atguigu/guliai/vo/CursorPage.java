@@ -0,0 +1,23 @@
+package com.atguigu.guliai.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    @Schema(description = "本页数据")
+    private List<T> records;
+
+    @Schema(description = "加载下一页（更早数据）时传入的游标，没有更多数据时为空")
+    private String nextCursor;
+
+    @Schema(description = "是否还有更早的数据")
+    private boolean hasMore;
+}
@@ -0,0 +1,43 @@
+package com.atguigu.guliai.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+public class IngestJobVo {
+
+    @Schema(description = "入库任务id")
+    private String jobId;
+
+    @Schema(description = "知识库id")
+    private Long knowledgeId;
+
+    @Schema(description = "文件名")
+    private String fileName;
+
+    @Schema(description = "任务状态")
+    private String state;
+
+    @Schema(description = "分块总数")
+    private Integer totalChunks;
+
+    @Schema(description = "已处理分块数")
+    private Integer committedChunks;
+
+    @Schema(description = "已执行次数")
+    private Integer attempts;
+
+    @Schema(description = "预计剩余秒数，无法估算时为空")
+    private Long etaSeconds;
+
+    @Schema(description = "最近一次失败原因")
+    private String errorMsg;
+
+    @Schema(description = "创建时间")
+    private Date createTime;
+
+    @Schema(description = "结束时间")
+    private Date finishTime;
+}
@@ -0,0 +1,23 @@
+package com.atguigu.guliai.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class VectorDeletionResult {
+
+    @Schema(description = "请求删除的知识库数")
+    private int requested;
+
+    @Schema(description = "已删除向量的知识库数")
+    private int deleted;
+
+    @Schema(description = "未找到知识库或所属项目而跳过的知识库id")
+    private List<Long> skippedIds = new ArrayList<>();
+
+    @Schema(description = "向量删除失败的知识库id，可重试")
+    private List<Long> failedIds = new ArrayList<>();
+}
@@ -0,0 +1,413 @@
+package com.atguigu.guliai.benchmark;
+
+import com.atguigu.guliai.agent.Agent;
+import com.atguigu.guliai.cache.CachingEmbeddingModel;
+import com.atguigu.guliai.cache.EmbeddingCache;
+import com.atguigu.guliai.cache.SemanticAnswerCache;
+import com.atguigu.guliai.client.ChatClientRegistry;
+import com.atguigu.guliai.config.EmbeddingCacheProperties;
+import com.atguigu.guliai.config.EtlPipelineProperties;
+import com.atguigu.guliai.config.IntentRouterProperties;
+import com.atguigu.guliai.config.LlmSchedulerProperties;
+import com.atguigu.guliai.config.QueryRewriteProperties;
+import com.atguigu.guliai.config.RetrievalProperties;
+import com.atguigu.guliai.config.SemanticCacheProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.guliai.enums.AgentTypeEnum;
+import com.atguigu.guliai.etl.OllamaKnowledgeEtlService;
+import com.atguigu.guliai.llm.LlmRequestScheduler;
+import com.atguigu.guliai.llm.LlmTenant;
+import com.atguigu.guliai.monitor.ChatPipelineMetrics;
+import com.atguigu.guliai.monitor.ChatTrace;
+import com.atguigu.guliai.rag.ChineseTokenizer;
+import com.atguigu.guliai.rag.KeywordIndex;
+import com.atguigu.guliai.router.LocalIntentRouter;
+import com.atguigu.guliai.service.AgentCoordinatorService;
+import com.atguigu.guliai.strategy.OllamaAiOperator;
+import com.atguigu.system.domain.ChatKnowledge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.context.properties.ConfigurationPropertiesBindingPostProcessor;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * 离线 RAG 基准
+ * 用确定性的模型替身与内存向量库替换 Ollama 和 Qdrant，在同一进程内装配 OllamaKnowledgeEtlService、
+ * OllamaAiOperator 与 AgentCoordinatorService，其余组件与线上相同，guli.ai 配置读取线上的 application.yml（只关闭语义缓存）：
+ * 1. 入库 benchmark/knowledge 下的知识文件，统计分块数与入库耗时；
+ * 2. 并发回放 benchmark/rag-questions.txt，统计吞吐、首字与总耗时分位数及各阶段耗时，并按实际交给模型的上下文计算 recall@k；
+ * 3. 回放 benchmark/route-questions.txt 经智能体协调器分发，统计本地路由占比、路由准确率与各智能体耗时。
+ * 不依赖 Ollama、Qdrant、数据库与网络，运行：bin/rag-bench.sh [轮数] [并发数] [每token延迟毫秒] [首token延迟毫秒]，
+ * 配置文件默认为 guli-admin/src/main/resources/application.yml，可用 -Dbenchmark.config=路径 指定。
+ * 替身向量只反映词面重合，recall 用于比较分块、混合检索、阈值等改动前后的差异，不代表真实模型的召回率；
+ * 回退到大模型路由时按问题集中的标注回放模型输出，路由准确率只反映本地路由的误判。
+ */
+public class RagBenchmark {
+
+    private static final Long PROJECT_ID = 1L;
+    /** 相对 guli-ai 目录 */
+    private static final String DEFAULT_CONFIG = "../guli-admin/src/main/resources/application.yml";
+    private static final int ANSWER_TOKENS = 60;
+    private static final int EMBEDDING_DIMENSIONS = 512;
+    private static final String ANSWER_FILLER = "以上信息来自知识库，具体安排请以学校最新通知为准。";
+    /** 检索增强顾问拼接上下文时使用的分隔线 */
+    private static final String CONTEXT_DELIMITER = "---------------------";
+    /** 没有检索到文档时的兜底提示词，模型需原样输出其后的内容 */
+    private static final String REFUSAL_MARKER = "一字不差：";
+
+    private final Map<String, List<String>> ragQuestions;
+    private final Map<String, AgentTypeEnum> routeQuestions;
+    /** 每个问题最近一次生成时交给模型的上下文所对应的知识文件，按上下文中的先后顺序排列 */
+    private final Map<String, List<String>> contexts = new ConcurrentHashMap<>();
+    private final Map<String, String> chunkFiles = new ConcurrentHashMap<>();
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private RagBenchmark(Map<String, List<String>> ragQuestions, Map<String, AgentTypeEnum> routeQuestions) {
+        this.ragQuestions = ragQuestions;
+        this.routeQuestions = routeQuestions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        Duration tokenLatency = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 10);
+        Duration firstTokenLatency = Duration.ofMillis(args.length > 3 ? Long.parseLong(args[3]) : 200);
+
+        LoggingSystem.get(RagBenchmark.class.getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        if (!StandardCharsets.UTF_8.equals(Charset.defaultCharset())) {
+            // Markdown 读取器按平台默认编码解码，分块会变成乱码，召回率失真
+            System.out.println("警告：默认编码为 " + Charset.defaultCharset() + "，请加 -Dfile.encoding=UTF-8 运行");
+        }
+
+        Map<String, List<String>> ragQuestions = new LinkedHashMap<>();
+        readLabeled("benchmark/rag-questions.txt").forEach(
+                (question, file) -> ragQuestions.computeIfAbsent(file, f -> new ArrayList<>()).add(question));
+        Map<String, AgentTypeEnum> routeQuestions = new LinkedHashMap<>();
+        readLabeled("benchmark/route-questions.txt").forEach(
+                (question, agent) -> routeQuestions.put(question, AgentTypeEnum.valueOf(agent)));
+
+        RagBenchmark benchmark = new RagBenchmark(ragQuestions, routeQuestions);
+        System.out.printf("轮数=%d 并发=%d 首token延迟=%dms 每token延迟=%dms 回答长度=%d token%n",
+                rounds, concurrency, firstTokenLatency.toMillis(), tokenLatency.toMillis(), ANSWER_TOKENS);
+        Resource config = new FileSystemResource(System.getProperty("benchmark.config", DEFAULT_CONFIG));
+        if (!config.exists()) {
+            System.out.println("配置文件不存在：" + config.getDescription() + "，请在 guli-ai 目录下运行或用 -Dbenchmark.config 指定");
+            System.exit(1);
+        }
+        System.out.println("配置=" + config.getDescription());
+        try (AnnotationConfigApplicationContext context = benchmark.context(config, firstTokenLatency, tokenLatency)) {
+            RetrievalProperties retrieval = context.getBean(RetrievalProperties.class);
+            System.out.printf("检索 top-k=%d 阈值=%.2f 混合检索=%s 模型并发=%d%n", retrieval.getTopK(),
+                    retrieval.getSimilarityThreshold(), retrieval.isHybridEnabled(),
+                    context.getBean(LlmSchedulerProperties.class).getMaxConcurrency());
+            benchmark.ingest(context);
+            benchmark.runRag(context, rounds, concurrency);
+            benchmark.runRoute(context, rounds, concurrency);
+            benchmark.printStages(context.getBean(ChatPipelineMetrics.class));
+        }
+        // 检索增强顾问自带的线程池不随容器关闭，显式退出
+        System.exit(0);
+    }
+
+    /**
+     * 只注册对话链路用到的组件，模型、向量库替换为替身，属性类按线上配置文件绑定
+     */
+    private AnnotationConfigApplicationContext context(Resource config, Duration firstTokenLatency, Duration tokenLatency)
+            throws IOException {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        MutablePropertySources propertySources = context.getEnvironment().getPropertySources();
+        new YamlPropertySourceLoader().load("application", config).forEach(propertySources::addLast);
+        // 关闭语义缓存，每轮请求都完整经过检索与生成
+        propertySources.addFirst(new MapPropertySource("benchmark", Map.of("guli.ai.semantic-cache.enabled", false)));
+        ConfigurationPropertiesBindingPostProcessor.register(context);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StandInChatModel chatModel = new StandInChatModel(this::respond, firstTokenLatency, tokenLatency);
+        context.registerBean("meterRegistry", MeterRegistry.class, () -> meterRegistry);
+        context.register(SemanticCacheProperties.class, RetrievalProperties.class, QueryRewriteProperties.class,
+                EtlPipelineProperties.class, LlmSchedulerProperties.class, IntentRouterProperties.class,
+                EmbeddingCacheProperties.class);
+        context.registerBean("ollamaChatModel", ChatModel.class, () -> chatModel);
+        context.registerBean("ollamaCachingEmbeddingModel", CachingEmbeddingModel.class, () -> new CachingEmbeddingModel(
+                new StandInEmbeddingModel(EMBEDDING_DIMENSIONS, Duration.ZERO), "stand-in", context.getBean(EmbeddingCache.class)));
+        context.registerBean("ollamaVectorStore", VectorStore.class, () -> SimpleVectorStore.builder(
+                context.getBean("ollamaCachingEmbeddingModel", CachingEmbeddingModel.class)).build());
+        for (AgentTypeEnum type : AgentTypeEnum.values()) {
+            context.registerBean(type.getAgentName() + "Agent", Agent.class, () -> new StandInAgent(type, ChatClient.create(chatModel)));
+        }
+        context.register(EmbeddingCache.class, KeywordIndex.class, LlmRequestScheduler.class, SemanticAnswerCache.class,
+                ChatClientRegistry.class, ChatPipelineMetrics.class, OllamaKnowledgeEtlService.class,
+                LocalIntentRouter.class, AgentCoordinatorService.class);
+        // 与线上一样以模型类型作为 bean 名称
+        context.registerBean(SystemConstant.MODEL_TYPE_OLLAMA, OllamaAiOperator.class);
+        context.refresh();
+        return context;
+    }
+
+    private void ingest(AnnotationConfigApplicationContext context) throws IOException {
+        OllamaKnowledgeEtlService etlService = context.getBean(OllamaKnowledgeEtlService.class);
+        Resource[] files = new PathMatchingResourcePatternResolver().getResources("classpath:benchmark/knowledge/*.md");
+        List<ChatKnowledge> knowledges = new ArrayList<>();
+        for (Resource file : files) {
+            ChatKnowledge knowledge = new ChatKnowledge();
+            knowledge.setKnowledgeId((long) knowledges.size() + 1);
+            knowledge.setProjectId(PROJECT_ID);
+            knowledge.setFileName(file.getFilename());
+            knowledge.setContent(file.getContentAsString(StandardCharsets.UTF_8));
+            knowledges.add(knowledge);
+        }
+
+        long start = System.nanoTime();
+        knowledges.forEach(etlService::etlIngest);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 分块结果是确定的，记下每个分块所属的知识文件，用于从交给模型的上下文反查命中的文档
+        for (ChatKnowledge knowledge : knowledges) {
+            for (Document chunk : etlService.split(etlService.extract(knowledge), knowledge)) {
+                chunkFiles.put(chunk.getText(), knowledge.getFileName());
+            }
+        }
+        System.out.printf("%n== 入库 ==%n文件=%d 分块=%d 耗时=%.2fs 分块/秒=%.1f%n",
+                files.length, chunkFiles.size(), seconds, chunkFiles.size() / seconds);
+    }
+
+    private void runRag(AnnotationConfigApplicationContext context, int rounds, int concurrency) {
+        OllamaAiOperator operator = context.getBean(OllamaAiOperator.class);
+        ChatPipelineMetrics metrics = context.getBean(ChatPipelineMetrics.class);
+        List<String> questions = ragQuestions.values().stream().flatMap(List::stream).toList();
+
+        Result result = replay(questions, rounds, concurrency, (question, session) -> Flux.defer(() -> {
+            ChatTrace trace = metrics.begin();
+            trace.projectType(SystemConstant.MODEL_TYPE_OLLAMA);
+            trace.agentType(ChatPipelineMetrics.AGENT_RAG);
+            return metrics.answer(operator.chat_stream(new Message[]{new UserMessage(question)}, PROJECT_ID)
+                            .contextWrite(ctx -> ctx.put(LlmTenant.CONTEXT_KEY, LlmTenant.of(PROJECT_ID, session))))
+                    .contextWrite(ctx -> ctx.put(ChatTrace.CONTEXT_KEY, trace));
+        }));
+
+        int topK = context.getBean(RetrievalProperties.class).getTopK();
+        int hitAt1 = 0;
+        int hitAtK = 0;
+        double reciprocalRank = 0;
+        for (Map.Entry<String, List<String>> entry : ragQuestions.entrySet()) {
+            for (String question : entry.getValue()) {
+                List<String> ranked = contexts.getOrDefault(question, List.of());
+                int rank = ranked.indexOf(entry.getKey());
+                hitAt1 += rank == 0 ? 1 : 0;
+                hitAtK += rank >= 0 && rank < topK ? 1 : 0;
+                reciprocalRank += rank >= 0 ? 1.0 / (rank + 1) : 0;
+            }
+        }
+        System.out.printf("%n== RAG 问答 ==%n%s%n问题=%d recall@1=%.3f recall@%d=%.3f MRR=%.3f%n",
+                result, questions.size(), (double) hitAt1 / questions.size(), topK,
+                (double) hitAtK / questions.size(), reciprocalRank / questions.size());
+    }
+
+    private void runRoute(AnnotationConfigApplicationContext context, int rounds, int concurrency) {
+        AgentCoordinatorService coordinator = context.getBean(AgentCoordinatorService.class);
+        LocalIntentRouter router = context.getBean(LocalIntentRouter.class);
+        ChatPipelineMetrics metrics = context.getBean(ChatPipelineMetrics.class);
+        Map<String, String> routed = new ConcurrentHashMap<>();
+
+        Result result = replay(new ArrayList<>(routeQuestions.keySet()), rounds, concurrency, (question, session) -> Flux.defer(() -> {
+            ChatTrace trace = metrics.begin();
+            trace.projectType(SystemConstant.MODEL_TYPE_OPENAI);
+            return metrics.answer(coordinator.coordinate(question, session, PROJECT_ID, trace))
+                    .contextWrite(ctx -> ctx.put(ChatTrace.CONTEXT_KEY, trace))
+                    .doOnComplete(() -> routed.put(question, trace.agentType()));
+        }));
+
+        int local = 0;
+        int localCorrect = 0;
+        int correct = 0;
+        for (Map.Entry<String, AgentTypeEnum> entry : routeQuestions.entrySet()) {
+            boolean right = entry.getValue().getAgentName().equals(routed.get(entry.getKey()));
+            correct += right ? 1 : 0;
+            if (router.route(entry.getKey()).confident()) {
+                local++;
+                localCorrect += right ? 1 : 0;
+            }
+        }
+        int total = routeQuestions.size();
+        System.out.printf("%n== 智能体路由 ==%n%s%n问题=%d 本地路由占比=%.3f 本地路由准确率=%.3f 整体准确率=%.3f%n",
+                result, total, (double) local / total, local > 0 ? (double) localCorrect / local : 0, (double) correct / total);
+    }
+
+    /**
+     * 按给定并发回放问题集，每个请求使用独立会话，统计吞吐与失败数
+     */
+    private Result replay(List<String> questions, int rounds, int concurrency,
+                          BiFunction<String, String, Flux<String>> request) {
+        AtomicInteger session = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong tokens = new AtomicLong();
+        long start = System.nanoTime();
+        Flux.range(0, rounds)
+                .concatMap(round -> Flux.fromIterable(questions))
+                .flatMap(question -> request.apply(question, String.valueOf(session.incrementAndGet()))
+                        .collect(Collectors.joining())
+                        .doOnNext(answer -> tokens.addAndGet(tokenCountEstimator.estimate(answer)))
+                        .onErrorResume(e -> {
+                            failed.incrementAndGet();
+                            return Mono.empty();
+                        }), concurrency)
+                .blockLast();
+        return new Result(rounds * questions.size(), failed.get(), tokens.get(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private void printStages(ChatPipelineMetrics metrics) {
+        System.out.printf("%n== 各阶段耗时（毫秒） ==%n%-8s %-14s %-12s %6s %8s %8s %8s %8s%n",
+                "项目类型", "智能体", "阶段", "次数", "p50", "p95", "p99", "最大");
+        for (ChatPipelineMetrics.StageStats stats : metrics.stageStats()) {
+            System.out.printf("%-8s %-14s %-12s %6d %8.1f %8.1f %8.1f %8.1f%n", stats.projectType(), stats.agentType(),
+                    stats.stage(), stats.count(), stats.p50Millis(), stats.p95Millis(), stats.p99Millis(), stats.maxMillis());
+        }
+        System.out.printf("%n== 生成速度（token/秒） ==%n");
+        for (ChatPipelineMetrics.ThroughputStats stats : metrics.throughputStats()) {
+            System.out.printf("%-8s %-14s 次数=%d 平均=%.1f p50=%.1f p95=%.1f%n", stats.projectType(), stats.agentType(),
+                    stats.count(), stats.mean(), stats.p50(), stats.p95());
+        }
+    }
+
+    /**
+     * 模型替身的应答：关键词增强返回分块中的高频词，查询重写原样返回查询，路由返回标注的智能体，
+     * 检索增强生成时记录上下文命中的知识文件，回答取上下文开头的内容，不足固定长度时补足
+     */
+    private String respond(Prompt prompt) {
+        String text = prompt.getContents();
+        if (text.stripTrailing().endsWith("Keywords:")) {
+            return keywords(text);
+        }
+        if (text.contains("查询重写助手")) {
+            int start = text.indexOf("原始查询：");
+            return start < 0 ? "" : text.substring(start + "原始查询：".length(), text.indexOf('\n', start)).trim();
+        }
+        if (text.contains(SystemConstant.ROUTE_AGENT_PROMPT.strip())) {
+            AgentTypeEnum agent = routeQuestions.entrySet().stream()
+                    .filter(e -> text.contains(e.getKey()))
+                    .max(Comparator.comparingInt(e -> e.getKey().length()))
+                    .map(Map.Entry::getValue)
+                    .orElse(AgentTypeEnum.ROUTE);
+            return agent == AgentTypeEnum.ROUTE ? "你好，我是桂林电子科技大学智能体。" : agent.getAgentName();
+        }
+        if (text.contains(REFUSAL_MARKER)) {
+            return text.substring(text.indexOf(REFUSAL_MARKER) + REFUSAL_MARKER.length()).strip();
+        }
+        ragQuestions.values().stream()
+                .flatMap(List::stream)
+                .filter(text::contains)
+                .max(Comparator.comparingInt(String::length))
+                .ifPresent(question -> contexts.put(question, contextFiles(text)));
+        int start = text.indexOf(CONTEXT_DELIMITER);
+        int end = start < 0 ? -1 : text.indexOf(CONTEXT_DELIMITER, start + CONTEXT_DELIMITER.length());
+        List<String> tokens = new ArrayList<>(end > start
+                ? StandInChatModel.tokens(text.substring(start + CONTEXT_DELIMITER.length(), end).strip())
+                : List.of());
+        while (tokens.size() < ANSWER_TOKENS) {
+            tokens.addAll(StandInChatModel.tokens(ANSWER_FILLER));
+        }
+        return String.join("", tokens.subList(0, ANSWER_TOKENS));
+    }
+
+    private List<String> contextFiles(String prompt) {
+        TreeMap<Integer, String> positions = new TreeMap<>();
+        chunkFiles.forEach((chunk, file) -> {
+            int index = prompt.indexOf(chunk);
+            if (index >= 0) {
+                positions.put(index, file);
+            }
+        });
+        return new ArrayList<>(positions.values());
+    }
+
+    private static String keywords(String prompt) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        ChineseTokenizer.tokenize(prompt.substring(0, prompt.lastIndexOf(". Give"))).forEach(t -> counts.merge(t, 1, Integer::sum));
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(5)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * 读取「标签<TAB>问题」格式的问题集，返回 问题 -> 标签
+     */
+    private static Map<String, String> readLabeled(String location) throws IOException {
+        Map<String, String> labeled = new LinkedHashMap<>();
+        for (String line : new ClassPathResource(location).getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t", 2);
+            labeled.put(parts[1].trim(), parts[0].trim());
+        }
+        return labeled;
+    }
+
+    private record Result(int requests, int failed, long tokens, double seconds) {
+        @Override
+        public String toString() {
+            return String.format("请求=%d 失败=%d 耗时=%.2fs 吞吐=%.2f 请求/秒 输出=%.1f token/秒",
+                    requests, failed, seconds, requests / seconds, tokens / seconds);
+        }
+    }
+
+    /**
+     * 智能体替身，路由智能体与线上一样带路由提示词调用模型，其余智能体直接生成回答
+     */
+    private record StandInAgent(AgentTypeEnum type, ChatClient chatClient) implements Agent {
+
+        @Override
+        public Flux<String> processStream(String question, String sessionId, Long projectId) {
+            ChatClient.ChatClientRequestSpec spec = chatClient.prompt().user(question);
+            if (type == AgentTypeEnum.ROUTE) {
+                spec = spec.system(SystemConstant.ROUTE_AGENT_PROMPT);
+            }
+            return spec.stream().content();
+        }
+
+        @Override
+        public AgentTypeEnum getAgentType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.atguigu.guliai.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地大模型替身
+ * 由应答函数根据提示词给出确定性的回答，按 token 逐个输出，首 token 延迟与每 token 延迟可配置，
+ * 用于在没有 Ollama 的机器上压测 RAG 与智能体链路。汉字按一字一 token 计，与中文模型的分词粒度接近。
+ */
+public class StandInChatModel implements ChatModel {
+
+    private static final Pattern TOKEN = Pattern.compile("\\p{IsHan}|[A-Za-z0-9]+|\\s+|.", Pattern.DOTALL);
+
+    private final Function<Prompt, String> responder;
+    private final Duration firstTokenLatency;
+    private final Duration tokenLatency;
+
+    /**
+     * @param responder         根据提示词生成回答
+     * @param firstTokenLatency 首 token 延迟，模拟预填充耗时
+     * @param tokenLatency      之后每个 token 的延迟
+     */
+    public StandInChatModel(Function<Prompt, String> responder, Duration firstTokenLatency, Duration tokenLatency) {
+        this.responder = responder;
+        this.firstTokenLatency = firstTokenLatency;
+        this.tokenLatency = tokenLatency;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<String> tokens = tokens(responder.apply(prompt));
+        sleep(firstTokenLatency.plus(tokenLatency.multipliedBy(Math.max(tokens.size() - 1, 0))));
+        return response(String.join("", tokens));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            List<String> tokens = tokens(responder.apply(prompt));
+            if (tokens.isEmpty()) {
+                return Flux.<ChatResponse>empty().delaySubscription(firstTokenLatency);
+            }
+            Flux<String> rest = Flux.fromIterable(tokens.subList(1, tokens.size()));
+            if (!tokenLatency.isZero()) {
+                rest = rest.delayElements(tokenLatency);
+            }
+            return Flux.just(tokens.get(0))
+                    .delayElements(firstTokenLatency)
+                    .concatWith(rest)
+                    .map(StandInChatModel::response);
+        });
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis(), duration.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型替身调用被中断", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.atguigu.guliai.benchmark;
+
+import com.atguigu.guliai.rag.ChineseTokenizer;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地向量模型替身
+ * 分词后对词语与汉字二元组做特征哈希并归一化，相同文本总是得到相同向量，字面相近的文本余弦相似度也较高。
+ * 只反映词面重合程度，不具备真实模型的语义能力；每次批量调用的延迟可配置。
+ */
+public class StandInEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+    private final Duration latency;
+
+    /**
+     * @param dimensions 向量维度
+     * @param latency    每次批量调用的延迟
+     */
+    public StandInEmbeddingModel(int dimensions, Duration latency) {
+        this.dimensions = dimensions;
+        this.latency = latency;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量模型替身调用被中断", e);
+            }
+        }
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vector(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private float[] vector(String text) {
+        float[] vector = new float[dimensions];
+        for (String token : ChineseTokenizer.tokenize(text)) {
+            int hash = token.hashCode();
+            // 再混合一次哈希决定符号，降低不同词落到同一维度时的相互干扰
+            vector[Math.floorMod(hash, dimensions)] += (hash * 0x9E3779B9) < 0 ? -1 : 1;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,68 @@
+package com.atguigu.guliai.cache;
+
+import com.atguigu.guliai.config.SemanticCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticAnswerCacheTest {
+
+    private static final Long PROJECT_ID = 1L;
+    private static final float[] EMBEDDING = {1f, 0f, 0f};
+
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    private final SemanticAnswerCache cache = new SemanticAnswerCache(new SemanticCacheProperties(), new SimpleMeterRegistry(),
+            beanFactory.getBeanProvider(StringRedisTemplate.class),
+            beanFactory.getBeanProvider(RedisMessageListenerContainer.class));
+
+    @Test
+    void storesAnswerWhenProjectUnchanged() {
+        long generation = cache.generation(PROJECT_ID);
+
+        cache.put(PROJECT_ID, "宿舍几点关门", EMBEDDING, List.of("晚上", "十一点"), 100, generation);
+
+        assertEquals(List.of("晚上", "十一点"), cache.lookup(PROJECT_ID, EMBEDDING).orElseThrow().chunks());
+    }
+
+    @Test
+    void dropsAnswerGeneratedAcrossInvalidation() {
+        // 检索前取得代数，生成期间知识库变化
+        long generation = cache.generation(PROJECT_ID);
+        cache.invalidateProject(PROJECT_ID);
+
+        cache.put(PROJECT_ID, "宿舍几点关门", EMBEDDING, List.of("旧回答"), 100, generation);
+
+        assertTrue(cache.lookup(PROJECT_ID, EMBEDDING).isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidationOnlyAffectsItsProject() {
+        long other = cache.generation(2L);
+        cache.invalidateProject(PROJECT_ID);
+
+        cache.put(2L, "图书馆几点开门", EMBEDDING, List.of("八点"), 100, other);
+
+        assertTrue(cache.lookup(2L, EMBEDDING).isPresent());
+    }
+
+    @Test
+    void evictsOnNotificationFromAnotherNode() {
+        cache.put(PROJECT_ID, "宿舍几点关门", EMBEDDING, List.of("十一点"), 100, cache.generation(PROJECT_ID));
+        long generation = cache.generation(PROJECT_ID);
+
+        cache.onMessage(new DefaultMessage(SemanticAnswerCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                ("other-node:" + PROJECT_ID).getBytes(StandardCharsets.UTF_8)), null);
+
+        assertTrue(cache.lookup(PROJECT_ID, EMBEDDING).isEmpty());
+        assertNotEquals(generation, cache.generation(PROJECT_ID));
+    }
+}
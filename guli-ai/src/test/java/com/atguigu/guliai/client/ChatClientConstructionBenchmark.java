@@ -0,0 +1,97 @@
+package com.atguigu.guliai.client;
+
+import com.atguigu.guliai.constant.SystemConstant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatClient 每次请求构建与从注册表复用的开销对比
+ * 只测量客户端构建与请求描述的组装，不调用模型：
+ * perRequest* 为改造前的写法（每次对话构建 RAG 顾问链、每个文档 ChatClient.create），registry* 为从注册表获取共享实例。
+ * 运行：bin/jmh-bench.sh ChatClientConstructionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatClientConstructionBenchmark {
+
+    private final ChatModel chatModel = prompt -> new ChatResponse(List.of());
+    private final List<Message> messages = List.of(new SystemMessage("你是桂林电子科技大学北海校区的问答助手"),
+            new UserMessage("宿舍几点关门"));
+
+    private RetrievalAugmentationAdvisor ragAdvisor;
+    private ChatClientRegistry registry;
+
+    @Setup
+    public void setUp() {
+        ragAdvisor = RetrievalAugmentationAdvisor.builder()
+                .documentRetriever(query -> List.of())
+                .build();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        registry = new ChatClientRegistry(beanFactory.getBeanProvider(OllamaChatModel.class),
+                beanFactory.getBeanProvider(OpenAiChatModel.class), new SimpleMeterRegistry());
+        SimpleLoggerAdvisor loggerAdvisor = new SimpleLoggerAdvisor();
+        registry.register(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_RAG,
+                projectId -> ChatClient.builder(chatModel).defaultAdvisors(ragAdvisor, loggerAdvisor).build());
+        registry.register(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_NONE,
+                projectId -> ChatClient.create(chatModel));
+        registry.warmUp();
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec perRequestRagClient() {
+        return ChatClient.builder(chatModel)
+                .defaultAdvisors(ragAdvisor)
+                .defaultAdvisors(new SimpleLoggerAdvisor())
+                .build()
+                .prompt()
+                .messages(messages);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec registryRagClient() {
+        return registry.get(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_RAG)
+                .prompt()
+                .messages(messages);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec perDocumentPlainClient() {
+        return ChatClient.create(chatModel)
+                .prompt()
+                .user("提取关键词");
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec registryPlainClient() {
+        return registry.get(SystemConstant.MODEL_TYPE_OLLAMA, ChatClientRegistry.ADVISORS_NONE)
+                .prompt()
+                .user("提取关键词");
+    }
+}
@@ -0,0 +1,161 @@
+package com.atguigu.guliai.mcp;
+
+import com.atguigu.guliai.config.McpPoolProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于 {@link McpStandInServer} 验证连接池的熔断、对冲、重连与截止时间
+ */
+class McpClientPoolTest {
+
+    private static final Map<String, Object> ARGS = Map.of("city", "北海");
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private McpStandInServer standIn;
+    private McpClientPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.stop();
+        }
+        if (standIn != null) {
+            standIn.close();
+        }
+    }
+
+    @Test
+    void breakerOpensThenProbesAndCloses() throws Exception {
+        standIn = McpStandInServer.start(0, Duration.ZERO, 1.0);
+        McpPoolProperties properties = properties(1);
+        properties.setBreakerFailureThreshold(2);
+        properties.setBreakerOpenDuration(Duration.ofMillis(300));
+        pool = start(properties);
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(McpUnavailableException.class, () -> call(Duration.ofMillis(200)));
+        }
+        assertEquals("OPEN", pool.breakerState());
+        long start = System.nanoTime();
+        McpUnavailableException rejected = assertThrows(McpUnavailableException.class, () -> call(Duration.ofSeconds(5)));
+        assertTrue(rejected.getMessage().contains("暂时不可用"));
+        assertTrue(millisSince(start) < 200, "熔断期间应直接失败");
+
+        standIn.setFailureRate(0);
+        standIn.setLatency(Duration.ofMillis(300));
+        Thread.sleep(350);
+        CompletableFuture<McpSchema.CallToolResult> probe = pool.callTool("maps_weather", ARGS, Duration.ofSeconds(5)).toFuture();
+        await(() -> "HALF_OPEN".equals(pool.breakerState()), Duration.ofSeconds(1));
+        // 半开状态只放行一个探测请求
+        assertThrows(McpUnavailableException.class, () -> call(Duration.ofSeconds(5)));
+
+        assertFalse(probe.get().isError());
+        assertEquals("CLOSED", pool.breakerState());
+    }
+
+    @Test
+    void hedgedAttemptWinsWhenPrimaryStalls() throws Exception {
+        standIn = McpStandInServer.start(0, Duration.ZERO, 0);
+        McpPoolProperties properties = properties(2);
+        properties.setHedgeDelay(Duration.ofMillis(100));
+        pool = start(properties);
+
+        standIn.stallNext(1);
+        long start = System.nanoTime();
+        McpSchema.CallToolResult result = call(Duration.ofSeconds(5));
+
+        assertTrue(text(result).contains("北海"));
+        assertTrue(millisSince(start) < 2000, "对冲请求应在截止时间之前返回");
+        assertEquals(1, meterRegistry.get("guli.ai.mcp.hedged").counter().count());
+        assertEquals("CLOSED", pool.breakerState());
+    }
+
+    @Test
+    void reconnectsAfterSessionIsDropped() throws Exception {
+        standIn = McpStandInServer.start(0, Duration.ZERO, 0);
+        McpPoolProperties properties = properties(1);
+        properties.setHealthCheckInterval(Duration.ofSeconds(1));
+        properties.setConnectTimeout(Duration.ofSeconds(1));
+        properties.setReconnectBackoff(Duration.ofMillis(200));
+        pool = start(properties);
+        assertFalse(call(Duration.ofSeconds(5)).isError());
+
+        // 服务端重启后旧会话失效，探活或调用失败时重建连接
+        int port = standIn.port();
+        standIn.close();
+        standIn = McpStandInServer.start(port, Duration.ZERO, 0);
+        await(() -> pool.status().get(0).generation() >= 2 && pool.status().get(0).healthy(), Duration.ofSeconds(15));
+
+        assertFalse(call(Duration.ofSeconds(5)).isError());
+        assertTrue(meterRegistry.get("guli.ai.mcp.reconnects").tag("result", "success").counter().count() >= 2);
+    }
+
+    @Test
+    void failsAtDeadlineWhenServerNeverAnswers() throws Exception {
+        standIn = McpStandInServer.start(0, Duration.ZERO, 1.0);
+        McpPoolProperties properties = properties(2);
+        properties.setHedgeDelay(Duration.ofMillis(100));
+        pool = start(properties);
+
+        long start = System.nanoTime();
+        McpUnavailableException e = assertThrows(McpUnavailableException.class, () -> call(Duration.ofMillis(400)));
+
+        assertTrue(e.getMessage().contains("超时"));
+        long elapsed = millisSince(start);
+        assertTrue(elapsed >= 400 && elapsed < 1500, "应在截止时间失败，实际 " + elapsed + "ms");
+        assertEquals(1, meterRegistry.get("guli.ai.mcp.call").tag("outcome", "timeout").timer().count());
+    }
+
+    private McpPoolProperties properties(int poolSize) {
+        McpPoolProperties properties = new McpPoolProperties();
+        properties.setUrl(standIn.url());
+        properties.setSseEndpoint("/sse");
+        properties.setPoolSize(poolSize);
+        properties.setConnectTimeout(Duration.ofSeconds(3));
+        properties.setCallTimeout(Duration.ofSeconds(5));
+        properties.setMaxAttempts(1);
+        properties.setHedgeDelay(Duration.ZERO);
+        return properties;
+    }
+
+    private McpClientPool start(McpPoolProperties properties) {
+        McpClientPool pool = new McpClientPool(properties, meterRegistry);
+        pool.start();
+        await(() -> pool.status().stream().allMatch(McpClientPool.ConnectionStatus::healthy), Duration.ofSeconds(10));
+        return pool;
+    }
+
+    private McpSchema.CallToolResult call(Duration deadline) {
+        return pool.callTool("maps_weather", ARGS, deadline).block();
+    }
+
+    private static String text(McpSchema.CallToolResult result) {
+        return ((McpSchema.TextContent) result.content().get(0)).text();
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static void await(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("等待超时 " + timeout.toMillis() + "ms");
+            }
+            LockSupport.parkNanos(Duration.ofMillis(20).toNanos());
+        }
+    }
+}
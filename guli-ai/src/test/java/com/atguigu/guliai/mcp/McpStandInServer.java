@@ -0,0 +1,170 @@
+package com.atguigu.guliai.mcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpServer;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.server.transport.HttpServletSseServerTransportProvider;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 高德 MCP 本地替身服务
+ * 在独立的嵌入式 Tomcat 上提供与高德同名的地图工具，返回固定格式的模拟数据，可配置延迟与失败比例，
+ * 用于在没有高德 key 或需要演练熔断、对冲、重连时验证连接池；延迟、失败比例与卡死次数可在运行中调整，供单元测试使用。
+ * 运行：bin/mcp-stand-in.sh [端口] [延迟毫秒] [失败比例]，再把 guli.ai.mcp-pool.url 指向 http://localhost:端口、
+ * sse-endpoint 改为 /sse 后启动应用。
+ */
+@Slf4j
+public class McpStandInServer implements AutoCloseable {
+
+    private static final String GEO_SCHEMA = """
+            {"type":"object","properties":{"address":{"type":"string","description":"结构化地址"},\
+            "city":{"type":"string","description":"城市"}},"required":["address"]}""";
+    private static final String WEATHER_SCHEMA = """
+            {"type":"object","properties":{"city":{"type":"string","description":"城市名称或adcode"}},"required":["city"]}""";
+    private static final String SEARCH_SCHEMA = """
+            {"type":"object","properties":{"keywords":{"type":"string","description":"搜索关键词"},\
+            "city":{"type":"string","description":"城市"}},"required":["keywords"]}""";
+
+    private final Tomcat tomcat;
+    private final McpAsyncServer server;
+    private final int port;
+    private final Behavior behavior;
+
+    private McpStandInServer(Tomcat tomcat, McpAsyncServer server, int port, Behavior behavior) {
+        this.tomcat = tomcat;
+        this.server = server;
+        this.port = port;
+        this.behavior = behavior;
+    }
+
+    /**
+     * @param port        监听端口，0 表示随机端口
+     * @param latency     每次工具调用的延迟
+     * @param failureRate 工具调用失败比例，失败的调用一直不返回，模拟连接卡死
+     */
+    public static McpStandInServer start(int port, Duration latency, double failureRate) throws LifecycleException {
+        Behavior behavior = new Behavior(latency, failureRate);
+        HttpServletSseServerTransportProvider transport = HttpServletSseServerTransportProvider.builder()
+                .objectMapper(new ObjectMapper())
+                .messageEndpoint("/mcp/message")
+                .sseEndpoint("/sse")
+                .build();
+        McpAsyncServer server = McpServer.async(transport)
+                .serverInfo("amap-stand-in", "1.0.0")
+                .capabilities(McpSchema.ServerCapabilities.builder().tools(false).build())
+                .tools(tool("maps_geo", "将结构化地址转换为经纬度坐标", GEO_SCHEMA, behavior,
+                                args -> "{\"geocodes\":[{\"formatted_address\":\"" + args.getOrDefault("address", "") + "\","
+                                        + "\"location\":\"110.416362,25.316148\",\"city\":\"" + args.getOrDefault("city", "桂林市") + "\"}]}"),
+                        tool("maps_weather", "查询指定城市的天气", WEATHER_SCHEMA, behavior,
+                                args -> "{\"city\":\"" + args.getOrDefault("city", "") + "\",\"forecasts\":[{\"dayweather\":\"多云\","
+                                        + "\"daytemp\":\"26\",\"nighttemp\":\"19\"}]}"),
+                        tool("maps_text_search", "关键词搜索地点", SEARCH_SCHEMA, behavior,
+                                args -> "{\"pois\":[{\"name\":\"" + args.getOrDefault("keywords", "") + "\","
+                                        + "\"address\":\"金鸡路1号\",\"location\":\"110.416362,25.316148\"}]}"))
+                .build();
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setPort(port);
+        tomcat.getConnector();
+        tomcat.setBaseDir(System.getProperty("java.io.tmpdir") + "/mcp-stand-in-" + port);
+        Context context = tomcat.addContext("", null);
+        // 未指定时 Tomcat 按 ISO-8859-1 读写，中文参数与结果会乱码
+        context.setRequestCharacterEncoding("UTF-8");
+        context.setResponseCharacterEncoding("UTF-8");
+        Tomcat.addServlet(context, "mcp", transport).setAsyncSupported(true);
+        context.addServletMappingDecoded("/*", "mcp");
+        tomcat.start();
+        int actualPort = tomcat.getConnector().getLocalPort();
+        log.info("MCP本地替身服务已启动 port={} latency={}ms failureRate={}", actualPort, latency.toMillis(), failureRate);
+        return new McpStandInServer(tomcat, server, actualPort, behavior);
+    }
+
+    public String url() {
+        return "http://localhost:" + port;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public void setLatency(Duration latency) {
+        behavior.latency = latency;
+    }
+
+    public void setFailureRate(double failureRate) {
+        behavior.failureRate = failureRate;
+    }
+
+    /**
+     * 接下来的 count 次工具调用一直不返回，之后的调用恢复正常
+     */
+    public void stallNext(int count) {
+        behavior.stalls.set(count);
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.closeGracefully().block(Duration.ofSeconds(2));
+        } catch (Exception e) {
+            log.debug("关闭MCP替身会话失败: {}", e.getMessage());
+        }
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } catch (LifecycleException e) {
+            log.warn("关闭MCP替身服务失败: {}", e.getMessage());
+        }
+    }
+
+    private static McpServerFeatures.AsyncToolSpecification tool(String name, String description, String schema,
+                                                                 Behavior behavior,
+                                                                 Function<Map<String, Object>, String> answer) {
+        return new McpServerFeatures.AsyncToolSpecification(new McpSchema.Tool(name, description, schema),
+                (exchange, args) -> {
+                    if (behavior.stalls.getAndUpdate(n -> Math.max(0, n - 1)) > 0
+                            || ThreadLocalRandom.current().nextDouble() < behavior.failureRate) {
+                        // 不返回结果，调用方只能依靠截止时间、对冲或重试
+                        return Mono.never();
+                    }
+                    return Mono.delay(behavior.latency)
+                            .thenReturn(new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(answer.apply(args))), false));
+                });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18089;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 200);
+        double failureRate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        McpStandInServer server = start(port, latency, failureRate);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.tomcat.getServer().await();
+    }
+
+    /**
+     * 工具调用的模拟行为，各工具共享
+     */
+    private static final class Behavior {
+        final AtomicInteger stalls = new AtomicInteger();
+        volatile Duration latency;
+        volatile double failureRate;
+
+        Behavior(Duration latency, double failureRate) {
+            this.latency = latency;
+            this.failureRate = failureRate;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.atguigu.guliai.monitor;
+
+import com.atguigu.guliai.cache.SemanticAnswerCache;
+import com.atguigu.guliai.config.SemanticCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatPipelineMetricsTest {
+
+    private static final float[] EMBEDDING = {1f, 0f};
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    private final ChatPipelineMetrics metrics = new ChatPipelineMetrics(meterRegistry,
+            beanFactory.getBeanProvider(ObservationRegistry.class));
+
+    @Test
+    void reportsSemanticCacheHitRateAndSavedLatency() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(new SemanticCacheProperties(), meterRegistry,
+                beanFactory.getBeanProvider(StringRedisTemplate.class),
+                beanFactory.getBeanProvider(RedisMessageListenerContainer.class));
+        cache.lookup(1L, EMBEDDING);
+        cache.put(1L, "宿舍几点关门", EMBEDDING, List.of("十一点"), 800, cache.generation(1L));
+        cache.lookup(1L, EMBEDDING);
+        cache.lookup(1L, EMBEDDING);
+
+        ChatPipelineMetrics.SemanticCacheStats stats = metrics.semanticCacheStats();
+
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(2.0 / 3, stats.hitRate(), 1e-9);
+        assertEquals(1, stats.size());
+        assertEquals(1600, stats.savedTotalMillis(), 1e-9);
+        assertEquals(800, stats.savedMeanMillis(), 1e-9);
+    }
+
+    @Test
+    void listsComponentMetersExceptChatStages() {
+        Counter.builder("guli.ai.router.decisions").tag("source", "local").register(meterRegistry).increment(3);
+        metrics.stage(null, ChatPipelineMetrics.STAGE_ROUTE, () -> "ok");
+
+        List<ChatPipelineMetrics.MeterStats> meters = metrics.componentStats();
+
+        assertEquals(1, meters.size());
+        assertEquals("guli.ai.router.decisions", meters.get(0).name());
+        assertEquals("source=local", meters.get(0).tags());
+        assertEquals(3.0, meters.get(0).values().get("count"));
+    }
+}
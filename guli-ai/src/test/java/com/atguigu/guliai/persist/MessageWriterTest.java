@@ -0,0 +1,73 @@
+package com.atguigu.guliai.persist;
+
+import com.atguigu.guliai.config.MessagePersistenceProperties;
+import com.atguigu.guliai.pojo.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void discardRemovesQueuedAndSpilledMessages() throws Exception {
+        MessagePersistenceProperties properties = properties();
+        MessageWriter writer = new MessageWriter(null, properties, null, new SimpleMeterRegistry());
+        // 队列容量为1，后两条直接落盘
+        writer.save(message(1L, 1L));
+        writer.save(message(2L, 1L));
+        writer.save(message(3L, 2L));
+        assertEquals(2, Files.readAllLines(Path.of(properties.getSpillPath())).size());
+
+        writer.discard(1L);
+
+        assertTrue(writer.pendingMessages(1L).isEmpty());
+        assertEquals(1, writer.pendingMessages(2L).size());
+        assertEquals(1, Files.readAllLines(Path.of(properties.getSpillPath())).size());
+    }
+
+    @Test
+    void discardedChatIsNotRestoredAfterRestart() {
+        MessagePersistenceProperties properties = properties();
+        MessageWriter writer = new MessageWriter(null, properties, null, new SimpleMeterRegistry());
+        writer.save(message(1L, 9L));
+        writer.save(message(2L, 1L));
+        writer.save(message(3L, 1L));
+        writer.save(message(4L, 2L));
+        writer.discard(1L);
+
+        MessageWriter restarted = new MessageWriter(null, properties, null, new SimpleMeterRegistry());
+        restarted.start();
+
+        assertTrue(restarted.pendingMessages(1L).isEmpty());
+        assertEquals(1, restarted.pendingMessages(2L).size());
+    }
+
+    private MessagePersistenceProperties properties() {
+        MessagePersistenceProperties properties = new MessagePersistenceProperties();
+        properties.setQueueCapacity(1);
+        // 测试期间不触发后台写入
+        properties.setFlushInterval(Duration.ofHours(1));
+        properties.setSpillPath(dir.resolve("messages.jsonl").toString());
+        return properties;
+    }
+
+    private static Message message(Long id, Long chatId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setChatId(chatId);
+        message.setType(0);
+        message.setContent("消息" + id);
+        message.setCreateTime(new Date());
+        return message;
+    }
+}
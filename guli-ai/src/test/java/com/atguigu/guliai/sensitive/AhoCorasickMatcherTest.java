@@ -0,0 +1,107 @@
+package com.atguigu.guliai.sensitive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AhoCorasickMatcherTest {
+
+    @Test
+    void findsOverlappingWordsInOnePass() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("he", "she", "his", "hers"));
+
+        List<AhoCorasickMatcher.Hit> hits = matcher.findAll("ushers");
+
+        assertEquals(List.of(
+                new AhoCorasickMatcher.Hit("she", 1, 4),
+                new AhoCorasickMatcher.Hit("he", 2, 4),
+                new AhoCorasickMatcher.Hit("hers", 2, 6)), hits);
+    }
+
+    @Test
+    void followsFailureLinksAfterPartialMatch() {
+        // 读到 "abc" 后遇到 e 失配，需要经失败指针退到 "bc" 才能命中 "bce"
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("abcd", "bce"));
+
+        assertEquals(List.of(new AhoCorasickMatcher.Hit("bce", 1, 4)), matcher.findAll("abce"));
+    }
+
+    @Test
+    void reportsSuffixWordsThroughOutputLinks() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("a", "ab", "bab"));
+
+        List<AhoCorasickMatcher.Hit> hits = matcher.findAll("abab");
+
+        assertEquals(List.of(
+                new AhoCorasickMatcher.Hit("a", 0, 1),
+                new AhoCorasickMatcher.Hit("ab", 0, 2),
+                new AhoCorasickMatcher.Hit("a", 2, 3),
+                new AhoCorasickMatcher.Hit("bab", 1, 4),
+                new AhoCorasickMatcher.Hit("ab", 2, 4)), hits);
+    }
+
+    @Test
+    void matchesChineseWordsInsideSentence() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("赌博", "代开发票"));
+
+        List<AhoCorasickMatcher.Hit> hits = matcher.findAll("宿舍里有人代开发票，还有人赌博");
+
+        assertEquals(List.of(
+                new AhoCorasickMatcher.Hit("代开发票", 5, 9),
+                new AhoCorasickMatcher.Hit("赌博", 13, 15)), hits);
+    }
+
+    @Test
+    void normalizesFullWidthAndCase() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("vpn"));
+
+        AhoCorasickMatcher.Hit hit = matcher.findFirst("怎么翻墙用ＶＰＮ");
+
+        // 命中位置对应原文
+        assertEquals(new AhoCorasickMatcher.Hit("vpn", 5, 8), hit);
+        assertEquals("ＶＰＮ", "怎么翻墙用ＶＰＮ".substring(hit.start(), hit.end()));
+    }
+
+    @Test
+    void normalizesTraditionalToSimplified() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("赌博"));
+
+        assertTrue(matcher.matches("網上賭博"));
+        assertEquals(new AhoCorasickMatcher.Hit("赌博", 2, 4), matcher.findFirst("網上賭博"));
+    }
+
+    @Test
+    void normalizesDictionaryWordsAndKeepsFirstOriginal() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("賭博", "赌博", " ＶＰＮ ", ""));
+
+        assertEquals(2, matcher.size());
+        assertEquals("賭博", matcher.findFirst("赌博").word());
+        assertEquals("ＶＰＮ", matcher.findFirst("vpn").word());
+    }
+
+    @Test
+    void findFirstStopsAtEarliestEndingHit() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(List.of("abcdef", "cd"));
+
+        assertEquals(new AhoCorasickMatcher.Hit("cd", 2, 4), matcher.findFirst("abcdef"));
+    }
+
+    @Test
+    void emptyDictionaryAndNullTextNeverMatch() {
+        assertNull(AhoCorasickMatcher.EMPTY.findFirst("任何内容"));
+        assertTrue(new AhoCorasickMatcher(List.of("赌博")).findAll(null).isEmpty());
+        assertFalse(new AhoCorasickMatcher(List.of("赌博")).matches("正常的问题"));
+    }
+
+    @Test
+    void textNormalizerKeepsOneCharPerChar() {
+        String text = "ＡＢＣ　學習，Hello";
+
+        String normalized = TextNormalizer.normalize(text);
+
+        assertEquals(text.length(), normalized.length());
+        assertEquals("abc 学习,hello", normalized);
+    }
+}
@@ -0,0 +1,91 @@
+package com.atguigu.guliai.sensitive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词匹配：改造前逐词 String.contains 循环与 Aho–Corasick 自动机对比
+ * 词库为随机生成的 2~4 字中文词，待检消息为 500 字的随机中文，末尾带一个词库中的词，两种方式都要扫描到最后才命中。
+ * 运行：bin/jmh-bench.sh SensitiveWordMatchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensitiveWordMatchBenchmark {
+
+    /** 常用汉字范围，词与消息都从中随机取字 */
+    private static final char CJK_START = '一';
+    private static final int CJK_RANGE = 3000;
+    private static final int MESSAGE_LENGTH = 500;
+
+    @Param({"1000", "100000"})
+    public int dictionarySize;
+
+    private List<String> dictionary;
+    private AhoCorasickMatcher matcher;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < dictionarySize) {
+            words.add(randomText(random, 2 + random.nextInt(3)));
+        }
+        dictionary = new ArrayList<>(words);
+        matcher = new AhoCorasickMatcher(dictionary);
+        // 消息中部随机生成，去掉偶然出现的词，保证只有末尾一处命中
+        String body = randomText(random, MESSAGE_LENGTH);
+        for (AhoCorasickMatcher.Hit hit : matcher.findAll(body)) {
+            body = body.replace(hit.word(), "，");
+        }
+        message = body + dictionary.get(dictionary.size() - 1);
+    }
+
+    @Benchmark
+    public String containsLoop() {
+        for (String word : dictionary) {
+            if (message.contains(word)) {
+                return word;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public AhoCorasickMatcher.Hit automatonFindFirst() {
+        return matcher.findFirst(message);
+    }
+
+    @Benchmark
+    public List<AhoCorasickMatcher.Hit> automatonFindAll() {
+        return matcher.findAll(message);
+    }
+
+    private static String randomText(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (CJK_START + random.nextInt(CJK_RANGE));
+        }
+        return new String(chars);
+    }
+}
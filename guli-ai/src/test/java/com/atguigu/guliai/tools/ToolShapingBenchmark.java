@@ -0,0 +1,111 @@
+package com.atguigu.guliai.tools;
+
+import com.atguigu.guliai.config.ToolShapingProperties;
+import com.atguigu.guliai.constant.SystemConstant;
+import com.atguigu.system.domain.Course;
+import com.atguigu.system.domain.School;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.util.json.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 工具结果裁剪基准
+ * 用一份与线上规模相近的校区、专业数据，对几类典型提问分别统计原始 JSON 与裁剪后结果的 token 数和序列化耗时。
+ * 不依赖数据库与大模型，以测试类路径运行：java -cp target/test-classes:target/classes:<依赖> com.atguigu.guliai.tools.ToolShapingBenchmark [迭代次数]，
+ * 依赖类路径由 mvn test-compile dependency:build-classpath -Dmdep.includeScope=test 输出（同 bin/jmh-bench.sh）。
+ * 端到端耗时取决于模型服务，上线后对比 guli.ai.tool.result.tokens 与对话耗时指标。
+ */
+public class ToolShapingBenchmark {
+
+    private static final String[] COLLEGES = {"计算机工程学院", "经济与管理学院", "海洋工程学院", "电子信息学院", "设计与创意学院"};
+    private static final String[][] MAJORS = {
+            {"计算机科学与技术", "软件工程", "网络工程", "数据科学与大数据技术", "人工智能", "物联网工程", "信息安全"},
+            {"会计学", "财务管理", "市场营销", "电子商务", "物流管理", "国际经济与贸易"},
+            {"船舶与海洋工程", "港口航道与海岸工程", "海洋技术", "轮机工程"},
+            {"电子信息工程", "通信工程", "微电子科学与工程", "自动化", "电气工程及其自动化", "光电信息科学与工程"},
+            {"视觉传达设计", "环境设计", "产品设计", "数字媒体艺术", "动画"}
+    };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<School> schools = schools();
+        List<Course> courses = courses();
+
+        ToolShapingProperties properties = new ToolShapingProperties();
+        properties.getTools().put(SystemConstant.TOOL_QUERY_COURSE, shape(15, "name", "type", "edu", "price", "duration"));
+        properties.getTools().put(SystemConstant.TOOL_QUERY_ALL_SCHOOLS, shape(null, "name", "city"));
+        ToolResultShaper shaper = new ToolResultShaper(properties, new SimpleMeterRegistry());
+        TokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+
+        System.out.printf("%-24s %6s %10s %10s %8s %12s %12s%n",
+                "问题", "行数", "JSON token", "裁剪token", "节省", "JSON耗时us", "裁剪耗时us(含token统计)");
+        run("桂电有哪些校区", SystemConstant.TOOL_QUERY_ALL_SCHOOLS, schools, shaper, estimator, iterations);
+        run("计算机工程学院有哪些专业", SystemConstant.TOOL_QUERY_COURSE,
+                courses.stream().filter(c -> COLLEGES[0].equals(c.getType())).toList(), shaper, estimator, iterations);
+        run("我考了400分能报哪些专业", SystemConstant.TOOL_QUERY_COURSE,
+                courses.stream().filter(c -> c.getEdu() <= 1).toList(), shaper, estimator, iterations);
+        run("学费最低的专业有哪些", SystemConstant.TOOL_QUERY_COURSE,
+                courses.stream().sorted(Comparator.comparing(Course::getPrice)).toList(), shaper, estimator, iterations);
+    }
+
+    private static void run(String question, String tool, List<?> rows, ToolResultShaper shaper,
+                            TokenCountEstimator estimator, int iterations) {
+        String json = JsonParser.toJson(rows);
+        String shaped = shaper.shape(tool, rows);
+        int jsonTokens = estimator.estimate(json);
+        int shapedTokens = estimator.estimate(shaped);
+        System.out.printf("%-24s %6d %10d %10d %7.1f%% %12.1f %12.1f%n",
+                question, rows.size(), jsonTokens, shapedTokens, 100.0 * (jsonTokens - shapedTokens) / jsonTokens,
+                micros(() -> JsonParser.toJson(rows), iterations), micros(() -> shaper.shape(tool, rows), iterations));
+    }
+
+    private static double micros(Supplier<String> task, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            task.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.get();
+        }
+        return (System.nanoTime() - start) / 1000.0 / iterations;
+    }
+
+    private static ToolShapingProperties.Shape shape(Integer maxRows, String... fields) {
+        ToolShapingProperties.Shape shape = new ToolShapingProperties.Shape();
+        shape.setFields(List.of(fields));
+        shape.setMaxRows(maxRows);
+        return shape;
+    }
+
+    private static List<School> schools() {
+        String[][] data = {{"金鸡岭校区", "桂林"}, {"花江校区", "桂林"}, {"东城校区", "桂林"}, {"北海校区", "北海"}, {"尧山校区", "桂林"}};
+        List<School> schools = new ArrayList<>();
+        for (int i = 0; i < data.length; i++) {
+            schools.add(new School().setId(i + 1).setName(data[i][0]).setCity(data[i][1]));
+        }
+        return schools;
+    }
+
+    private static List<Course> courses() {
+        List<Course> courses = new ArrayList<>();
+        int id = 1;
+        for (int college = 0; college < COLLEGES.length; college++) {
+            for (int major = 0; major < MAJORS[college].length; major++) {
+                courses.add(new Course().setId(id)
+                        .setName(MAJORS[college][major])
+                        .setType(COLLEGES[college])
+                        .setEdu((college + major) % 5)
+                        .setPrice(4800L + 300L * ((id * 7) % 11))
+                        .setDuration(1460));
+                id++;
+            }
+        }
+        return courses;
+    }
+}
@@ -0,0 +1,57 @@
+package com.atguigu.framework.aspectj;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.atguigu.system.cache.EntityChangedEvent;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * 业务数据写入通知
+ * 校区、专业等会被智能体工具缓存的数据经服务层写入后发布 {@link EntityChangedEvent}，存在事务时在提交后发布。
+ * 链式更新（update().eq().update()）不经过服务方法，不在通知范围内，由缓存的存活时间兜底。
+ */
+@Aspect
+@Component
+public class EntityChangeAspect
+{
+    private final ApplicationEventPublisher publisher;
+
+    public EntityChangeAspect(ApplicationEventPublisher publisher)
+    {
+        this.publisher = publisher;
+    }
+
+    @Pointcut("(target(com.atguigu.system.service.ISchoolService) || target(com.atguigu.system.service.ICourseService))"
+            + " && (execution(* save*(..)) || execution(* update*(*, ..)) || execution(* remove*(..)))")
+    public void writePointCut()
+    {
+
+    }
+
+    @AfterReturning("writePointCut()")
+    public void afterWrite(JoinPoint point)
+    {
+        EntityChangedEvent event = new EntityChangedEvent(((IService<?>) point.getTarget()).getEntityClass());
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    publisher.publishEvent(event);
+                }
+            });
+        }
+        else
+        {
+            publisher.publishEvent(event);
+        }
+    }
+}
@@ -2,11 +2,16 @@ package com.atguigu.framework.config;
 
 import com.atguigu.common.utils.Threads;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
@@ -29,6 +34,9 @@ public class ThreadPoolConfig
     // 线程池维护线程所允许的空闲时间
     private int keepAliveSeconds = 300;
 
+    @Autowired
+    private Environment environment;
+
     @Bean(name = "threadPoolTaskExecutor")
     public ThreadPoolTaskExecutor threadPoolTaskExecutor()
     {
@@ -37,6 +45,11 @@ public class ThreadPoolConfig
         executor.setCorePoolSize(corePoolSize);
         executor.setQueueCapacity(queueCapacity);
         executor.setKeepAliveSeconds(keepAliveSeconds);
+        if (isVirtual())
+        {
+            // 虚拟线程模式下保留池的并发上限与排队策略，只把执行线程换成虚拟线程
+            executor.setThreadFactory(new VirtualThreadTaskExecutor("async-pool-").getVirtualThreadFactory());
+        }
         // 线程池对拒绝任务(无线程可用)的处理策略
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         return executor;
@@ -48,8 +61,10 @@ public class ThreadPoolConfig
     @Bean(name = "scheduledExecutorService")
     protected ScheduledExecutorService scheduledExecutorService()
     {
-        return new ScheduledThreadPoolExecutor(corePoolSize,
-                new BasicThreadFactory.Builder().namingPattern("schedule-pool-%d").daemon(true).build(),
+        ThreadFactory threadFactory = isVirtual()
+                ? new VirtualThreadTaskExecutor("schedule-pool-").getVirtualThreadFactory()
+                : new BasicThreadFactory.Builder().namingPattern("schedule-pool-%d").daemon(true).build();
+        return new ScheduledThreadPoolExecutor(corePoolSize, threadFactory,
                 new ThreadPoolExecutor.CallerRunsPolicy())
         {
             @Override
@@ -60,4 +75,12 @@ public class ThreadPoolConfig
             }
         };
     }
+
+    /**
+     * 是否开启虚拟线程，需要 JDK 21 及以上且 spring.threads.virtual.enabled=true
+     */
+    private boolean isVirtual()
+    {
+        return Threading.VIRTUAL.isActive(environment);
+    }
 }
@@ -0,0 +1,276 @@
+package com.atguigu.system.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.atguigu.system.domain.ChatProject;
+import com.atguigu.system.mapper.ChatProjectMapper;
+
+/**
+ * 项目配置近端缓存
+ * 对话、知识库上传与删除都需要按项目主键读取模型类型，项目配置很少修改，读取改为本地内存命中。
+ * 修改或删除项目时先清理本地缓存，再通过 Redis 发布订阅通知其他节点清理，同时发布 {@link ChatProjectChangedEvent}。
+ * 本地缓存同时有条数与时间上限，Redis 通知丢失时最多在 ttl 内读到旧配置。
+ */
+@Component
+public class ChatProjectCache implements MessageListener
+{
+    private static final Logger log = LoggerFactory.getLogger(ChatProjectCache.class);
+
+    /** 项目配置变更通知频道，消息格式为 节点id:项目主键 */
+    public static final String CHANNEL = "guli:chat-project:changed";
+
+    private final ChatProjectMapper chatProjectMapper;
+    private final ChatProjectCacheProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+
+    /** 区分本节点发出的通知，本节点已在发送前处理 */
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<>(64, 0.75f, true);
+    /** 每次失效递增，读库期间发生过失效的结果不再放入缓存，避免旧数据覆盖失效 */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ChatProjectCache(ChatProjectMapper chatProjectMapper, ChatProjectCacheProperties properties,
+            ApplicationEventPublisher eventPublisher, ObjectProvider<StringRedisTemplate> redisTemplate,
+            ObjectProvider<RedisMessageListenerContainer> listenerContainer)
+    {
+        this.chatProjectMapper = chatProjectMapper;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.redisTemplate = redisTemplate;
+        if (properties.isBroadcast())
+        {
+            listenerContainer.ifAvailable(container -> container.addMessageListener(this, new ChannelTopic(CHANNEL)));
+        }
+    }
+
+    /**
+     * 读取项目配置，本地未命中时查询数据库
+     *
+     * @param projectId 项目主键
+     * @return 项目不存在时返回 null
+     */
+    public ChatProject get(Long projectId)
+    {
+        if (projectId == null)
+        {
+            return null;
+        }
+        ChatProject cached = getIfPresent(projectId);
+        if (cached != null)
+        {
+            return cached;
+        }
+        long loadedAt = generation.get();
+        ChatProject project = chatProjectMapper.selectChatProjectByProjectId(projectId);
+        if (project != null)
+        {
+            put(projectId, project, loadedAt);
+        }
+        return project;
+    }
+
+    /**
+     * 批量读取项目配置，本地未命中的项目合并为一次数据库查询
+     *
+     * @param projectIds 项目主键集合
+     * @return 项目主键到项目配置，不存在的项目不在结果中
+     */
+    public Map<Long, ChatProject> getAll(Collection<Long> projectIds)
+    {
+        Map<Long, ChatProject> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long projectId : projectIds)
+        {
+            if (projectId == null || result.containsKey(projectId) || missing.contains(projectId))
+            {
+                continue;
+            }
+            ChatProject cached = getIfPresent(projectId);
+            if (cached != null)
+            {
+                result.put(projectId, cached);
+            }
+            else
+            {
+                missing.add(projectId);
+            }
+        }
+        if (!missing.isEmpty())
+        {
+            long loadedAt = generation.get();
+            for (ChatProject project : chatProjectMapper.selectChatProjectByProjectIds(missing.toArray(new Long[0])))
+            {
+                result.put(project.getProjectId(), project);
+                put(project.getProjectId(), project, loadedAt);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 只读本地缓存，未命中返回 null，不访问数据库
+     */
+    public ChatProject getIfPresent(Long projectId)
+    {
+        lock.lock();
+        try
+        {
+            Entry entry = cache.get(projectId);
+            if (entry == null)
+            {
+                return null;
+            }
+            if (entry.expireAt() <= System.currentTimeMillis())
+            {
+                cache.remove(projectId);
+                return null;
+            }
+            return entry.project();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 项目修改或删除后调用，处于事务中时在提交后执行
+     */
+    public void invalidate(Long... projectIds)
+    {
+        if (projectIds == null || projectIds.length == 0)
+        {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    invalidateNow(projectIds);
+                }
+            });
+        }
+        else
+        {
+            invalidateNow(projectIds);
+        }
+    }
+
+    private void invalidateNow(Long[] projectIds)
+    {
+        for (Long projectId : projectIds)
+        {
+            evict(projectId);
+            broadcast(projectId);
+        }
+    }
+
+    /**
+     * 收到其他节点的变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern)
+    {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator < 0 || nodeId.equals(body.substring(0, separator)))
+        {
+            return;
+        }
+        try
+        {
+            evict(Long.valueOf(body.substring(separator + 1)));
+        }
+        catch (NumberFormatException e)
+        {
+            log.warn("忽略无法解析的项目变更通知: {}", body);
+        }
+    }
+
+    private void evict(Long projectId)
+    {
+        lock.lock();
+        try
+        {
+            generation.incrementAndGet();
+            cache.remove(projectId);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        log.info("项目配置缓存已失效: projectId={}", projectId);
+        eventPublisher.publishEvent(new ChatProjectChangedEvent(projectId));
+    }
+
+    private void broadcast(Long projectId)
+    {
+        StringRedisTemplate template = properties.isBroadcast() ? redisTemplate.getIfAvailable() : null;
+        if (template == null)
+        {
+            return;
+        }
+        try
+        {
+            template.convertAndSend(CHANNEL, nodeId + ":" + projectId);
+        }
+        catch (Exception e)
+        {
+            // 通知失败时其他节点依靠 ttl 过期
+            log.warn("发布项目配置变更通知失败 projectId={}，原因：{}", projectId, e.getMessage());
+        }
+    }
+
+    private void put(Long projectId, ChatProject project, long loadedAt)
+    {
+        lock.lock();
+        try
+        {
+            if (generation.get() != loadedAt)
+            {
+                return;
+            }
+            cache.put(projectId, new Entry(project, System.currentTimeMillis() + properties.getTtl().toMillis()));
+            Iterator<Long> it = cache.keySet().iterator();
+            while (cache.size() > Math.max(1, properties.getMaxEntries()) && it.hasNext())
+            {
+                it.next();
+                it.remove();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private record Entry(ChatProject project, long expireAt)
+    {
+    }
+}
@@ -0,0 +1,24 @@
+package com.atguigu.system.cache;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import lombok.Data;
+
+/**
+ * 项目配置本地缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "guli.project-cache")
+public class ChatProjectCacheProperties
+{
+    /** 本地缓存时间，兜底 Redis 通知丢失的情况 */
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /** 最多缓存的项目数 */
+    private int maxEntries = 1000;
+
+    /** 是否通过 Redis 发布订阅通知其他节点失效 */
+    private boolean broadcast = true;
+}
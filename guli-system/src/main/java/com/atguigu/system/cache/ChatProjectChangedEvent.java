@@ -0,0 +1,10 @@
+package com.atguigu.system.cache;
+
+/**
+ * 项目配置已修改或删除，本节点与其他节点的修改都会发布该事件，依赖项目配置的组件据此清理各自的缓存
+ *
+ * @param projectId 项目主键
+ */
+public record ChatProjectChangedEvent(Long projectId)
+{
+}
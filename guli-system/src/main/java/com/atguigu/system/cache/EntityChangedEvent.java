@@ -0,0 +1,10 @@
+package com.atguigu.system.cache;
+
+/**
+ * 业务数据已新增、修改或删除，在事务提交后发布，缓存了该类数据的组件据此清理各自的缓存
+ *
+ * @param entityType 实体类型
+ */
+public record EntityChangedEvent(Class<?> entityType)
+{
+}
@@ -36,6 +36,9 @@ public class ChatKnowledge extends BaseEntity
     @TableField(typeHandler = com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler.class)
     private String content;
 
+    /** 入库任务id，任务重试时据此找回已写入的记录 */
+    private Long ingestJobId;
+
     public void setKnowledgeId(Long knowledgeId) 
     {
         this.knowledgeId = knowledgeId;
@@ -81,6 +84,15 @@ public class ChatKnowledge extends BaseEntity
     {
         return content;
     }
+    public void setIngestJobId(Long ingestJobId) 
+    {
+        this.ingestJobId = ingestJobId;
+    }
+
+    public Long getIngestJobId() 
+    {
+        return ingestJobId;
+    }
 
     @Override
     public String toString() {
@@ -90,6 +102,7 @@ public class ChatKnowledge extends BaseEntity
             .append("projectId", getProjectId())
             .append("fileName", getFileName())
             .append("content", getContent())
+            .append("ingestJobId", getIngestJobId())
             .append("createBy", getCreateBy())
             .append("createTime", getCreateTime())
             .append("updateBy", getUpdateBy())
@@ -20,6 +20,22 @@ public interface ChatKnowledgeMapper
      */
     public ChatKnowledge selectChatKnowledgeByKnowledgeId(Long knowledgeId);
 
+    /**
+     * 按入库任务查询知识库管理
+     * 
+     * @param ingestJobId 入库任务id
+     * @return 知识库管理
+     */
+    public ChatKnowledge selectChatKnowledgeByIngestJobId(Long ingestJobId);
+
+    /**
+     * 批量查询知识库所属项目，不含正文
+     * 
+     * @param knowledgeIds 知识库管理主键集合
+     * @return 知识库管理集合
+     */
+    public List<ChatKnowledge> selectChatKnowledgeProjectByKnowledgeIds(Long[] knowledgeIds);
+
     /**
      * 查询知识库管理列表
      * 
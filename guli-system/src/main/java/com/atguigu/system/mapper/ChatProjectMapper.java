@@ -20,6 +20,14 @@ public interface ChatProjectMapper
      */
     public ChatProject selectChatProjectByProjectId(Long projectId);
 
+    /**
+     * 批量查询项目配置
+     * 
+     * @param projectIds 项目配置主键集合
+     * @return 项目配置集合
+     */
+    public List<ChatProject> selectChatProjectByProjectIds(Long[] projectIds);
+
     /**
      * 查询项目配置列表
      * 
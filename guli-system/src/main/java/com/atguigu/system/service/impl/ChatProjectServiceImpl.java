@@ -2,6 +2,7 @@ package com.atguigu.system.service.impl;
 
 import java.util.List;
 import com.atguigu.common.utils.DateUtils;
+import com.atguigu.system.cache.ChatProjectCache;
 import com.atguigu.system.domain.ChatProject;
 import com.atguigu.system.mapper.ChatProjectMapper;
 import com.atguigu.system.service.IChatProjectService;
@@ -28,6 +29,9 @@ public class ChatProjectServiceImpl implements IChatProjectService
     @Autowired
     private ChatKnowledgeMapper chatKnowledgeMapper;
 
+    @Autowired
+    private ChatProjectCache chatProjectCache;
+
     /**
      * 查询项目配置
      * 
@@ -37,7 +41,7 @@ public class ChatProjectServiceImpl implements IChatProjectService
     @Override
     public ChatProject selectChatProjectByProjectId(Long projectId)
     {
-        return chatProjectMapper.selectChatProjectByProjectId(projectId);
+        return chatProjectCache.get(projectId);
     }
 
     /**
@@ -75,7 +79,9 @@ public class ChatProjectServiceImpl implements IChatProjectService
     public int updateChatProject(ChatProject chatProject)
     {
         chatProject.setUpdateTime(DateUtils.getNowDate());
-        return chatProjectMapper.updateChatProject(chatProject);
+        int rows = chatProjectMapper.updateChatProject(chatProject);
+        chatProjectCache.invalidate(chatProject.getProjectId());
+        return rows;
     }
 
     /**
@@ -92,8 +98,10 @@ public class ChatProjectServiceImpl implements IChatProjectService
         for (Long pid : projectIds) {
             chatKnowledgeMapper.deleteByProjectId(pid);
         }
-        // 再删除项目
-        return chatProjectMapper.deleteChatProjectByProjectIds(projectIds);
+        // 再删除项目，事务提交后再通知各节点清理缓存
+        int rows = chatProjectMapper.deleteChatProjectByProjectIds(projectIds);
+        chatProjectCache.invalidate(projectIds);
+        return rows;
     }
 
     /**
@@ -107,6 +115,8 @@ public class ChatProjectServiceImpl implements IChatProjectService
     public int deleteChatProjectByProjectId(Long projectId)
     {
         chatKnowledgeMapper.deleteByProjectId(projectId);
-        return chatProjectMapper.deleteChatProjectByProjectId(projectId);
+        int rows = chatProjectMapper.deleteChatProjectByProjectId(projectId);
+        chatProjectCache.invalidate(projectId);
+        return rows;
     }
 }
@@ -41,3 +41,11 @@ export function delKnowledge(knowledgeIds) {
     method: 'delete'
   })
 }
+
+// 查询知识库入库任务状态
+export function getIngestJob(jobId) {
+  return request({
+    url: '/chat/knowledge/job/' + jobId,
+    method: 'get'
+  })
+}
@@ -0,0 +1,9 @@
+import request from '@/utils/request'
+
+// 获取AI对话链路监控信息
+export function getAiMonitor() {
+  return request({
+    url: '/monitor/ai',
+    method: 'get'
+  })
+}
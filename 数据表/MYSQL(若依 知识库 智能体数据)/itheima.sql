@@ -32,13 +32,15 @@ CREATE TABLE `chat_knowledge`  (
   `update_by` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT '' COMMENT '更新者',
   `update_time` datetime NULL DEFAULT NULL COMMENT '更新时间',
   `remark` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '备注',
-  PRIMARY KEY (`knowledge_id`) USING BTREE
+  `ingest_job_id` bigint NULL DEFAULT NULL COMMENT '入库任务id',
+  PRIMARY KEY (`knowledge_id`) USING BTREE,
+  UNIQUE INDEX `uk_ingest_job_id`(`ingest_job_id` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 129 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '知识库管理' ROW_FORMAT = DYNAMIC;
 
 -- ----------------------------
 -- Records of chat_knowledge
 -- ----------------------------
-INSERT INTO `chat_knowledge` VALUES (128, 1, 127, '测试.txt', '1.上课时间: 早上8:25-中午12:05\r\n		  下午3:00-晚上6:40\r\n\r\n2.校区教学楼分布: 东区2教，3教，4教；西区6教，7教，8教，11教\r\n东西校区通过天桥往返。机房教室在东区的4教和11教，11教环境、电脑配置比4教好，每个机房教室都基本配有空调，其余非机房教室基本没有，但是有风扇\r\n\r\n3.宿舍情况：宿舍费1100，8人间，两个厕所，独立卫浴，上下铺，有舒适的桌椅，阿姨检查宿舍频率是大概半个月1次，有空调风扇。东区宿舍有1栋和2栋，1栋是女生宿舍，2栋是男生宿舍；2栋有A、B、C三面，有七层楼。宿舍平时周一到周五的关门时间为晚上11:30，周末为晚上12:30。\r\n\r\n4.饮食情况：南珠校区东区有2栋食堂，分别是新食堂和老食堂，都分别有两层楼。截止2025年7月，新食堂二楼已倒闭，老食堂二楼半倒闭，每个食堂自带空调，粉面基本都在老食堂一楼。校庆期间可获得一张8块的食堂打饭代金券，过期失效。\r\n\r\n5.校区分布：银滩校区和南珠校区，新大一需要搬过南珠校区，大二、大三、大四在南珠校区\r\n\r\n6.操场情况：西区有标准跑道400米，东区非标准跑道400米，东西校区操场均有足球网\r\n\r\n7.运动设施：西区有健身房，健身按时间计费，包括了常见的运动器材如羽毛球、乒乓球等\r\n\r\n8.教师情况：高数教师推荐：周老师，两个校区都会去上课，上课吸引人，考试会捞人，性格温柔。\r\n英语老师推荐：庞老师，专业讲解四级知识，讲课通俗易懂\r\n\r\n9.外卖情况：外卖部分可叫上楼，大部分学校围栏自提。需谨防偷外卖的人，学校偷外卖的特别多\r\n\r\n10.出行情况：因校区非处于城市中心，所以公交很少；但学校周边共享单车较多，且东区校门口附近有许多租电动车的，方便出行\r\n\r\n11.天气情况：谨防一年一度的台风洪水，多为每年的5-6月，届时需自备零食度过台风天气\r\n\r\n12.周边情况：学校在西区设有菜鸟驿站，包含圆通等多种快递，距离学校很近。\r\n东区附近晚上有许多的小吃\r\n\r\n13.请假情况：请假流程简单，请假时间在3天内有事情需要请假可口头向辅导员请假，无需假条；反之则要假条和任课老师的签字即可\r\n\r\n14.比赛情况：学校设有多种比赛考点：如计算机等级考试，蓝桥杯，四六级。但是普通话考试本校无考点，需到北海市职业学院去考。\r\n\r\n', 'admin', '2025-07-11 20:33:48', '', NULL, NULL);
+INSERT INTO `chat_knowledge` VALUES (128, 1, 127, '测试.txt', '1.上课时间: 早上8:25-中午12:05\r\n		  下午3:00-晚上6:40\r\n\r\n2.校区教学楼分布: 东区2教，3教，4教；西区6教，7教，8教，11教\r\n东西校区通过天桥往返。机房教室在东区的4教和11教，11教环境、电脑配置比4教好，每个机房教室都基本配有空调，其余非机房教室基本没有，但是有风扇\r\n\r\n3.宿舍情况：宿舍费1100，8人间，两个厕所，独立卫浴，上下铺，有舒适的桌椅，阿姨检查宿舍频率是大概半个月1次，有空调风扇。东区宿舍有1栋和2栋，1栋是女生宿舍，2栋是男生宿舍；2栋有A、B、C三面，有七层楼。宿舍平时周一到周五的关门时间为晚上11:30，周末为晚上12:30。\r\n\r\n4.饮食情况：南珠校区东区有2栋食堂，分别是新食堂和老食堂，都分别有两层楼。截止2025年7月，新食堂二楼已倒闭，老食堂二楼半倒闭，每个食堂自带空调，粉面基本都在老食堂一楼。校庆期间可获得一张8块的食堂打饭代金券，过期失效。\r\n\r\n5.校区分布：银滩校区和南珠校区，新大一需要搬过南珠校区，大二、大三、大四在南珠校区\r\n\r\n6.操场情况：西区有标准跑道400米，东区非标准跑道400米，东西校区操场均有足球网\r\n\r\n7.运动设施：西区有健身房，健身按时间计费，包括了常见的运动器材如羽毛球、乒乓球等\r\n\r\n8.教师情况：高数教师推荐：周老师，两个校区都会去上课，上课吸引人，考试会捞人，性格温柔。\r\n英语老师推荐：庞老师，专业讲解四级知识，讲课通俗易懂\r\n\r\n9.外卖情况：外卖部分可叫上楼，大部分学校围栏自提。需谨防偷外卖的人，学校偷外卖的特别多\r\n\r\n10.出行情况：因校区非处于城市中心，所以公交很少；但学校周边共享单车较多，且东区校门口附近有许多租电动车的，方便出行\r\n\r\n11.天气情况：谨防一年一度的台风洪水，多为每年的5-6月，届时需自备零食度过台风天气\r\n\r\n12.周边情况：学校在西区设有菜鸟驿站，包含圆通等多种快递，距离学校很近。\r\n东区附近晚上有许多的小吃\r\n\r\n13.请假情况：请假流程简单，请假时间在3天内有事情需要请假可口头向辅导员请假，无需假条；反之则要假条和任课老师的签字即可\r\n\r\n14.比赛情况：学校设有多种比赛考点：如计算机等级考试，蓝桥杯，四六级。但是普通话考试本校无考点，需到北海市职业学院去考。\r\n\r\n', 'admin', '2025-07-11 20:33:48', '', NULL, NULL, NULL);
 
 -- ----------------------------
 -- Table structure for chat_project
@@ -643,6 +645,7 @@ INSERT INTO `sys_menu` VALUES (114, '缓存列表', 2, 6, 'cacheList', 'monitor/
 INSERT INTO `sys_menu` VALUES (115, '表单构建', 3, 1, 'build', 'tool/build/index', '', 1, 0, 'C', '0', '0', 'tool:build:list', 'build', 'admin', '2024-06-26 08:47:33', '', NULL, '表单构建菜单');
 INSERT INTO `sys_menu` VALUES (116, '代码生成', 3, 2, 'gen', 'tool/gen/index', '', 1, 0, 'C', '0', '0', 'tool:gen:list', 'code', 'admin', '2024-06-26 08:47:33', '', NULL, '代码生成菜单');
 INSERT INTO `sys_menu` VALUES (117, '系统接口', 3, 3, 'swagger', 'tool/swagger/index', '', 1, 0, 'C', '0', '0', 'tool:swagger:list', 'swagger', 'admin', '2024-06-26 08:47:33', '', NULL, '系统接口菜单');
+INSERT INTO `sys_menu` VALUES (118, 'AI监控', 2, 7, 'ai', 'monitor/ai/index', '', 1, 0, 'C', '0', '0', 'monitor:ai:list', 'chart', 'admin', '2026-10-18 08:00:00', '', NULL, 'AI对话链路监控菜单');
 INSERT INTO `sys_menu` VALUES (500, '操作日志', 108, 1, 'operlog', 'monitor/operlog/index', '', 1, 0, 'C', '0', '0', 'monitor:operlog:list', 'form', 'admin', '2024-06-26 08:47:33', '', NULL, '操作日志菜单');
 INSERT INTO `sys_menu` VALUES (501, '登录日志', 108, 2, 'logininfor', 'monitor/logininfor/index', '', 1, 0, 'C', '0', '0', 'monitor:logininfor:list', 'logininfor', 'admin', '2024-06-26 08:47:33', '', NULL, '登录日志菜单');
 INSERT INTO `sys_menu` VALUES (1000, '用户查询', 100, 1, '', '', '', 1, 0, 'F', '0', '0', 'system:user:query', '#', 'admin', '2024-06-26 08:47:33', '', NULL, '');
@@ -947,6 +950,7 @@ INSERT INTO `sys_role_menu` VALUES (2, 114);
 INSERT INTO `sys_role_menu` VALUES (2, 115);
 INSERT INTO `sys_role_menu` VALUES (2, 116);
 INSERT INTO `sys_role_menu` VALUES (2, 117);
+INSERT INTO `sys_role_menu` VALUES (2, 118);
 INSERT INTO `sys_role_menu` VALUES (2, 500);
 INSERT INTO `sys_role_menu` VALUES (2, 501);
 INSERT INTO `sys_role_menu` VALUES (2, 1000);